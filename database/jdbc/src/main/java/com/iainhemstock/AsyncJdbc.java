@@ -0,0 +1,211 @@
+/**
+ * Runs JDBC work off the calling thread and hands back a CompletableFuture for the result, so that a
+ * number of independent queries can be in flight at the same time instead of one after the other:
+ *
+ *      CompletableFuture<List<TransactionRecord>> recent = async.query(sql1, mapper, since);
+ *      CompletableFuture<Integer> count = async.execute(cxn -> ...);
+ *      CompletableFuture.allOf(recent, count).join();
+ *
+ * Every piece of work borrows its own connection from the DataSource and returns it when done. At
+ * most maxConcurrency pieces of work run at once, anything more waits in a queue, so pick a value
+ * no larger than the size of the connection pool behind the DataSource or the workers will just
+ * end up waiting on the pool.
+ *
+ * Each piece of work has a timeout, measured from when it was submitted so time spent queued counts
+ * too. When it runs out the future fails with a TimeoutException and, for query() and update(), the
+ * running statement is cancelled. Work passed to execute() is interrupted instead, which most
+ * drivers ignore, so it should set its own Statement.setQueryTimeout() if it can run long.
+ *
+ * JDBC calls block, so the work runs on a dedicated pool of platform threads.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+
+public class AsyncJdbc implements AutoCloseable {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Work to run against a borrowed connection. The connection is closed once the work returns.
+     */
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doInConnection(Connection cxn) throws SQLException;
+    }
+
+    private final DataSource dataSource;
+    private final int maxConcurrency;
+    private final long defaultTimeoutMillis;
+    private final ExecutorService workers;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Runs at most as many pieces of work at once as the pool has connections.
+     */
+    public AsyncJdbc(ConnectionPool pool) {
+        this(pool, pool.getMaxSize(), DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public AsyncJdbc(DataSource dataSource, int maxConcurrency, long defaultTimeoutMillis) {
+        this.dataSource = dataSource;
+        this.maxConcurrency = maxConcurrency;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.workers = Executors.newFixedThreadPool(maxConcurrency, daemonThreads("async-jdbc-"));
+        this.timer = new ScheduledThreadPoolExecutor(1, daemonThreads("async-jdbc-timer-"));
+        // timeouts are cancelled as soon as the work finishes, don't keep them queued until they expire
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public <T> CompletableFuture<T> execute(ConnectionCallback<T> work) {
+        return execute(work, defaultTimeoutMillis);
+    }
+
+    public <T> CompletableFuture<T> execute(ConnectionCallback<T> work, long timeoutMillis) {
+        return submit(work, timeoutMillis, null);
+    }
+
+    public <T> CompletableFuture<List<T>> query(String sql, RowMapper<T> mapper, Object... params) {
+        return query(defaultTimeoutMillis, sql, mapper, params);
+    }
+
+    public <T> CompletableFuture<List<T>> query(long timeoutMillis, String sql, RowMapper<T> mapper,
+                                                Object... params) {
+        AtomicReference<Statement> running = new AtomicReference<>();
+        return submit(cxn -> {
+            try (PreparedStatement statement = prepare(cxn, sql, timeoutMillis, running, params);
+                 ResultSet rs = statement.executeQuery())
+            {
+                List<T> rows = new ArrayList<>();
+                RowMapper<T> bound = mapper.bind(rs.getMetaData());
+                while (rs.next())
+                    rows.add(bound.mapRow(rs));
+                return rows;
+            }
+        }, timeoutMillis, running);
+    }
+
+    public CompletableFuture<Integer> update(String sql, Object... params) {
+        return update(defaultTimeoutMillis, sql, params);
+    }
+
+    public CompletableFuture<Integer> update(long timeoutMillis, String sql, Object... params) {
+        AtomicReference<Statement> running = new AtomicReference<>();
+        return submit(cxn -> {
+            try (PreparedStatement statement = prepare(cxn, sql, timeoutMillis, running, params)) {
+                return statement.executeUpdate();
+            }
+        }, timeoutMillis, running);
+    }
+
+    /**
+     * Stops accepting work and waits for the work already submitted to finish. If the calling thread
+     * is interrupted it stops waiting and the thread's interrupt status is set again.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            timer.shutdownNow();
+        }
+    }
+
+    private static PreparedStatement prepare(Connection cxn, String sql, long timeoutMillis,
+                                             AtomicReference<Statement> running, Object... params)
+            throws SQLException {
+        PreparedStatement statement = cxn.prepareStatement(sql);
+        running.set(statement);
+        // The timeout may have fired before there was a statement to cancel, in which case the
+        // worker has been interrupted. Setting a query timeout instead would stop the statement
+        // going back into the pool's statement cache.
+        if (Thread.currentThread().isInterrupted()) {
+            statement.close();
+            throw new SQLTimeoutException(String.format("JDBC work did not complete within %dms", timeoutMillis));
+        }
+        for (int i = 0; i < params.length; ++i)
+            statement.setObject(i + 1, params[i]);
+        return statement;
+    }
+
+    private <T> CompletableFuture<T> submit(ConnectionCallback<T> work, long timeoutMillis,
+                                            AtomicReference<Statement> running) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        Future<?> task = workers.submit(() -> {
+            if (result.isDone())
+                return; // timed out or cancelled while still in the queue
+            try (Connection cxn = dataSource.getConnection()) {
+                result.complete(work.doInConnection(cxn));
+            }
+            catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException(
+                    String.format("JDBC work did not complete within %dms", timeoutMillis)))) {
+                cancel(running);
+                task.cancel(true);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((value, ex) -> {
+            timeout.cancel(false);
+            // cancelling the returned future stops the work too
+            if (result.isCancelled()) {
+                cancel(running);
+                task.cancel(true);
+            }
+        });
+
+        return result;
+    }
+
+    private static void cancel(AtomicReference<Statement> running) {
+        Statement statement = running == null ? null : running.get();
+        if (statement == null)
+            return;
+        try { statement.cancel(); }
+        catch (SQLException ex) { /* the statement may already have finished */ }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -12,15 +12,17 @@
  * around this the statements in the batch can be executed within a transaction meaning that if any
  * of the statements fail it is possible to perform a rollback putting the database's state back to
  * where it was before any of the batch statements were executed.
+ *
+ * For loading a large number of rows see BatchWriter which picks the batch size itself.
  */
 
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.stream.IntStream;
 
 public class BatchUpdate {
 
@@ -30,12 +32,17 @@ public class BatchUpdate {
         "update transactions " +
         "set transaction_amount=? " +
         "where id=?";
-
+    private static final String SQL_CREATE_SCRATCH_TABLE =
+        "create temporary table batch_writer_demo " +
+        "(id int primary key, transaction_amount double)";
+    private static final String SQL_INSERT_SCRATCH_ROW =
+        "insert into batch_writer_demo (id, transaction_amount) values (?, ?)";
+    private static final String SQL_DROP_SCRATCH_TABLE = "drop temporary table batch_writer_demo";
 
     public static void main(String[] args) {
 
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             PreparedStatement pstatement = cxn.prepareStatement(SQL_UPDATE_TRANSACTION_AMOUNT))
         {
@@ -83,6 +90,29 @@ public class BatchUpdate {
             }
 
             recordsAffected = pstatement.executeBatch();
+
+            //======================================================================================
+            // Batching a large number of rows with BatchWriter.
+            // Rather than choosing a batch size up front BatchWriter flushes the batch every N rows
+            // and tunes N from how long each executeBatch() takes. Each batch runs in its own
+            // transaction so a failed batch is rolled back as a whole. The rows go into a temporary
+            // table so the transactions the other demos read are left as they were.
+            //======================================================================================
+            statement.execute(SQL_CREATE_SCRATCH_TABLE);
+            try {
+                WriteStats stats =
+                    new BatchWriter<Integer>(cxn, SQL_INSERT_SCRATCH_ROW, (ps, rowId) -> {
+                            ps.setInt(FIRST_PARAM, rowId);
+                            ps.setDouble(SECOND_PARAM, rowId * 1.5);
+                        })
+                        .transactional(true)
+                        .write(IntStream.rangeClosed(1, 100_000).boxed());
+
+                System.out.println(stats);
+            }
+            finally {
+                statement.execute(SQL_DROP_SCRATCH_TABLE);
+            }
         }
         catch (SQLException ex) { ex.printStackTrace(); }
 
@@ -0,0 +1,167 @@
+/**
+ * Writes a stream of rows to the database in batches without the caller having to decide how big
+ * each batch should be.
+ *
+ * Sending every row in one giant batch means the driver has to hold the whole batch in memory,
+ * while sending lots of tiny batches wastes a round trip per batch. BatchWriter sends a batch
+ * every N rows or as soon as the rows added so far are estimated to be larger than maxBatchBytes,
+ * whichever comes first. N starts at initialBatchRows and is tuned as the write goes along: if
+ * executeBatch() comes back well inside targetBatchMillis the batch grows, if it takes too long the
+ * batch is halved.
+ *
+ * As explained in BatchUpdate, a failing statement in a batch leaves the earlier statements applied.
+ * With transactional(true) each batch is executed in its own transaction so a failed batch is rolled
+ * back as a whole. Batches that were committed before the failure stay committed. That only applies
+ * to a connection in auto-commit mode: if the caller has already turned auto-commit off, the rows
+ * are part of the caller's transaction and committing or rolling back is left to the caller.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+public class BatchWriter<T> {
+
+    public static final int DEFAULT_INITIAL_BATCH_ROWS = 500;
+    public static final int DEFAULT_MIN_BATCH_ROWS = 50;
+    public static final int DEFAULT_MAX_BATCH_ROWS = 10_000;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_TARGET_BATCH_MILLIS = 200;
+    public static final int DEFAULT_ROW_SIZE_ESTIMATE = 64;
+
+    /**
+     * Sets the parameters of the statement for a single row.
+     */
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    private final Connection cxn;
+    private final String sql;
+    private final RowBinder<T> binder;
+    private ToIntFunction<T> rowSizeEstimator = row -> DEFAULT_ROW_SIZE_ESTIMATE;
+    private int minBatchRows = DEFAULT_MIN_BATCH_ROWS;
+    private int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long targetBatchNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TARGET_BATCH_MILLIS);
+    private boolean transactional;
+    private int batchRows = DEFAULT_INITIAL_BATCH_ROWS;
+
+    public BatchWriter(Connection cxn, String sql, RowBinder<T> binder) {
+        this.cxn = cxn;
+        this.sql = sql;
+        this.binder = binder;
+    }
+
+    public BatchWriter<T> batchRows(int initial, int min, int max) {
+        if (min < 1 || min > initial || initial > max)
+            throw new IllegalArgumentException(
+                String.format("Invalid batch rows: initial=%d min=%d max=%d", initial, min, max));
+        this.batchRows = initial;
+        this.minBatchRows = min;
+        this.maxBatchRows = max;
+        return this;
+    }
+
+    public BatchWriter<T> maxBatchBytes(long maxBatchBytes, ToIntFunction<T> rowSizeEstimator) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.rowSizeEstimator = rowSizeEstimator;
+        return this;
+    }
+
+    public BatchWriter<T> targetBatchMillis(long millis) {
+        this.targetBatchNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    public BatchWriter<T> transactional(boolean transactional) {
+        this.transactional = transactional;
+        return this;
+    }
+
+    /**
+     * The number of rows the next batch will hold, after any tuning done by previous writes.
+     */
+    public int getBatchRows() {
+        return batchRows;
+    }
+
+    public WriteStats write(Stream<T> rows) throws SQLException {
+        return write(rows.iterator());
+    }
+
+    public WriteStats write(Iterator<T> rows) throws SQLException {
+        WriteStats stats = new WriteStats();
+        long start = System.nanoTime();
+        // only a write that turns auto-commit off itself commits each batch
+        boolean commitPerBatch = transactional && cxn.getAutoCommit();
+
+        try (PreparedStatement statement = cxn.prepareStatement(sql)) {
+            if (commitPerBatch)
+                cxn.setAutoCommit(false);
+
+            int pendingRows = 0;
+            long pendingBytes = 0;
+
+            while (rows.hasNext()) {
+                T row = rows.next();
+                binder.bind(statement, row);
+                statement.addBatch();
+                ++pendingRows;
+                pendingBytes += rowSizeEstimator.applyAsInt(row);
+
+                if (pendingRows >= batchRows || pendingBytes >= maxBatchBytes) {
+                    flush(statement, pendingRows, pendingRows >= batchRows, commitPerBatch, stats);
+                    pendingRows = 0;
+                    pendingBytes = 0;
+                }
+            }
+
+            if (pendingRows > 0)
+                flush(statement, pendingRows, false, commitPerBatch, stats);
+        }
+        finally {
+            if (commitPerBatch)
+                cxn.setAutoCommit(true);
+            stats.setElapsedNanos(System.nanoTime() - start);
+        }
+
+        return stats;
+    }
+
+    private void flush(PreparedStatement statement, int rows, boolean fullBatch, boolean commitPerBatch,
+                       WriteStats stats) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            statement.executeBatch();
+            if (commitPerBatch)
+                cxn.commit();
+        }
+        catch (SQLException ex) {
+            if (commitPerBatch) {
+                try { cxn.rollback(); }
+                catch (SQLException rollbackEx) { ex.addSuppressed(rollbackEx); }
+            }
+            statement.clearBatch();
+            throw ex;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        stats.recordRoundTrip(rows, elapsed);
+
+        // Any batch that is too slow means the row limit is too big, since a full batch would only
+        // have been slower. Only a batch that was cut off by the row limit says the limit can grow:
+        // one cut short by the byte limit or the end of the input doesn't grow it.
+        if (elapsed > targetBatchNanos + targetBatchNanos / 4)
+            batchRows = Math.max(minBatchRows, batchRows / 2);
+        else if (fullBatch && elapsed < targetBatchNanos - targetBatchNanos / 4)
+            batchRows = Math.min(maxBatchRows, batchRows + Math.max(1, batchRows / 4));
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * A RowMapper that fills in an object of the given class from the columns of the current row.
+ *
+ * Reading a column by name with rs.getInt("id") means the driver has to look the name up every time,
+ * for every column of every row. BeanRowMapper looks the columns up once, in bind(), and builds a
+ * MethodHandle per column that reads the column by index and stores it in the object. Every row
+ * mapped by the mapper bind() returns is just those handles being invoked, with no name lookups, no
+ * reflection and no boxing of primitive values.
+ *
+ * Columns are matched to the class by name, ignoring case and underscores, so the column
+ * transaction_amount is matched to transactionAmount. Column labels are used so a column can be
+ * renamed in the sql with 'as'.
+ *
+ * If the class has a no-arg constructor (it may be private) each matched column is written straight
+ * to the field of the same name and fields without a column are left alone. Otherwise the constructor
+ * with the most parameters is used. Its parameters are matched to columns by name when the class was
+ * compiled with -parameters, otherwise by position so the first parameter is given the first column,
+ * the second parameter the second column and so on.
+ *
+ * A BeanRowMapper can be reused for any number of queries and shared between threads. The handles
+ * built for each column layout are kept, so binding a ResultSet of a query that has been seen before
+ * only costs reading its column labels. Nothing refers to a ResultSet after its rows are mapped.
+ * mapRow() called without bind() reads the column labels for every row, which works but gives up
+ * most of the point.
+ */
+
+package com.iainhemstock;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BeanRowMapper<T> implements RowMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Map<Class<?>, String> RESULT_SET_GETTERS = new HashMap<>();
+
+    static {
+        RESULT_SET_GETTERS.put(int.class, "getInt");
+        RESULT_SET_GETTERS.put(long.class, "getLong");
+        RESULT_SET_GETTERS.put(double.class, "getDouble");
+        RESULT_SET_GETTERS.put(float.class, "getFloat");
+        RESULT_SET_GETTERS.put(short.class, "getShort");
+        RESULT_SET_GETTERS.put(byte.class, "getByte");
+        RESULT_SET_GETTERS.put(boolean.class, "getBoolean");
+        RESULT_SET_GETTERS.put(String.class, "getString");
+        RESULT_SET_GETTERS.put(BigDecimal.class, "getBigDecimal");
+        RESULT_SET_GETTERS.put(Timestamp.class, "getTimestamp");
+        RESULT_SET_GETTERS.put(java.sql.Date.class, "getDate");
+        RESULT_SET_GETTERS.put(Time.class, "getTime");
+        RESULT_SET_GETTERS.put(byte[].class, "getBytes");
+    }
+
+    private final Class<T> type;
+    private final MethodHandles.Lookup lookup;
+    private final Constructor<?> constructor;
+    // keyed by the normalized column labels in order
+    private final Map<List<String>, Handles> handlesByLayout = new ConcurrentHashMap<>();
+
+    public BeanRowMapper(Class<T> type) {
+        this.type = type;
+        try {
+            this.lookup = MethodHandles.privateLookupIn(type, LOOKUP);
+        }
+        catch (IllegalAccessException ex) {
+            throw new IllegalArgumentException("Cannot access " + type.getName(), ex);
+        }
+        this.constructor = chooseConstructor(type);
+    }
+
+    @Override
+    public T mapRow(ResultSet rs) throws SQLException {
+        return map(handles(rs.getMetaData()), rs);
+    }
+
+    @Override
+    public RowMapper<T> bind(ResultSetMetaData meta) throws SQLException {
+        Handles handles = handles(meta);
+        return rs -> map(handles, rs);
+    }
+
+    private T map(Handles handles, ResultSet rs) throws SQLException {
+        try {
+            Object row = handles.factory.invokeExact(rs);
+            for (MethodHandle column : handles.columns)
+                column.invokeExact(row, rs);
+            return type.cast(row);
+        }
+        catch (SQLException | RuntimeException | Error ex) {
+            throw ex;
+        }
+        catch (Throwable ex) {
+            throw new SQLException("Failed to map row to " + type.getName(), ex);
+        }
+    }
+
+    private static Constructor<?> chooseConstructor(Class<?> type) {
+        Constructor<?> widest = null;
+        for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+            if (candidate.getParameterCount() == 0)
+                return candidate;
+            if (widest == null || candidate.getParameterCount() > widest.getParameterCount())
+                widest = candidate;
+        }
+        if (widest == null)
+            throw new IllegalArgumentException(type.getName() + " has no usable constructor");
+        return widest;
+    }
+
+    /**
+     * Finds the handles used for every row of a ResultSet with these columns, building them the first
+     * time the column layout is seen.
+     */
+    private Handles handles(ResultSetMetaData meta) throws SQLException {
+        List<String> layout = new ArrayList<>();
+        for (int i = 1; i <= meta.getColumnCount(); ++i)
+            layout.add(normalize(meta.getColumnLabel(i)));
+
+        Handles handles = handlesByLayout.get(layout);
+        if (handles == null) {
+            handles = resolve(layout);
+            handlesByLayout.put(layout, handles);
+        }
+        return handles;
+    }
+
+    /**
+     * Resolves the columns against the class and builds the handles that map a row.
+     */
+    private Handles resolve(List<String> layout) throws SQLException {
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        for (int i = layout.size(); i >= 1; --i)
+            columnIndexes.put(layout.get(i - 1), i); // first one wins on duplicates
+
+        try {
+            if (constructor.getParameterCount() == 0)
+                return bindFields(columnIndexes);
+            return bindConstructor(layout.size(), columnIndexes);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new SQLException("Cannot map columns to " + type.getName(), ex);
+        }
+    }
+
+    private Handles bindFields(Map<String, Integer> columnIndexes)
+            throws ReflectiveOperationException {
+        // (ResultSet)Object, the ResultSet is ignored, it is only there so both modes share a shape
+        MethodHandle factory = MethodHandles.dropArguments(
+                lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class)),
+                0, ResultSet.class);
+
+        List<MethodHandle> columns = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+                Integer index = columnIndexes.get(normalize(field.getName()));
+                if (index == null)
+                    continue;
+
+                field.setAccessible(true);
+                // (T, F)void + (ResultSet)F  =>  (T, ResultSet)void
+                MethodHandle setter = lookup.unreflectSetter(field);
+                MethodHandle column = MethodHandles.collectArguments(setter, 1, columnReader(field.getType(), index));
+                columns.add(column.asType(MethodType.methodType(void.class, Object.class, ResultSet.class)));
+            }
+        }
+
+        return new Handles(factory, columns.toArray(new MethodHandle[0]));
+    }
+
+    private Handles bindConstructor(int columnCount, Map<String, Integer> columnIndexes)
+            throws ReflectiveOperationException, SQLException {
+        Parameter[] params = constructor.getParameters();
+        if (params.length > columnCount)
+            throw new SQLException(String.format("%s needs %d columns but the query only has %d",
+                    type.getName(), params.length, columnCount));
+
+        // (P1, ..., Pn)T  =>  (ResultSet, ..., ResultSet)T  =>  (ResultSet)T
+        MethodHandle factory = lookup.unreflectConstructor(constructor);
+        for (int i = params.length - 1; i >= 0; --i) {
+            Integer index = params[i].isNamePresent()
+                    ? columnIndexes.get(normalize(params[i].getName()))
+                    : Integer.valueOf(i + 1);
+            if (index == null)
+                throw new SQLException("No column for constructor parameter " + params[i].getName());
+            factory = MethodHandles.collectArguments(factory, i, columnReader(params[i].getType(), index));
+        }
+        factory = MethodHandles.permuteArguments(factory,
+                MethodType.methodType(type, ResultSet.class), new int[params.length]);
+
+        return new Handles(factory.asType(MethodType.methodType(Object.class, ResultSet.class)),
+                new MethodHandle[0]);
+    }
+
+    /**
+     * A handle of type (ResultSet)F that reads the column at the given index as the type F.
+     */
+    private static MethodHandle columnReader(Class<?> fieldType, int index) throws ReflectiveOperationException {
+        MethodHandle reader;
+        String getter = RESULT_SET_GETTERS.get(fieldType);
+
+        if (getter != null) {
+            reader = LOOKUP.findVirtual(ResultSet.class, getter, MethodType.methodType(fieldType, int.class));
+        }
+        else if (fieldType == java.util.Date.class) {
+            reader = LOOKUP.findVirtual(ResultSet.class, "getTimestamp", MethodType.methodType(Timestamp.class, int.class));
+        }
+        else {
+            // wrapper types and anything else the driver knows how to convert, getObject() returns
+            // null for sql NULL which getInt() and friends can't do
+            reader = MethodHandles.insertArguments(
+                    LOOKUP.findVirtual(ResultSet.class, "getObject",
+                            MethodType.methodType(Object.class, int.class, Class.class)),
+                    2, fieldType);
+        }
+
+        reader = MethodHandles.insertArguments(reader, 1, index);
+        return reader.asType(MethodType.methodType(fieldType, ResultSet.class));
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase();
+    }
+
+    private static final class Handles {
+        final MethodHandle factory;     // (ResultSet)Object
+        final MethodHandle[] columns;   // (Object, ResultSet)void each
+
+        Handles(MethodHandle factory, MethodHandle[] columns) {
+            this.factory = factory;
+            this.columns = columns;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * Loads a large number of rows into a table far faster than inserting them one at a time.
+ *
+ * Inserting through an updatable ResultSet (see ResultSetDatabaseInsert) or with one INSERT per row
+ * costs a round trip and a statement execution per row. BulkLoader has two faster ways of doing it:
+ *
+ * MULTI_ROW_INSERT rewrites the rows into INSERT statements that carry many rows each:
+ *      insert into transactions (transaction_amount, transaction_date) values (?, ?), (?, ?), ...
+ * Each statement holds as many rows as will fit in the server's max_allowed_packet (and no more
+ * than the 65535 parameters a prepared statement can have). This is plain sql so it works with any
+ * database.
+ *
+ * LOAD_DATA streams the rows to MySQL as CSV with LOAD DATA LOCAL INFILE. The CSV is generated as
+ * the server reads it so the rows are never all in memory at once. This is the fastest way to get
+ * data into MySQL but needs allowLoadLocalInfile=true in the connection url (and local_infile
+ * enabled on the server). Note that LOAD DATA turns bad values into warnings rather than errors.
+ * The stream is handed to the driver through the setLocalInfileInputStream() method of MySQL
+ * Connector/J's statements, found by reflection so this class doesn't depend on the driver's
+ * internal classes.
+ *
+ * AUTO uses LOAD_DATA when connected to MySQL with allowLoadLocalInfile=true in the connection url
+ * and the driver's statements can take the stream, and MULTI_ROW_INSERT otherwise. When the option
+ * is set through the connection's Properties instead of the url, ask for LOAD_DATA explicitly.
+ */
+
+package com.iainhemstock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class BulkLoader<T> {
+
+    public enum Mode { AUTO, MULTI_ROW_INSERT, LOAD_DATA }
+
+    public static final long DEFAULT_MAX_PACKET_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_ROWS_PER_STATEMENT = 10_000;
+
+    private static final int MAX_PLACEHOLDERS = 65_535;
+    // room left in the packet for the protocol header and the start of the statement
+    private static final int PACKET_HEADROOM_BYTES = 1024;
+
+    /**
+     * The values of a row, in the same order as the columns given to the BulkLoader.
+     */
+    @FunctionalInterface
+    public interface RowValues<T> {
+        Object[] values(T row);
+    }
+
+    private final Connection cxn;
+    private final String table;
+    private final String[] columns;
+    private final RowValues<T> rowValues;
+    private final Mode mode;
+    private long maxPacketBytes;
+
+    public BulkLoader(Connection cxn, String table, String[] columns, RowValues<T> rowValues, Mode mode) {
+        this.cxn = cxn;
+        this.table = table;
+        this.columns = columns.clone();
+        this.rowValues = rowValues;
+        this.mode = mode;
+    }
+
+    /**
+     * A loader for the transactions table. The id column is left for the database to generate.
+     */
+    public static BulkLoader<TransactionRecord> forTransactions(Connection cxn, Mode mode) {
+        return new BulkLoader<>(cxn, "transactions",
+                new String[] { "transaction_amount", "transaction_date" },
+                row -> new Object[] { row.getTransactionAmount(), row.getTransactionDate() },
+                mode);
+    }
+
+    /**
+     * The most bytes a multi-row INSERT may take, instead of the server's max_allowed_packet on
+     * MySQL or DEFAULT_MAX_PACKET_BYTES on other databases.
+     */
+    public BulkLoader<T> maxPacketBytes(long maxPacketBytes) {
+        if (maxPacketBytes <= PACKET_HEADROOM_BYTES)
+            throw new IllegalArgumentException("Max packet size must be more than " + PACKET_HEADROOM_BYTES
+                                               + " bytes: " + maxPacketBytes);
+        this.maxPacketBytes = maxPacketBytes;
+        return this;
+    }
+
+    public WriteStats load(Stream<T> rows) throws SQLException {
+        return load(rows.iterator());
+    }
+
+    public WriteStats load(Iterator<T> rows) throws SQLException {
+        WriteStats stats = new WriteStats();
+        long start = System.nanoTime();
+        try {
+            if (!useLoadData() || !loadData(rows, stats))
+                multiRowInsert(rows, stats);
+        }
+        finally {
+            stats.setElapsedNanos(System.nanoTime() - start);
+        }
+        return stats;
+    }
+
+    private boolean useLoadData() throws SQLException {
+        switch (mode) {
+            case LOAD_DATA:
+                return true;
+            case MULTI_ROW_INSERT:
+                return false;
+            default:
+                DatabaseMetaData meta = cxn.getMetaData();
+                String url = meta.getURL();
+                return meta.getDatabaseProductName().contains("MySQL")
+                    && url != null && url.toLowerCase().contains("allowloadlocalinfile=true");
+        }
+    }
+
+    //==============================================================================================
+    // Multi-row INSERT
+    //==============================================================================================
+
+    private void multiRowInsert(Iterator<T> rows, WriteStats stats) throws SQLException {
+        int maxRows = Math.min(DEFAULT_MAX_ROWS_PER_STATEMENT, MAX_PLACEHOLDERS / columns.length);
+        long maxBytes = maxPacketBytes() - PACKET_HEADROOM_BYTES;
+        String rowPlaceholders = placeholders();
+
+        List<Object[]> pending = new ArrayList<>();
+        long pendingBytes = insertPrefix().length();
+        String fullStatementSql = null;
+
+        while (rows.hasNext()) {
+            Object[] values = valuesOf(rows.next());
+            long rowBytes = estimateBytes(values) + rowPlaceholders.length() + 2;
+
+            if (!pending.isEmpty() && (pending.size() == maxRows || pendingBytes + rowBytes > maxBytes)) {
+                // most statements are full ones of the same size so keep that sql around
+                if (pending.size() == maxRows && fullStatementSql == null)
+                    fullStatementSql = insertSql(maxRows);
+                execute(pending.size() == maxRows ? fullStatementSql : insertSql(pending.size()), pending, stats);
+                pending.clear();
+                pendingBytes = insertPrefix().length();
+            }
+
+            pending.add(values);
+            pendingBytes += rowBytes;
+        }
+
+        if (!pending.isEmpty())
+            execute(insertSql(pending.size()), pending, stats);
+    }
+
+    private void execute(String sql, List<Object[]> rows, WriteStats stats) throws SQLException {
+        long start = System.nanoTime();
+        try (PreparedStatement statement = cxn.prepareStatement(sql)) {
+            int param = 1;
+            for (Object[] values : rows)
+                for (Object value : values)
+                    statement.setObject(param++, value);
+            statement.executeUpdate();
+        }
+        stats.recordRoundTrip(rows.size(), System.nanoTime() - start);
+    }
+
+    private long maxPacketBytes() throws SQLException {
+        if (maxPacketBytes > 0)
+            return maxPacketBytes;
+        if (!cxn.getMetaData().getDatabaseProductName().contains("MySQL"))
+            return DEFAULT_MAX_PACKET_BYTES;
+
+        try (Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery("select @@max_allowed_packet"))
+        {
+            return rs.next() ? rs.getLong(1) : DEFAULT_MAX_PACKET_BYTES;
+        }
+    }
+
+    private String insertPrefix() {
+        return "insert into " + table + " (" + String.join(", ", columns) + ") values ";
+    }
+
+    private String placeholders() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < columns.length; ++i)
+            sb.append(i == 0 ? "?" : ", ?");
+        return sb.append(')').toString();
+    }
+
+    private String insertSql(int rowCount) {
+        String row = placeholders();
+        StringBuilder sb = new StringBuilder(insertPrefix().length() + rowCount * (row.length() + 2));
+        sb.append(insertPrefix());
+        for (int i = 0; i < rowCount; ++i) {
+            if (i > 0) sb.append(", ");
+            sb.append(row);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A pessimistic guess at how many bytes the values take up once the driver has sent them.
+     */
+    private static long estimateBytes(Object[] values) {
+        long bytes = 0;
+        for (Object value : values) {
+            if (value == null)
+                bytes += 4;
+            else if (value instanceof CharSequence)
+                bytes += ((CharSequence) value).length() * 3L + 2; // worst case utf-8 plus quotes
+            else if (value instanceof byte[])
+                bytes += ((byte[]) value).length * 2L + 3;         // worst case escaped
+            else
+                bytes += 32;                                        // numbers, dates and times
+        }
+        return bytes;
+    }
+
+    private Object[] valuesOf(T row) {
+        Object[] values = rowValues.values(row);
+        if (values.length != columns.length)
+            throw new IllegalArgumentException(String.format(
+                "Row has %d values but %d columns are being loaded", values.length, columns.length));
+        return values;
+    }
+
+    //==============================================================================================
+    // LOAD DATA LOCAL INFILE
+    //==============================================================================================
+
+    /**
+     * Streams the rows with LOAD DATA, or returns false without reading any of them when the driver
+     * can't take the stream and AUTO can fall back to multi-row inserts.
+     */
+    private boolean loadData(Iterator<T> rows, WriteStats stats) throws SQLException {
+        String sql =
+            "load data local infile 'bulk-loader.csv' " +
+            "into table " + table + " " +
+            "character set utf8mb4 " +
+            "fields terminated by ',' optionally enclosed by '\"' escaped by '\\\\' " +
+            "lines terminated by '\\n' " +
+            "(" + String.join(", ", columns) + ")";
+
+        long start = System.nanoTime();
+        try (Statement statement = cxn.createStatement()) {
+            // the driver's own statement, behind any pool or instrumentation proxies
+            Statement target = statement.unwrap(Statement.class);
+            Method setLocalInfileInputStream = localInfileSetter(target);
+            if (setLocalInfileInputStream == null) {
+                if (mode == Mode.LOAD_DATA)
+                    throw new SQLFeatureNotSupportedException(
+                        "The JDBC driver can't stream rows to LOAD DATA LOCAL INFILE: " + target.getClass().getName());
+                return false;
+            }
+
+            // the driver reads the file contents from this stream instead of from the file system
+            try {
+                setLocalInfileInputStream.invoke(target, new CsvInputStream(rows));
+            }
+            catch (InvocationTargetException ex) {
+                throw new SQLException("Failed to set the LOAD DATA input stream", ex.getCause());
+            }
+            catch (IllegalAccessException ex) {
+                throw new SQLException("Failed to set the LOAD DATA input stream", ex);
+            }
+            int rowsLoaded = statement.executeUpdate(sql);
+            stats.recordRoundTrip(rowsLoaded, System.nanoTime() - start);
+            return true;
+        }
+    }
+
+    /**
+     * MySQL Connector/J's Statement.setLocalInfileInputStream(InputStream), or null for a driver
+     * that doesn't have it.
+     */
+    private static Method localInfileSetter(Statement statement) {
+        try {
+            Method method = statement.getClass().getMethod("setLocalInfileInputStream", InputStream.class);
+            return method.trySetAccessible() ? method : null;
+        }
+        catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Turns rows into CSV lines one row at a time, as the driver reads the stream.
+     */
+    private class CsvInputStream extends InputStream {
+        private final Iterator<T> rows;
+        private final StringBuilder line = new StringBuilder();
+        private byte[] buffer = new byte[0];
+        private int position;
+
+        CsvInputStream(Iterator<T> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() {
+            while (position == buffer.length) {
+                if (!rows.hasNext())
+                    return false;
+
+                line.setLength(0);
+                Object[] values = valuesOf(rows.next());
+                for (int i = 0; i < values.length; ++i) {
+                    if (i > 0) line.append(',');
+                    appendField(values[i]);
+                }
+                line.append('\n');
+
+                buffer = line.toString().getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            return true;
+        }
+
+        private void appendField(Object value) {
+            if (value == null) {
+                line.append("\\N");
+            }
+            else if (value instanceof BigDecimal) {
+                line.append(((BigDecimal) value).toPlainString());
+            }
+            else if (value instanceof Boolean) {
+                line.append((Boolean) value ? '1' : '0');
+            }
+            else if (value instanceof Number || value instanceof Timestamp
+                        || value instanceof java.sql.Date || value instanceof Time) {
+                line.append(value);
+            }
+            else if (value instanceof java.util.Date) {
+                line.append(new Timestamp(((java.util.Date) value).getTime()));
+            }
+            else {
+                String s = value.toString();
+                line.append('"');
+                for (int i = 0; i < s.length(); ++i) {
+                    char c = s.charAt(i);
+                    switch (c) {
+                        case '\\': line.append("\\\\"); break;
+                        case '"':  line.append("\\\""); break;
+                        case '\n': line.append("\\n"); break;
+                        case '\r': line.append("\\r"); break;
+                        case '\0': line.append("\\0"); break;
+                        default:   line.append(c);
+                    }
+                }
+                line.append('"');
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Calls a stored procedure once for each element of a stream of arguments, a batch of calls at a
+ * time, with several batches running at once on their own pooled connections, and hands back one
+ * result per call in the same order as the arguments:
+ *
+ *      CallPipeline<Stat> pipeline = new CallPipeline<>(async, "{call calculateStatistics(?, ?)}",
+ *              (cs, stat) -> { cs.setInt(1, stat.getId()); cs.setString(2, stat.getCode()); });
+ *      List<Integer> updateCounts = pipeline.executeBatch(stats.stream());
+ *
+ * Results are matched up with their calls by position: the nth argument gives the nth result, no
+ * matter which batch it went in or which batch finished first.
+ *
+ * executeBatch() uses addBatch()/executeBatch(), one round trip per batch, and the result of each
+ * call is its update count. JDBC has no way of reading OUT parameters or result sets of a call in a
+ * batch, so execute() runs the calls of a batch one after the other on the batch's connection and
+ * statement and reads each call's result with a ResultReader straight after it runs. That still
+ * saves borrowing a connection and preparing the call every time and lets batches run in parallel.
+ *
+ * The batches run on an AsyncJdbc, so at most its maxConcurrency run at once and each has its
+ * timeout. No more than maxInFlightBatches are queued or running at a time, so arguments are only
+ * read from the stream as fast as the database can keep up. If a batch fails the batches after it
+ * are cancelled and the failure is thrown. As explained in BatchUpdate, calls in earlier batches, and
+ * earlier calls in the failed batch when it isn't run in a transaction, stay applied.
+ */
+
+package com.iainhemstock;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+public class CallPipeline<A> {
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    /**
+     * Sets the parameters of the call for one element of the stream, and registers any OUT
+     * parameters.
+     */
+    @FunctionalInterface
+    public interface ArgumentBinder<A> {
+        void bind(CallableStatement statement, A args) throws SQLException;
+    }
+
+    /**
+     * Reads the result of a single call once it has executed, from its OUT parameters or from
+     * statement.getResultSet().
+     */
+    @FunctionalInterface
+    public interface ResultReader<A, R> {
+        R read(CallableStatement statement, A args) throws SQLException;
+    }
+
+    // runs one batch of calls on a connection and returns one result per call
+    private interface BatchCall<A, R> {
+        List<R> run(Connection cxn, List<A> batch) throws SQLException;
+    }
+
+    private final AsyncJdbc async;
+    private final String sql;
+    private final ArgumentBinder<A> binder;
+    private final CallPipelineStats stats = new CallPipelineStats();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxInFlightBatches;
+    private boolean transactional;
+
+    /**
+     * Keeps up to twice as many batches in flight as the AsyncJdbc runs at once, so there is always
+     * another batch waiting as soon as one finishes.
+     */
+    public CallPipeline(AsyncJdbc async, String sql, ArgumentBinder<A> binder) {
+        this.async = async;
+        this.sql = sql;
+        this.binder = binder;
+        this.maxInFlightBatches = 2 * async.getMaxConcurrency();
+    }
+
+    public CallPipeline<A> batchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 1 runs the batches one after the other, in order.
+     */
+    public CallPipeline<A> maxInFlightBatches(int maxInFlightBatches) {
+        if (maxInFlightBatches < 1)
+            throw new IllegalArgumentException("Max in flight batches must be at least 1: " + maxInFlightBatches);
+        this.maxInFlightBatches = maxInFlightBatches;
+        return this;
+    }
+
+    /**
+     * Runs each batch in its own transaction so a failed batch is rolled back as a whole.
+     */
+    public CallPipeline<A> transactional(boolean transactional) {
+        this.transactional = transactional;
+        return this;
+    }
+
+    public CallPipelineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * The update count of each call, in the order of the arguments.
+     */
+    public List<Integer> executeBatch(Stream<A> args) throws SQLException {
+        return run(args.iterator(), (cxn, batch) -> {
+            try (CallableStatement statement = cxn.prepareCall(sql)) {
+                for (A arg : batch) {
+                    binder.bind(statement, arg);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                List<Integer> results = new ArrayList<>(counts.length);
+                for (int count : counts)
+                    results.add(count);
+                return results;
+            }
+        });
+    }
+
+    /**
+     * The result of each call as read by the reader, in the order of the arguments.
+     */
+    public <R> List<R> execute(Stream<A> args, ResultReader<A, R> reader) throws SQLException {
+        return run(args.iterator(), (cxn, batch) -> {
+            try (CallableStatement statement = cxn.prepareCall(sql)) {
+                List<R> results = new ArrayList<>(batch.size());
+                for (A arg : batch) {
+                    binder.bind(statement, arg);
+                    statement.execute();
+                    results.add(reader.read(statement, arg));
+                    statement.clearParameters();
+                }
+                return results;
+            }
+        });
+    }
+
+    private <R> List<R> run(Iterator<A> args, BatchCall<A, R> call) throws SQLException {
+        List<R> results = new ArrayList<>();
+        // oldest batch first, so results are always collected in the order of the arguments
+        Deque<CompletableFuture<List<R>>> inFlight = new ArrayDeque<>();
+
+        try {
+            while (args.hasNext()) {
+                List<A> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && args.hasNext())
+                    batch.add(args.next());
+
+                if (inFlight.size() >= maxInFlightBatches)
+                    results.addAll(join(inFlight.removeFirst()));
+                inFlight.addLast(async.execute(cxn -> runBatch(cxn, batch, call)));
+            }
+            while (!inFlight.isEmpty())
+                results.addAll(join(inFlight.removeFirst()));
+            return results;
+        }
+        finally {
+            for (CompletableFuture<List<R>> batch : inFlight)
+                batch.cancel(true);
+        }
+    }
+
+    private <R> List<R> runBatch(Connection cxn, List<A> batch, BatchCall<A, R> call) throws SQLException {
+        long start = System.nanoTime();
+        boolean restoreAutoCommit = transactional && cxn.getAutoCommit();
+        try {
+            if (restoreAutoCommit)
+                cxn.setAutoCommit(false);
+            List<R> results = call.run(cxn, batch);
+            if (transactional)
+                cxn.commit();
+            stats.recordBatch(batch.size(), System.nanoTime() - start);
+            return results;
+        }
+        catch (SQLException | RuntimeException ex) {
+            stats.recordFailedBatch();
+            if (transactional) {
+                try { cxn.rollback(); } // rolls back the calls in this batch that had already run
+                catch (SQLException rollbackEx) { ex.addSuppressed(rollbackEx); }
+            }
+            throw ex;
+        }
+        finally {
+            if (restoreAutoCommit)
+                cxn.setAutoCommit(true);
+        }
+    }
+
+    private static <R> List<R> join(CompletableFuture<List<R>> batch) throws SQLException {
+        try {
+            return batch.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof SQLException)
+                throw (SQLException) ex.getCause();
+            throw new SQLException("Stored procedure batch failed", ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.iainhemstock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a CallPipeline across every run: how many calls were made, how they were split
+ * into batches and how long each batch took to run on its connection, commit included.
+ */
+public class CallPipelineStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final AtomicInteger minBatchSize = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    void recordBatch(int size, long nanos) {
+        calls.add(size);
+        batches.increment();
+        minBatchSize.accumulateAndGet(size, Math::min);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        batchLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordFailedBatch() { failedBatches.increment(); }
+
+    public long getCalls() { return calls.sum(); }
+    public long getBatches() { return batches.sum(); }
+    public long getFailedBatches() { return failedBatches.sum(); }
+    public int getMinBatchSize() { return getBatches() == 0 ? 0 : minBatchSize.get(); }
+    public int getMaxBatchSize() { return maxBatchSize.get(); }
+    public LatencyHistogram getBatchLatency() { return batchLatency; }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0.0 : (double) calls.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d batches=%d failed=%d batchSize(min/avg/max)=%d/%.1f/%d batchLatency[%s]",
+                getCalls(), getBatches(), getFailedBatches(), getMinBatchSize(), getAverageBatchSize(),
+                getMaxBatchSize(), batchLatency);
+    }
+}
@@ -1,22 +1,26 @@
 /**
  * A CallableStatement is a way to call stored procedures in the database. It is similar to a
  * PreparedStatement in that it has parameters which can be supplied to it.
+ *
+ * To call a stored procedure many thousands of times see CallPipeline, which batches the calls and
+ * runs the batches in parallel on pooled connections.
  */
 
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.CallableStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class CallableStatementDemo {
 
     public static void main(String[] args) {
 
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             CallableStatement statement = cxn.prepareCall("{call calculateStatistics(?, ?)}"))
         {
 
@@ -83,6 +87,44 @@ public class CallableStatementDemo {
             }
         }
         catch (SQLException ex) { ex.printStackTrace(); }
+
+        try (AsyncJdbc async = new AsyncJdbc(ConnectionProvider.getPool())) {
+
+            //======================================================================================
+            // Calls a stored procedure for every element of a stream.
+            // The calls are sent in batches of 500, several batches at once, and the update count
+            // of each call comes back in the same order as the stream.
+            //======================================================================================
+            CallPipeline<Integer> pipeline =
+                new CallPipeline<Integer>(async, "{call calculateStatistics(?, ?)}", (cs, id) -> {
+                        cs.setInt(1, id);
+                        cs.setString(2, "A");
+                    })
+                    .batchSize(500);
+
+            List<Integer> recordsAffected =
+                pipeline.executeBatch(IntStream.rangeClosed(1, 20_000).boxed());
+
+            //======================================================================================
+            // Reading the OUT parameters of every call.
+            // OUT parameters can't be read from a batch so each call is executed on its own, but
+            // the calls still share a connection and statement per batch.
+            //======================================================================================
+            CallPipeline<Integer> outPipeline =
+                new CallPipeline<Integer>(async, "{call calculateStatistics(?, ?)}", (cs, id) -> {
+                        cs.setInt(1, id);
+                        cs.setString(2, "A");
+                        cs.registerOutParameter(2, java.sql.Types.VARCHAR);
+                    })
+                    .batchSize(500);
+
+            List<String> out2Params = outPipeline.execute(IntStream.rangeClosed(1, 20_000).boxed(),
+                (cs, id) -> cs.getString(2));
+
+            System.out.println(pipeline.getStats());
+            System.out.println(outPipeline.getStats());
+        }
+        catch (SQLException ex) { ex.printStackTrace(); }
     }
 
 }
@@ -10,7 +10,7 @@
  *
  * The flow goes like this:
  *
- * ---- If the call to DriverManager.getConnection() throws then we never had a Connection object and
+ * ---- If the call to ConnectionProvider.getConnection() throws then we never had a Connection object and
  * -- so there is nothing to close. We move into the catch clause to handle the exception.
  *
  * ---- If the call to Connection.createStatement() fails then we never had a Statement object and so
@@ -30,7 +30,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -42,7 +41,7 @@ public class ClosingJdbcResources {
         // Basic skeleton of closing resoures and exception handling
         //==========================================================================================
         try {
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             try {
                 Statement statement = cxn.createStatement();
                 try {
@@ -0,0 +1,446 @@
+/**
+ * A copy of a whole query result held in memory a column at a time, so the rows can be revisited in
+ * any order long after the statement, the ResultSet and the connection have been closed, without
+ * the server having to keep a scrollable cursor open.
+ *
+ * Each column is stored as a single primitive array rather than an object per value:
+ *
+ *      INTEGER, SMALLINT, TINYINT, BIT, BOOLEAN    int[]
+ *      BIGINT                                      long[]
+ *      DOUBLE, FLOAT, REAL, DECIMAL, NUMERIC       double[]
+ *      TIMESTAMP, DATE, TIME                       long[] of milliseconds since the epoch
+ *      anything else                               Object[] of whatever getObject() returned
+ *
+ * with a BitSet marking the nulls. A million rows of the transactions table take about 20MB this
+ * way, several times less than the same rows as TransactionRecord objects. DECIMAL and NUMERIC
+ * values are kept as doubles so are only as exact as getDouble() on the original ResultSet, and
+ * times lose anything finer than a millisecond.
+ *
+ * TIMESTAMP WITH TIME ZONE values are kept as OffsetDateTime. getTimestamp() and getDate() on an
+ * Object[] column convert java.util.Date, the java.time classes and "yyyy-mm-dd [hh:mm:ss]" strings,
+ * and throw SQLException for anything else.
+ *
+ * A ColumnarTable never changes once built and can be shared between threads. It is read through a
+ * Cursor, which has the same positioning and getter methods as a scrollable ResultSet:
+ *
+ *      ColumnarTable.Cursor rs = table.cursor();
+ *      rs.afterLast();
+ *      while (rs.previous())
+ *          total += rs.getDouble("transaction_amount");
+ *
+ * Each cursor has its own position, so any number of them can read the same table at once.
+ */
+
+package com.iainhemstock;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class ColumnarTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private enum Kind { INT, LONG, DOUBLE, TIMESTAMP, DATE, TIME, OBJECT }
+
+    private final String[] labels;
+    private final int[] jdbcTypes;
+    private final Kind[] kinds;
+    // one of int[], long[], double[] or Object[] per column, depending on its kind
+    private final Object[] values;
+    private final BitSet[] nulls;
+    private final Map<String, Integer> indexByLabel;
+    private final int rowCount;
+
+    private ColumnarTable(String[] labels, int[] jdbcTypes, Kind[] kinds, Object[] values, BitSet[] nulls,
+                          int rowCount) {
+        this.labels = labels;
+        this.jdbcTypes = jdbcTypes;
+        this.kinds = kinds;
+        this.values = values;
+        this.nulls = nulls;
+        this.rowCount = rowCount;
+        this.indexByLabel = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        // the first column with a label wins, the same as ResultSet.findColumn()
+        for (int i = labels.length - 1; i >= 0; --i)
+            indexByLabel.put(labels[i], i + 1);
+    }
+
+    /**
+     * Reads every remaining row of the ResultSet. The ResultSet is left after its last row but is
+     * not closed.
+     */
+    public static ColumnarTable from(ResultSet rs) throws SQLException {
+        ResultSetMetaData md = rs.getMetaData();
+        int columnCount = md.getColumnCount();
+        String[] labels = new String[columnCount];
+        int[] jdbcTypes = new int[columnCount];
+        Kind[] kinds = new Kind[columnCount];
+        Object[] values = new Object[columnCount];
+        BitSet[] nulls = new BitSet[columnCount];
+
+        for (int c = 0; c < columnCount; ++c) {
+            labels[c] = md.getColumnLabel(c + 1);
+            jdbcTypes[c] = md.getColumnType(c + 1);
+            kinds[c] = kindOf(jdbcTypes[c]);
+            values[c] = newArray(kinds[c], INITIAL_CAPACITY);
+            nulls[c] = new BitSet();
+        }
+
+        int row = 0;
+        int capacity = INITIAL_CAPACITY;
+        while (rs.next()) {
+            if (row == capacity) {
+                capacity *= 2;
+                for (int c = 0; c < columnCount; ++c)
+                    values[c] = resize(values[c], capacity);
+            }
+            for (int c = 0; c < columnCount; ++c)
+                read(rs, c, jdbcTypes[c], kinds[c], values[c], nulls[c], row);
+            ++row;
+        }
+
+        for (int c = 0; c < columnCount; ++c)
+            values[c] = resize(values[c], row);
+
+        return new ColumnarTable(labels, jdbcTypes, kinds, values, nulls, row);
+    }
+
+    public int getRowCount() { return rowCount; }
+    public int getColumnCount() { return labels.length; }
+
+    /** 1-based, the same as ResultSetMetaData */
+    public String getColumnLabel(int column) throws SQLException {
+        return labels[checkColumn(column)];
+    }
+
+    /** 1-based, one of the java.sql.Types constants */
+    public int getColumnType(int column) throws SQLException {
+        return jdbcTypes[checkColumn(column)];
+    }
+
+    public int findColumn(String label) throws SQLException {
+        Integer column = indexByLabel.get(label);
+        if (column == null)
+            throw new SQLException("Column not found: " + label);
+        return column;
+    }
+
+    /**
+     * A new cursor positioned before the first row.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Moves over the rows of the table the way a TYPE_SCROLL_INSENSITIVE ResultSet does. Rows and
+     * columns are numbered from 1. Not safe to share between threads, create a cursor per thread.
+     */
+    public final class Cursor {
+
+        // 0 is before the first row and rowCount + 1 is after the last row
+        private int position;
+        private boolean wasNull;
+
+        private Cursor() {}
+
+        public boolean next() { return moveTo(position + 1); }
+        public boolean previous() { return moveTo(position - 1); }
+        public boolean first() { return moveTo(1); }
+        public boolean last() { return moveTo(rowCount); }
+        public void beforeFirst() { position = 0; }
+        public void afterLast() { position = rowCount + 1; }
+
+        /**
+         * A negative row counts back from the end, so -1 is the last row.
+         */
+        public boolean absolute(int row) {
+            return moveTo(row >= 0 ? row : rowCount + 1 + row);
+        }
+
+        public boolean relative(int rows) {
+            return moveTo(position + rows);
+        }
+
+        /** 0 when not on a row */
+        public int getRow() { return isOnRow() ? position : 0; }
+        public boolean isBeforeFirst() { return rowCount > 0 && position == 0; }
+        public boolean isAfterLast() { return rowCount > 0 && position == rowCount + 1; }
+        public boolean isFirst() { return rowCount > 0 && position == 1; }
+        public boolean isLast() { return rowCount > 0 && position == rowCount; }
+
+        public int findColumn(String label) throws SQLException {
+            return ColumnarTable.this.findColumn(label);
+        }
+
+        public boolean wasNull() { return wasNull; }
+
+        public int getInt(String label) throws SQLException { return getInt(findColumn(label)); }
+        public long getLong(String label) throws SQLException { return getLong(findColumn(label)); }
+        public double getDouble(String label) throws SQLException { return getDouble(findColumn(label)); }
+        public boolean getBoolean(String label) throws SQLException { return getBoolean(findColumn(label)); }
+        public String getString(String label) throws SQLException { return getString(findColumn(label)); }
+        public BigDecimal getBigDecimal(String label) throws SQLException { return getBigDecimal(findColumn(label)); }
+        public Timestamp getTimestamp(String label) throws SQLException { return getTimestamp(findColumn(label)); }
+        public Date getDate(String label) throws SQLException { return getDate(findColumn(label)); }
+        public Object getObject(String label) throws SQLException { return getObject(findColumn(label)); }
+
+        public int getInt(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return 0;
+            switch (kinds[c]) {
+                case INT: return ((int[]) values[c])[position - 1];
+                case LONG: return (int) ((long[]) values[c])[position - 1];
+                case DOUBLE: return (int) ((double[]) values[c])[position - 1];
+                default: return toNumber(c).intValue();
+            }
+        }
+
+        public long getLong(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return 0;
+            switch (kinds[c]) {
+                case INT: return ((int[]) values[c])[position - 1];
+                case LONG: case TIMESTAMP: case DATE: case TIME: return ((long[]) values[c])[position - 1];
+                case DOUBLE: return (long) ((double[]) values[c])[position - 1];
+                default: return toNumber(c).longValue();
+            }
+        }
+
+        public double getDouble(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return 0.0;
+            switch (kinds[c]) {
+                case INT: return ((int[]) values[c])[position - 1];
+                case LONG: return ((long[]) values[c])[position - 1];
+                case DOUBLE: return ((double[]) values[c])[position - 1];
+                default: return toNumber(c).doubleValue();
+            }
+        }
+
+        public boolean getBoolean(int column) throws SQLException {
+            Object value = getObject(column);
+            if (value == null)
+                return false;
+            if (value instanceof Boolean)
+                return (Boolean) value;
+            if (value instanceof Number)
+                return ((Number) value).doubleValue() != 0.0;
+            return "true".equalsIgnoreCase(value.toString()) || "1".equals(value.toString());
+        }
+
+        public String getString(int column) throws SQLException {
+            Object value = getObject(column);
+            return value == null ? null : value.toString();
+        }
+
+        public BigDecimal getBigDecimal(int column) throws SQLException {
+            Object value = getObject(column);
+            if (value == null || value instanceof BigDecimal)
+                return (BigDecimal) value;
+            if (value instanceof Double)
+                return BigDecimal.valueOf((Double) value);
+            if (value instanceof Number)
+                return BigDecimal.valueOf(((Number) value).longValue());
+            return new BigDecimal(value.toString());
+        }
+
+        public Timestamp getTimestamp(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return null;
+            if (kinds[c] == Kind.OBJECT)
+                return toTimestamp(c);
+            return new Timestamp(epochMillis(c));
+        }
+
+        public Date getDate(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return null;
+            if (kinds[c] == Kind.OBJECT) {
+                Object value = ((Object[]) values[c])[position - 1];
+                return value instanceof Date ? (Date) value : new Date(toTimestamp(c).getTime());
+            }
+            return new Date(epochMillis(c));
+        }
+
+        public Object getObject(int column) throws SQLException {
+            int c = current(column);
+            if (wasNull)
+                return null;
+            int index = position - 1;
+            switch (kinds[c]) {
+                case INT:
+                    int value = ((int[]) values[c])[index];
+                    return jdbcTypes[c] == Types.BOOLEAN || jdbcTypes[c] == Types.BIT ? value != 0 : value;
+                case LONG: return ((long[]) values[c])[index];
+                case DOUBLE: return ((double[]) values[c])[index];
+                case TIMESTAMP: return new Timestamp(((long[]) values[c])[index]);
+                case DATE: return new Date(((long[]) values[c])[index]);
+                case TIME: return new Time(((long[]) values[c])[index]);
+                default: return ((Object[]) values[c])[index];
+            }
+        }
+
+        private boolean moveTo(int row) {
+            position = Math.max(0, Math.min(row, rowCount + 1));
+            return isOnRow();
+        }
+
+        private boolean isOnRow() {
+            return position >= 1 && position <= rowCount;
+        }
+
+        // 0-based index of the column, after checking there is a current row
+        private int current(int column) throws SQLException {
+            int c = checkColumn(column);
+            if (!isOnRow())
+                throw new SQLException("Cursor is not on a row");
+            wasNull = nulls[c].get(position - 1);
+            return c;
+        }
+
+        private long epochMillis(int c) throws SQLException {
+            if (kinds[c] != Kind.TIMESTAMP && kinds[c] != Kind.DATE && kinds[c] != Kind.TIME)
+                throw new SQLException(String.format("Column %s is not a date or time", labels[c]));
+            return ((long[]) values[c])[position - 1];
+        }
+
+        // the value of an OBJECT column, e.g. a TIMESTAMP WITH TIME ZONE or a date held as a string
+        private Timestamp toTimestamp(int c) throws SQLException {
+            Object value = ((Object[]) values[c])[position - 1];
+            if (value instanceof Timestamp)
+                return (Timestamp) value;
+            if (value instanceof java.util.Date)
+                return new Timestamp(((java.util.Date) value).getTime());
+            if (value instanceof LocalDateTime)
+                return Timestamp.valueOf((LocalDateTime) value);
+            if (value instanceof LocalDate)
+                return Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+            if (value instanceof OffsetDateTime)
+                return Timestamp.from(((OffsetDateTime) value).toInstant());
+            if (value instanceof ZonedDateTime)
+                return Timestamp.from(((ZonedDateTime) value).toInstant());
+            if (value instanceof Instant)
+                return Timestamp.from((Instant) value);
+            String message = String.format("Column %s is not a date or time: %s", labels[c], value);
+            if (value instanceof String) {
+                String s = ((String) value).trim();
+                try {
+                    // yyyy-mm-dd hh:mm:ss[.f...] or just yyyy-mm-dd
+                    return s.indexOf(' ') < 0 ? Timestamp.valueOf(LocalDate.parse(s).atStartOfDay())
+                                              : Timestamp.valueOf(s);
+                }
+                catch (IllegalArgumentException | DateTimeParseException ex) {
+                    throw new SQLException(message, ex);
+                }
+            }
+            throw new SQLException(message);
+        }
+
+        private Number toNumber(int c) throws SQLException {
+            if (kinds[c] != Kind.OBJECT)
+                throw new SQLException(String.format("Column %s is not a number", labels[c]));
+            Object value = ((Object[]) values[c])[position - 1];
+            if (value instanceof Number)
+                return (Number) value;
+            try {
+                return new BigDecimal(value.toString());
+            }
+            catch (NumberFormatException ex) {
+                throw new SQLException(String.format("Column %s is not a number: %s", labels[c], value), ex);
+            }
+        }
+    }
+
+    private int checkColumn(int column) throws SQLException {
+        if (column < 1 || column > labels.length)
+            throw new SQLException(String.format("Column index out of range: %d", column));
+        return column - 1;
+    }
+
+    private static Kind kindOf(int jdbcType) {
+        switch (jdbcType) {
+            case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT: case Types.BIT: case Types.BOOLEAN:
+                return Kind.INT;
+            case Types.BIGINT:
+                return Kind.LONG;
+            case Types.DOUBLE: case Types.FLOAT: case Types.REAL: case Types.DECIMAL: case Types.NUMERIC:
+                return Kind.DOUBLE;
+            case Types.TIMESTAMP:
+                return Kind.TIMESTAMP;
+            case Types.DATE:
+                return Kind.DATE;
+            case Types.TIME:
+                return Kind.TIME;
+            default:
+                return Kind.OBJECT;
+        }
+    }
+
+    private static Object newArray(Kind kind, int capacity) {
+        switch (kind) {
+            case INT: return new int[capacity];
+            case DOUBLE: return new double[capacity];
+            case OBJECT: return new Object[capacity];
+            default: return new long[capacity];
+        }
+    }
+
+    private static Object resize(Object array, int length) {
+        if (array instanceof int[]) return Arrays.copyOf((int[]) array, length);
+        if (array instanceof long[]) return Arrays.copyOf((long[]) array, length);
+        if (array instanceof double[]) return Arrays.copyOf((double[]) array, length);
+        return Arrays.copyOf((Object[]) array, length);
+    }
+
+    private static void read(ResultSet rs, int c, int jdbcType, Kind kind, Object array, BitSet nulls,
+                             int row) throws SQLException {
+        int column = c + 1;
+        switch (kind) {
+            case INT:
+                ((int[]) array)[row] = rs.getInt(column);
+                break;
+            case LONG:
+                ((long[]) array)[row] = rs.getLong(column);
+                break;
+            case DOUBLE:
+                ((double[]) array)[row] = rs.getDouble(column);
+                break;
+            case TIMESTAMP: case DATE: case TIME:
+                // getTimestamp() works for all three and keeps the time part of a DATE if there is one
+                Timestamp timestamp = rs.getTimestamp(column);
+                if (timestamp != null)
+                    ((long[]) array)[row] = timestamp.getTime();
+                break;
+            default:
+                // the JDBC 4.2 type rather than whatever class the driver has of its own
+                ((Object[]) array)[row] = jdbcType == Types.TIMESTAMP_WITH_TIMEZONE
+                                          ? rs.getObject(column, OffsetDateTime.class)
+                                          : rs.getObject(column);
+                break;
+        }
+        if (rs.wasNull())
+            nulls.set(row);
+    }
+}
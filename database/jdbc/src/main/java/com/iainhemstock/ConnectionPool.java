@@ -0,0 +1,516 @@
+/**
+ * Opening a Connection with DriverManager means a new TCP connection, a handshake and an
+ * authentication exchange with the database every single time. For short queries this can easily
+ * cost more than the query itself. A connection pool keeps a number of physical connections open
+ * and lends them out. Calling close() on a borrowed connection doesn't close the physical connection,
+ * it hands it back to the pool so the next caller can reuse it.
+ *
+ * The pool is bounded. At most maxSize connections exist at any one time and a caller that asks for
+ * a connection when all of them are in use waits up to borrowTimeoutMillis for one to be returned.
+ * A background housekeeper keeps at least minSize connections open, closes connections that have
+ * been sitting idle longer than idleTimeoutMillis and reports connections that have been borrowed
+ * for longer than leakThresholdMillis along with the stack trace of where they were borrowed.
+ *
+ * A connection that has been idle for longer than validateAfterIdleMillis is checked with
+ * Connection.isValid() before it is handed out (set it to 0 to validate on every borrow).
+ *
+ * Each pooled connection can keep a StatementCache so that prepareStatement(sql) and prepareCall(sql)
+ * reuse statements prepared by earlier borrowers of the same connection. statementCacheSize is the
+ * number of statements kept per connection, 0 turns the cache off.
+ *
+ * Since the pool is a javax.sql.DataSource any code that accepts a DataSource can use it.
+ */
+
+package com.iainhemstock;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+    // A waiting borrower wakes up at least this often to see whether a slot has been freed by a
+    // broken or evicted connection, which doesn't put anything back into the idle deque.
+    private static final long MAX_IDLE_WAIT_MILLIS = 100;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validateAfterIdleMillis;
+    private final int validationTimeoutSeconds;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    // Most recently returned connections sit at the head so they are handed out first. That keeps
+    // the hot connections hot and lets the ones at the tail go idle long enough to be evicted.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore borrowPermits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final PoolMetrics metrics = new PoolMetrics();
+    private final StatementCacheStats statementCacheStats = new StatementCacheStats();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+    private volatile PrintWriter logWriter;
+
+    /**
+     * Creates a pool for the database described by DBConfig.
+     */
+    public ConnectionPool() {
+        this(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD, DBConfig.POOL_MIN_SIZE, DBConfig.POOL_MAX_SIZE);
+    }
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize) {
+        this(url, user, password, minSize, maxSize,
+                DBConfig.POOL_BORROW_TIMEOUT_MILLIS,
+                DBConfig.POOL_IDLE_TIMEOUT_MILLIS,
+                DBConfig.POOL_VALIDATE_AFTER_IDLE_MILLIS,
+                DBConfig.POOL_VALIDATION_TIMEOUT_SECONDS,
+                DBConfig.POOL_LEAK_THRESHOLD_MILLIS,
+                DBConfig.POOL_STATEMENT_CACHE_SIZE);
+    }
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long validateAfterIdleMillis,
+                          int validationTimeoutSeconds, long leakThresholdMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException(
+                String.format("Invalid pool size: min=%d max=%d", minSize, maxSize));
+
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.borrowPermits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, Math.min(idleTimeoutMillis,
+                                leakThresholdMillis > 0 ? leakThresholdMillis : idleTimeoutMillis) / 2);
+        // the first run fills the pool up to minSize in the background
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the borrow timeout if every connection is
+     * in use. The connection must be closed to return it to the pool.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool has been closed");
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        try {
+            if (!borrowPermits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw borrowTimeout();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+
+        try {
+            PooledConnection pooled = takeOrOpen(deadline);
+            pooled.markBorrowed(leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null);
+            borrowed.add(pooled);
+            metrics.recordBorrow(System.nanoTime() - start);
+            return pooled.newHandle();
+        }
+        catch (SQLException | RuntimeException ex) {
+            borrowPermits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * A pool only hands out connections for the credentials it was created with.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+            "ConnectionPool only hands out connections for its configured user");
+    }
+
+    public PoolMetrics getMetrics() { return metrics; }
+    public StatementCacheStats getStatementCacheStats() { return statementCacheStats; }
+    public int getActiveCount() { return borrowed.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getTotalCount() { return totalConnections.get(); }
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Closes every idle connection and stops the housekeeper. Connections that are still borrowed
+     * are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null)
+            destroy(pooled);
+    }
+
+    private SQLException borrowTimeout() {
+        metrics.recordBorrowTimeout();
+        return new SQLTransientConnectionException(String.format(
+            "Timed out after %dms waiting for a connection (active=%d, max=%d)",
+            borrowTimeoutMillis, getActiveCount(), maxSize));
+    }
+
+    private PooledConnection takeOrOpen(long deadline) throws SQLException {
+        while (true) {
+            PooledConnection pooled = idle.pollFirst();
+            if (pooled == null && reserveSlot(maxSize)) {
+                try { return open(); }
+                catch (SQLException ex) {
+                    totalConnections.decrementAndGet();
+                    throw ex;
+                }
+            }
+
+            // Every slot is taken but we hold a borrow permit, so a connection is on its way back
+            // into the idle deque (or is being opened by the housekeeper).
+            if (pooled == null)
+                pooled = awaitIdle(deadline);
+
+            if (pooled != null) {
+                if (isUsable(pooled))
+                    return pooled;
+                destroy(pooled);
+            }
+        }
+    }
+
+    private PooledConnection awaitIdle(long deadline) throws SQLException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+            throw borrowTimeout();
+        try {
+            return idle.pollFirst(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_WAIT_MILLIS)),
+                                  TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", ex);
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (pooled.idleMillis(System.currentTimeMillis()) < validateAfterIdleMillis)
+            return true;
+
+        try {
+            if (pooled.physical.isValid(validationTimeoutSeconds))
+                return true;
+        }
+        catch (SQLException ex) { /* treated the same as invalid */ }
+
+        metrics.recordValidationFailure();
+        return false;
+    }
+
+    private boolean reserveSlot(int limit) {
+        while (true) {
+            int current = totalConnections.get();
+            if (current >= limit)
+                return false;
+            if (totalConnections.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        metrics.recordConnectionCreated();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            if (pooled.statementCache != null)
+                pooled.statementCache.reclaim();
+            if (closed || pooled.broken || pooled.physical.isClosed()) {
+                destroy(pooled);
+            }
+            else {
+                pooled.reset();
+                idle.offerFirst(pooled);
+                // close() may have drained the deque just before we put this one back
+                if (closed && idle.remove(pooled))
+                    destroy(pooled);
+            }
+        }
+        catch (SQLException ex) {
+            destroy(pooled);
+        }
+        finally {
+            borrowPermits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        metrics.recordConnectionDestroyed();
+        if (pooled.statementCache != null)
+            pooled.statementCache.invalidate();
+        try { pooled.physical.close(); }
+        catch (SQLException ex) { log("Failed to close pooled connection", ex); }
+    }
+
+    private void housekeep() {
+        try {
+            if (closed)
+                return;
+
+            long now = System.currentTimeMillis();
+
+            //======================================================================================
+            // Evict connections that have been idle too long, least recently used first, but never
+            // drop below the minimum size.
+            //======================================================================================
+            for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+                PooledConnection pooled = it.next();
+                if (totalConnections.get() <= minSize)
+                    break;
+                if (pooled.idleMillis(now) >= idleTimeoutMillis && idle.remove(pooled))
+                    destroy(pooled);
+            }
+
+            //======================================================================================
+            // Top up to the minimum size.
+            //======================================================================================
+            while (!closed && reserveSlot(minSize)) {
+                try {
+                    idle.offerLast(open());
+                }
+                catch (SQLException ex) {
+                    totalConnections.decrementAndGet();
+                    log("Failed to open connection while filling pool to its minimum size", ex);
+                    break;
+                }
+            }
+
+            //======================================================================================
+            // Report connections that look like they have been forgotten about.
+            //======================================================================================
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pooled : borrowed) {
+                    if (pooled.reportLeak(now, leakThresholdMillis)) {
+                        metrics.recordLeak();
+                        log(String.format("Connection has been borrowed for more than %dms, possible leak",
+                                leakThresholdMillis), pooled.borrowSite);
+                    }
+                }
+            }
+        }
+        catch (RuntimeException ex) {
+            // an exception escaping here would silently cancel all future housekeeping runs
+            log("Connection pool housekeeping failed", ex);
+        }
+    }
+
+    private void log(String message, Throwable cause) {
+        PrintWriter writer = logWriter;
+        if (writer != null) {
+            writer.println(message);
+            if (cause != null) cause.printStackTrace(writer);
+            writer.flush();
+        }
+        else {
+            System.err.println(message);
+            if (cause != null) cause.printStackTrace();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return logWriter; }
+
+    @Override
+    public void setLogWriter(PrintWriter out) { logWriter = out; }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Configure the borrow timeout through the constructor");
+    }
+
+    @Override
+    public int getLoginTimeout() { return (int) TimeUnit.MILLISECONDS.toSeconds(borrowTimeoutMillis); }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        throw new SQLException("ConnectionPool does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) { return iface.isInstance(this); }
+
+    /**
+     * A physical connection plus the bookkeeping the pool needs for it.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        final int defaultTransactionIsolation;
+        final StatementCache statementCache;
+        volatile long lastReturnedAt = System.currentTimeMillis();
+        volatile long borrowedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+        volatile boolean broken;
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultTransactionIsolation = physical.getTransactionIsolation();
+            this.statementCache = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheStats)
+                    : null;
+        }
+
+        long idleMillis(long now) { return now - lastReturnedAt; }
+
+        void markBorrowed(Throwable site) {
+            borrowedAt = System.currentTimeMillis();
+            borrowSite = site;
+            leakReported = false;
+        }
+
+        boolean reportLeak(long now, long threshold) {
+            if (leakReported || now - borrowedAt < threshold)
+                return false;
+            leakReported = true;
+            return true;
+        }
+
+        /**
+         * Undo anything the borrower changed so the next borrower gets a connection in its default
+         * state. Uncommitted work is rolled back rather than silently committed.
+         */
+        void reset() throws SQLException {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly())
+                physical.setReadOnly(false);
+            if (physical.getTransactionIsolation() != defaultTransactionIsolation)
+                physical.setTransactionIsolation(defaultTransactionIsolation);
+            physical.clearWarnings();
+            borrowSite = null;
+            lastReturnedAt = System.currentTimeMillis();
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConnectionHandle(this));
+        }
+    }
+
+    /**
+     * The Connection handed out to a borrower. Everything is passed through to the physical
+     * connection except close(), which returns the connection to the pool instead, and the plain
+     * prepareStatement(sql) and prepareCall(sql), which go through the statement cache when there
+     * is one. Once closed the handle refuses to be used again even though the physical connection
+     * lives on.
+     */
+    private final class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private volatile boolean closed;
+
+        ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            release(pooled);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+
+            if (closed)
+                throw new SQLException("Connection has already been returned to the pool");
+
+            if (pooled.statementCache != null && args != null && args.length == 1) {
+                if (method.getName().equals("prepareStatement"))
+                    return pooled.statementCache.prepareStatement((String) args[0]);
+                if (method.getName().equals("prepareCall"))
+                    return pooled.statementCache.prepareCall((String) args[0]);
+            }
+
+            try {
+                return method.invoke(pooled.physical, args);
+            }
+            catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException) {
+                    String sqlState = ((SQLException) cause).getSQLState();
+                    if (sqlState != null && sqlState.startsWith(CONNECTION_EXCEPTION_SQL_STATE_CLASS))
+                        pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+}
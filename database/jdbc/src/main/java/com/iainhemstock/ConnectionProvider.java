@@ -0,0 +1,67 @@
+/**
+ * The one place the demos get their Connection from. With DBConfig.USE_CONNECTION_POOL switched on
+ * the connection is borrowed from a shared ConnectionPool and closing it hands it back to the pool.
+ * With it switched off a brand new connection is opened with DriverManager every time.
+ *
+ * When DBConfig.REPLICA_URLS lists any read replicas the pooled connection comes from a
+ * RoutingDataSource instead, which sends queries to the replicas and writes to the shared pool.
+ *
+ * With DBConfig.INSTRUMENT_JDBC switched on every connection is wrapped by the shared
+ * JdbcInstrumentation so the time spent in each statement can be looked at afterwards.
+ *
+ * getMetaDataCache() is a MetaDataCache of the shared pool's schema, so the demos that need table
+ * metadata only load it once between them.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+public class ConnectionProvider {
+
+    private ConnectionProvider() {}
+
+    // the pool is only created the first time it is asked for
+    private static class PoolHolder {
+        static final ConnectionPool POOL = new ConnectionPool();
+    }
+
+    private static class RouterHolder {
+        static final RoutingDataSource ROUTER = new RoutingDataSource(PoolHolder.POOL);
+    }
+
+    private static class MetaDataHolder {
+        static final MetaDataCache META_DATA = new MetaDataCache(PoolHolder.POOL);
+    }
+
+    private static class InstrumentationHolder {
+        static final JdbcInstrumentation INSTRUMENTATION = new JdbcInstrumentation(DBConfig.SLOW_QUERY_MILLIS);
+    }
+
+    public static Connection getConnection() throws SQLException {
+        Connection cxn = openConnection();
+        return DBConfig.INSTRUMENT_JDBC ? InstrumentationHolder.INSTRUMENTATION.wrap(cxn) : cxn;
+    }
+
+    public static JdbcInstrumentation getInstrumentation() {
+        return InstrumentationHolder.INSTRUMENTATION;
+    }
+
+    public static ConnectionPool getPool() {
+        return PoolHolder.POOL;
+    }
+
+    public static MetaDataCache getMetaDataCache() {
+        return MetaDataHolder.META_DATA;
+    }
+
+    private static Connection openConnection() throws SQLException {
+        if (DBConfig.USE_CONNECTION_POOL && DBConfig.REPLICA_URLS.length > 0)
+            return RouterHolder.ROUTER.getConnection();
+        if (DBConfig.USE_CONNECTION_POOL)
+            return PoolHolder.POOL.getConnection();
+        return DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+    }
+}
@@ -4,4 +4,28 @@ public class DBConfig {
     public static final String URL = "jdbc:mysql://localhost:3306/test_bank";
     public static final String USER = "root";
     public static final String PASSWORD = "root";
+
+    // Connection pool settings, see ConnectionPool and ConnectionProvider
+    public static final boolean USE_CONNECTION_POOL = true;
+    public static final int POOL_MIN_SIZE = 2;
+    public static final int POOL_MAX_SIZE = 10;
+    public static final long POOL_BORROW_TIMEOUT_MILLIS = 30_000;
+    public static final long POOL_IDLE_TIMEOUT_MILLIS = 600_000;
+    public static final long POOL_VALIDATE_AFTER_IDLE_MILLIS = 5_000;
+    public static final int POOL_VALIDATION_TIMEOUT_SECONDS = 2;
+    public static final long POOL_LEAK_THRESHOLD_MILLIS = 60_000;
+    public static final int POOL_STATEMENT_CACHE_SIZE = 64;
+
+    // Read replicas, see RoutingDataSource. With none listed every query goes to URL.
+    public static final String[] REPLICA_URLS = {};
+    public static final long REPLICA_MAX_LAG_MILLIS = 5_000;
+    public static final long REPLICA_LAG_CHECK_MILLIS = 1_000;
+
+    // Statement timing and the slow query log, see JdbcInstrumentation and ConnectionProvider
+    public static final boolean INSTRUMENT_JDBC = false;
+    public static final long SLOW_QUERY_MILLIS = 500;
+
+    // Integer.MIN_VALUE tells MySQL Connector/J to stream rows one at a time instead of reading
+    // the whole result into memory, see StreamingQuery. Other drivers need a positive fetch size.
+    public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
 }
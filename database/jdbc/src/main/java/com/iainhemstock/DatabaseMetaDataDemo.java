@@ -1,17 +1,20 @@
 /**
  * DatabaseMetaData, as the name suggests, provides meta data about the database currently connected
  * to. An instance is obtained through the Connection object.
+ *
+ * Every call to getTables(), getColumns() or getPrimaryKeys() is another query sent to the server.
+ * Code that needs the details of many tables should read them once through MetaDataCache instead.
  */
 
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
+import java.util.List;
 import java.util.Set;
 import java.util.LinkedHashSet;
 
@@ -26,7 +29,7 @@ public class DatabaseMetaDataDemo {
 
     public static void main(String[] args) {
 
-        try (Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD)) {
+        try (Connection cxn = ConnectionProvider.getConnection()) {
 
             //======================================================================================
             // Obtain meta data
@@ -85,6 +88,21 @@ public class DatabaseMetaDataDemo {
         }
         catch (SQLException ex) { ex.printStackTrace(); }
 
+        try {
+            //======================================================================================
+            // Read every table, column and primary key once and look them up as often as needed.
+            // refreshTables() reloads a table after it has been altered.
+            //======================================================================================
+            MetaDataCache cache = new MetaDataCache(ConnectionProvider.getPool());
+            SchemaSnapshot snapshot = cache.getSnapshot();
+            Set<String> tableNames = snapshot.getTableNames();
+            SchemaSnapshot.Table transactions = cache.getTable(table);
+            List<String> colNames = transactions.getColumnNames();
+            List<String> primaryKeys = transactions.getPrimaryKey();
+            cache.refreshTables(table);
+        }
+        catch (SQLException ex) { ex.printStackTrace(); }
+
         System.exit(0);
     }
 
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -12,7 +11,7 @@ public class DeleteRow {
 
     public static void main(String[] args) {
 
-        try (Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD)) {
+        try (Connection cxn = ConnectionProvider.getConnection()) {
             //==================================================================================
             // initially insert row so that it can be deleted next
             //==================================================================================
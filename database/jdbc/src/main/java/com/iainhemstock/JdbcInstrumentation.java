@@ -0,0 +1,338 @@
+/**
+ * Wraps a Connection so that every statement run through it is timed and counted. The statements
+ * and result sets it hands out are wrapped too, and what they record is kept as StatementMetrics per
+ * SqlFingerprint:
+ *
+ *      JdbcInstrumentation instrumentation = new JdbcInstrumentation(500);
+ *      DataSource timed = instrumentation.wrap(pool);
+ *      ...
+ *      System.out.println(instrumentation.report());
+ *
+ * Any statement that takes longer than slowQueryMillis to execute, or whose results take longer
+ * than that to read, is written to the slow query log (the log writer, or System.err when there is
+ * none) with its full sql.
+ *
+ * Switched off with setEnabled(false), wrap() hands back the connection itself so nothing is added
+ * to any call made on it. Connections that were wrapped while it was switched on carry on being
+ * measured until they are closed.
+ */
+
+package com.iainhemstock;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+public class JdbcInstrumentation {
+
+    private final Map<String, StatementMetrics> metrics = new ConcurrentHashMap<>();
+    private final long slowQueryNanos;
+    private volatile boolean enabled = true;
+    private volatile PrintWriter logWriter;
+
+    public JdbcInstrumentation(long slowQueryMillis) {
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+    }
+
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public boolean isEnabled() { return enabled; }
+    public void setLogWriter(PrintWriter out) { logWriter = out; }
+
+    public Connection wrap(Connection cxn) {
+        if (!enabled)
+            return cxn;
+        return proxy(Connection.class, new ConnectionHandler(cxn));
+    }
+
+    /**
+     * A DataSource whose connections are wrapped.
+     */
+    public DataSource wrap(DataSource dataSource) {
+        return new InstrumentedDataSource(dataSource);
+    }
+
+    public Map<String, StatementMetrics> getMetrics() {
+        return metrics;
+    }
+
+    public StatementMetrics getMetrics(String sql) {
+        return metrics.get(SqlFingerprint.of(sql));
+    }
+
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * Every fingerprint seen so far, the one that has taken the most time in total first.
+     */
+    public String report() {
+        List<StatementMetrics> all = new ArrayList<>(metrics.values());
+        all.sort(Comparator.comparingLong(StatementMetrics::getTotalMillis).reversed());
+        StringBuilder report = new StringBuilder();
+        for (StatementMetrics statement : all)
+            report.append(statement).append(System.lineSeparator());
+        return report.toString();
+    }
+
+    private StatementMetrics metricsFor(String sql) {
+        return metrics.computeIfAbsent(SqlFingerprint.of(sql), StatementMetrics::new);
+    }
+
+    private void logSlow(String what, long nanos, String sql, String detail) {
+        String line = String.format("Slow %s: %dms%s %s", what, TimeUnit.NANOSECONDS.toMillis(nanos),
+                detail.isEmpty() ? "" : " " + detail, sql == null ? "" : sql.trim());
+        PrintWriter writer = logWriter;
+        if (writer != null) {
+            writer.println(line);
+            writer.flush();
+        }
+        else {
+            System.err.println(line);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> iface, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface }, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + target + "]";
+                case "createStatement":
+                    return proxy(Statement.class,
+                            new StatementHandler((Statement) JdbcInstrumentation.invoke(target, method, args),
+                                                 (Connection) proxy, null));
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class,
+                            new StatementHandler((Statement) JdbcInstrumentation.invoke(target, method, args),
+                                                 (Connection) proxy, (String) args[0]));
+                case "prepareCall":
+                    return proxy(CallableStatement.class,
+                            new StatementHandler((Statement) JdbcInstrumentation.invoke(target, method, args),
+                                                 (Connection) proxy, (String) args[0]));
+                default:
+                    return JdbcInstrumentation.invoke(target, method, args);
+            }
+        }
+    }
+
+    /**
+     * Times the execute methods. The sql is the one the statement was prepared with, or the one
+     * passed to execute for a plain Statement. A plain Statement's batch is counted under the first
+     * sql added to it.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection cxn;
+        private final String preparedSql;
+        private String batchSql;
+        private StatementMetrics lastMetrics;
+        private String lastSql;
+
+        StatementHandler(Statement target, Connection cxn, String preparedSql) {
+            this.target = target;
+            this.cxn = cxn;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + target + "]";
+                case "getConnection":
+                    return cxn;
+                case "addBatch":
+                    if (batchSql == null && args != null && args.length == 1)
+                        batchSql = (String) args[0];
+                    return JdbcInstrumentation.invoke(target, method, args);
+                case "clearBatch":
+                    batchSql = null;
+                    return JdbcInstrumentation.invoke(target, method, args);
+                case "getResultSet":
+                    ResultSet rs = (ResultSet) JdbcInstrumentation.invoke(target, method, args);
+                    return rs == null || lastMetrics == null ? rs : wrapResultSet(rs, (Statement) proxy);
+                default:
+                    break;
+            }
+
+            if (!name.startsWith("execute"))
+                return JdbcInstrumentation.invoke(target, method, args);
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String
+                ? (String) args[0]
+                : preparedSql != null ? preparedSql : batchSql;
+            if (name.endsWith("Batch"))
+                batchSql = null;
+
+            StatementMetrics statementMetrics = metricsFor(sql);
+            boolean failed = true;
+            long start = System.nanoTime();
+            try {
+                Object result = JdbcInstrumentation.invoke(target, method, args);
+                failed = false;
+                lastMetrics = statementMetrics;
+                lastSql = sql;
+                return result instanceof ResultSet ? wrapResultSet((ResultSet) result, (Statement) proxy) : result;
+            }
+            finally {
+                long elapsed = System.nanoTime() - start;
+                boolean slow = elapsed >= slowQueryNanos;
+                statementMetrics.recordExecute(elapsed, failed, slow);
+                if (slow)
+                    logSlow("execute", elapsed, sql, failed ? "(failed)" : "");
+            }
+        }
+
+        private ResultSet wrapResultSet(ResultSet rs, Statement statement) {
+            return proxy(ResultSet.class, new ResultSetHandler(rs, statement, lastMetrics, lastSql));
+        }
+    }
+
+    /**
+     * Times next() and counts the rows. The totals are recorded once, when next() runs out of rows
+     * or the result set is closed, whichever comes first.
+     */
+    private final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Statement statement;
+        private final StatementMetrics statementMetrics;
+        private final String sql;
+        private long rows;
+        private long fetchNanos;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet target, Statement statement, StatementMetrics statementMetrics, String sql) {
+            this.target = target;
+            this.statement = statement;
+            this.statementMetrics = statementMetrics;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    long start = System.nanoTime();
+                    boolean hasRow = (Boolean) JdbcInstrumentation.invoke(target, method, args);
+                    fetchNanos += System.nanoTime() - start;
+                    if (hasRow)
+                        ++rows;
+                    else
+                        record();
+                    return hasRow;
+                case "close":
+                    record();
+                    return JdbcInstrumentation.invoke(target, method, args);
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + target + "]";
+                default:
+                    return JdbcInstrumentation.invoke(target, method, args);
+            }
+        }
+
+        private void record() {
+            if (recorded)
+                return;
+            recorded = true;
+            statementMetrics.recordFetch(rows, fetchNanos);
+            if (fetchNanos >= slowQueryNanos)
+                logSlow("fetch", fetchNanos, sql, String.format("(%d rows)", rows));
+        }
+    }
+
+    private final class InstrumentedDataSource implements DataSource {
+        private final DataSource target;
+
+        InstrumentedDataSource(DataSource target) {
+            this.target = target;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(target.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrap(target.getConnection(username, password));
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException { return target.getLogWriter(); }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException { target.setLogWriter(out); }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException { target.setLoginTimeout(seconds); }
+
+        @Override
+        public int getLoginTimeout() throws SQLException { return target.getLoginTimeout(); }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException { return target.getParentLogger(); }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return iface.isInstance(this) ? iface.cast(this) : target.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || target.isWrapperFor(iface);
+        }
+    }
+}
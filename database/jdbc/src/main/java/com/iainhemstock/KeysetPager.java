@@ -0,0 +1,293 @@
+/**
+ * Pages through a table in primary key order by seeking past the last key of the previous page
+ * instead of skipping over the rows before it:
+ *
+ *      KeysetPager<TransactionRecord> pager = new KeysetPager<>(pool, "transactions",
+ *                                                  new BeanRowMapper<>(TransactionRecord.class))
+ *                                              .pageSize(50);
+ *      KeysetPager.Page<TransactionRecord> page = pager.first();
+ *      ...
+ *      page = pager.next(page.getNextToken());
+ *
+ * Each page is read with "where id > ? order by id limit ?". With an index on the key (which a
+ * primary key always has) the database goes straight to the first row of the page, so the 1000th
+ * page costs the same as the first. Reading page n with "limit ? offset ?", or by moving a scrollable
+ * ResultSet to row n with absolute(), reads and throws away every row before it, so each page is
+ * slower than the one before. KeysetPaginationBenchmark compares the three.
+ *
+ * The primary key is looked up through MetaDataCache. For a key made of more than one column the
+ * seek becomes "a > ? or (a = ? and b > ?)" and the rows are ordered by every key column. The
+ * select list has to include the key columns because the last row's key is read to make the token
+ * for the next page.
+ *
+ * A page token is an opaque url safe string holding the last key of the page, so it can be handed
+ * to a UI and sent back later. It stays valid while rows are inserted and deleted, a row inserted
+ * before the token's key simply isn't seen. There is no token for the previous page: a UI that
+ * wants to go back keeps the tokens of the pages it has shown.
+ */
+
+package com.iainhemstock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import javax.sql.DataSource;
+
+public class KeysetPager<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    // how each key value is written into a token
+    private static final byte LONG_KEY = 'L';
+    private static final byte DECIMAL_KEY = 'D';
+    private static final byte TIMESTAMP_KEY = 'T';
+    private static final byte STRING_KEY = 'S';
+
+    /**
+     * One page of rows and the token for the page after it.
+     */
+    public static final class Page<T> {
+        private final List<T> rows;
+        private final String nextToken;
+
+        Page(List<T> rows, String nextToken) {
+            this.rows = Collections.unmodifiableList(rows);
+            this.nextToken = nextToken;
+        }
+
+        public List<T> getRows() { return rows; }
+        /** null on the last page */
+        public String getNextToken() { return nextToken; }
+        public boolean hasNext() { return nextToken != null; }
+    }
+
+    private final DataSource dataSource;
+    private final MetaDataCache metaData;
+    private final String table;
+    private final RowMapper<T> mapper;
+    private String columns = "*";
+    private String condition;
+    private Object[] conditionParams = {};
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    public KeysetPager(ConnectionPool pool, String table, RowMapper<T> mapper) {
+        this(pool, new MetaDataCache(pool), table, mapper);
+    }
+
+    public KeysetPager(DataSource dataSource, MetaDataCache metaData, String table, RowMapper<T> mapper) {
+        this.dataSource = dataSource;
+        this.metaData = metaData;
+        this.table = table;
+        this.mapper = mapper;
+    }
+
+    /**
+     * The select list, "*" by default. It must include the primary key columns.
+     */
+    public KeysetPager<T> columns(String columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /**
+     * Only pages through the rows matching the condition, e.g. where("account_id = ?", 42). An index
+     * on the condition's columns followed by the key keeps every page as cheap as the first.
+     */
+    public KeysetPager<T> where(String condition, Object... params) {
+        this.condition = condition;
+        this.conditionParams = params;
+        return this;
+    }
+
+    public KeysetPager<T> pageSize(int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public Page<T> first() throws SQLException {
+        return next(null);
+    }
+
+    /**
+     * The page after the one the token came from, or the first page when the token is null.
+     */
+    public Page<T> next(String token) throws SQLException {
+        SchemaSnapshot.Table info = metaData.getTable(table);
+        List<String> key = info.getPrimaryKey();
+        if (key.isEmpty())
+            throw new SQLException(String.format("Table %s has no primary key to page through", table));
+
+        Object[] after = token == null ? null : decode(token, key.size());
+        List<Object> params = new ArrayList<>();
+        String sql = buildSql(key, after, params);
+
+        // one row more than a page, to find out whether there is a page after this one
+        List<T> rows = new ArrayList<>(pageSize);
+        Object[] lastKey = null;
+        try (Connection cxn = dataSource.getConnection();
+             PreparedStatement statement = cxn.prepareStatement(sql))
+        {
+            for (int i = 0; i < params.size(); ++i)
+                statement.setObject(i + 1, params.get(i));
+            statement.setInt(params.size() + 1, pageSize + 1);
+
+            try (ResultSet rs = statement.executeQuery()) {
+                RowMapper<T> bound = mapper.bind(rs.getMetaData());
+                while (rs.next()) {
+                    if (rows.size() == pageSize)
+                        return new Page<>(rows, encode(lastKey, key, info));
+                    rows.add(bound.mapRow(rs));
+                    if (rows.size() == pageSize)
+                        lastKey = readKey(rs, key, info);
+                }
+            }
+        }
+        return new Page<>(rows, null);
+    }
+
+    private String buildSql(List<String> key, Object[] after, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (condition != null) {
+            conditions.add("(" + condition + ")");
+            Collections.addAll(params, conditionParams);
+        }
+        if (after != null) {
+            // (a > ?) or (a = ? and b > ?) or (a = ? and b = ? and c > ?) ...
+            List<String> seek = new ArrayList<>();
+            for (int i = 0; i < key.size(); ++i) {
+                StringBuilder term = new StringBuilder("(");
+                for (int j = 0; j < i; ++j) {
+                    term.append(key.get(j)).append(" = ? and ");
+                    params.add(after[j]);
+                }
+                term.append(key.get(i)).append(" > ?)");
+                params.add(after[i]);
+                seek.add(term.toString());
+            }
+            conditions.add("(" + String.join(" or ", seek) + ")");
+        }
+
+        return String.format("select %s from %s%s order by %s limit ?",
+                columns, table,
+                conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions),
+                String.join(", ", key));
+    }
+
+    private static Object[] readKey(ResultSet rs, List<String> key, SchemaSnapshot.Table info)
+            throws SQLException {
+        Object[] values = new Object[key.size()];
+        for (int i = 0; i < values.length; ++i) {
+            String column = key.get(i);
+            switch (tagFor(info, column)) {
+                case LONG_KEY:      values[i] = rs.getLong(column); break;
+                case DECIMAL_KEY:   values[i] = rs.getBigDecimal(column); break;
+                case TIMESTAMP_KEY: values[i] = rs.getTimestamp(column); break;
+                default:            values[i] = rs.getString(column); break;
+            }
+        }
+        return values;
+    }
+
+    private static byte tagFor(SchemaSnapshot.Table info, String column) {
+        int type = info.getColumn(column).map(SchemaSnapshot.Column::getJdbcType).orElse(Types.OTHER);
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return LONG_KEY;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return DECIMAL_KEY;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return TIMESTAMP_KEY;
+            default:
+                return STRING_KEY;
+        }
+    }
+
+    static String encode(Object[] values, List<String> key, SchemaSnapshot.Table info) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(values.length);
+            for (int i = 0; i < values.length; ++i) {
+                byte tag = tagFor(info, key.get(i));
+                out.writeByte(tag);
+                switch (tag) {
+                    case LONG_KEY:
+                        out.writeLong((Long) values[i]);
+                        break;
+                    case TIMESTAMP_KEY:
+                        out.writeLong(((Timestamp) values[i]).getTime());
+                        out.writeInt(((Timestamp) values[i]).getNanos());
+                        break;
+                    case DECIMAL_KEY:
+                        out.writeUTF(((BigDecimal) values[i]).toPlainString());
+                        break;
+                    default:
+                        out.writeUTF((String) values[i]);
+                        break;
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex); // never happens writing to memory
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    static Object[] decode(String token, int keyColumns) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(token))))
+        {
+            int count = in.readByte();
+            if (count != keyColumns)
+                throw new IllegalArgumentException(String.format(
+                    "Page token has %d key values, the key has %d columns: %s", count, keyColumns, token));
+
+            Object[] values = new Object[count];
+            for (int i = 0; i < count; ++i) {
+                byte tag = in.readByte();
+                switch (tag) {
+                    case LONG_KEY:
+                        values[i] = in.readLong();
+                        break;
+                    case TIMESTAMP_KEY:
+                        Timestamp timestamp = new Timestamp(in.readLong());
+                        timestamp.setNanos(in.readInt());
+                        values[i] = timestamp;
+                        break;
+                    case DECIMAL_KEY:
+                        values[i] = new BigDecimal(in.readUTF());
+                        break;
+                    case STRING_KEY:
+                        values[i] = in.readUTF();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Not a page token: " + token);
+                }
+            }
+            return values;
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Not a page token: " + token, ex);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Reads one page of the transactions table at increasing depths three ways and compares how long
+ * each page takes:
+ *
+ *      offset      select ... order by id limit ? offset ?
+ *      absolute    a scrollable ResultSet over the whole table moved to the page with absolute()
+ *      keyset      KeysetPager, seeking past the last id of the page before
+ *
+ * The first two get slower the deeper the page, keyset stays flat. The keyset tokens are collected
+ * by paging through the table once before anything is timed.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class KeysetPaginationBenchmark {
+
+    private static final String TABLE = "transactions";
+    private static final int PAGE_SIZE = 100;
+    private static final int REPEATS = 20;
+
+    interface PageRead {
+        int read(int page) throws SQLException;
+    }
+
+    public static void main(String[] args) {
+
+        RowMapper<TransactionRecord> mapper = new BeanRowMapper<>(TransactionRecord.class);
+
+        try (ConnectionPool pool = new ConnectionPool(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD, 1, 2)) {
+            KeysetPager<TransactionRecord> pager = new KeysetPager<>(pool, TABLE, mapper).pageSize(PAGE_SIZE);
+
+            // tokens.get(n) reads page n, null being the first page
+            List<String> tokens = new ArrayList<>();
+            tokens.add(null);
+            for (KeysetPager.Page<TransactionRecord> page = pager.first(); page.hasNext();
+                 page = pager.next(page.getNextToken()))
+                tokens.add(page.getNextToken());
+            System.out.printf("%s has %d pages of %d rows %n", TABLE, tokens.size(), PAGE_SIZE);
+
+            PageRead offset = page -> {
+                String sql = String.format("select * from %s order by id limit ? offset ?", TABLE);
+                try (Connection cxn = pool.getConnection();
+                     PreparedStatement statement = cxn.prepareStatement(sql))
+                {
+                    statement.setInt(1, PAGE_SIZE);
+                    statement.setInt(2, page * PAGE_SIZE);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        RowMapper<TransactionRecord> bound = mapper.bind(rs.getMetaData());
+                        int rows = 0;
+                        for (; rs.next(); ++rows)
+                            bound.mapRow(rs);
+                        return rows;
+                    }
+                }
+            };
+
+            PageRead absolute = page -> {
+                String sql = String.format("select * from %s order by id", TABLE);
+                try (Connection cxn = pool.getConnection();
+                     Statement statement = cxn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+                                                               ResultSet.CONCUR_READ_ONLY);
+                     ResultSet rs = statement.executeQuery(sql))
+                {
+                    RowMapper<TransactionRecord> bound = mapper.bind(rs.getMetaData());
+                    int rows = 0;
+                    if (rs.absolute(page * PAGE_SIZE + 1)) {
+                        do {
+                            bound.mapRow(rs);
+                        } while (++rows < PAGE_SIZE && rs.next());
+                    }
+                    return rows;
+                }
+            };
+
+            PageRead keyset = page -> pager.next(tokens.get(page)).getRows().size();
+
+            System.out.printf("%10s %14s %14s %14s %n", "page", "offset", "absolute", "keyset");
+            for (int page = 0; page < tokens.size(); page = page == 0 ? 1 : page * 10) {
+                System.out.printf("%10d %11.2f ms %11.2f ms %11.2f ms %n", page,
+                        time(offset, page), time(absolute, page), time(keyset, page));
+            }
+            if (tokens.size() > 1) {
+                int last = tokens.size() - 1;
+                System.out.printf("%10d %11.2f ms %11.2f ms %11.2f ms %n", last,
+                        time(offset, last), time(absolute, last), time(keyset, last));
+            }
+        }
+        catch (Exception ex) { ex.printStackTrace(); }
+
+        System.exit(0);
+    }
+
+    // mean milliseconds per page after one warm up read
+    private static double time(PageRead read, int page) throws SQLException {
+        read.read(page);
+        long start = System.nanoTime();
+        for (int i = 0; i < REPEATS; ++i)
+            read.read(page);
+        return (System.nanoTime() - start) / 1e6 / REPEATS;
+    }
+}
@@ -0,0 +1,97 @@
+package com.iainhemstock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies into a fixed set of buckets laid out the way HdrHistogram does it: every power of
+ * two range is split into the same number of linear sub-buckets, so the precision of a recorded value
+ * stays the same however large it is. With 64 sub-buckets per range every value is within about 1.5%
+ * and the whole histogram is a few KB no matter how many values are recorded.
+ *
+ * Values are recorded in microseconds. Anything larger than the highest trackable value goes in the
+ * last bucket, but the true maximum is still kept. Recording is lock free and safe from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^36us is a little over 19 hours, plenty for a transaction
+    private static final int MAGNITUDES = 36 - SUB_BUCKET_BITS + 1;
+    private static final long HIGHEST_TRACKABLE_MICROS = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAGNITUDES + 1) * (SUB_BUCKETS / 2));
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(duration));
+        counts.incrementAndGet(indexOf(Math.min(micros, HIGHEST_TRACKABLE_MICROS)));
+        totalCount.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() { return totalCount.sum(); }
+    public long getMaxMicros() { return maxMicros.get(); }
+
+    public double getMeanMicros() {
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : (double) totalMicros.sum() / count;
+    }
+
+    /**
+     * The smallest recorded value that the given percentage of recorded values are less than or
+     * equal to, give or take the bucket width.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; ++i) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; ++i) {
+            seen += snapshot[i];
+            if (seen >= target)
+                return Math.min(highestValueIn(i), maxMicros.get());
+        }
+        return maxMicros.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+                getCount(), getMeanMicros(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMaxMicros());
+    }
+
+    // Values below SUB_BUCKETS get a bucket each. Above that, the position of the highest set bit
+    // picks the magnitude and the next SUB_BUCKET_BITS - 1 bits pick the sub-bucket in its top half.
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (micros >>> magnitude);
+        return magnitude * (SUB_BUCKETS / 2) + subBucket;
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int magnitude = (index - SUB_BUCKETS / 2) / (SUB_BUCKETS / 2);
+        long subBucket = index - magnitude * (SUB_BUCKETS / 2);
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
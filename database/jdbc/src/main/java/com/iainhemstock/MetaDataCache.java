@@ -0,0 +1,274 @@
+/**
+ * Reads the tables, columns and primary keys of a schema once and keeps them as a SchemaSnapshot, so
+ * code that needs them for hundreds of tables doesn't make several round trips to the server per
+ * table like DatabaseMetaDataDemo does.
+ *
+ * A full load is three round trips however many tables there are: getTables() for every table,
+ * getColumns() with a "%" pattern for every column of every table, and a single query of the
+ * standard information_schema views for every primary key. Drivers are only required to answer
+ * getPrimaryKeys() one table at a time, so if information_schema can't be queried, or it isn't known
+ * which of its schemas holds the tables, or the query finds no keys at all, the keys are read that
+ * way instead.
+ *
+ * getTables() and getColumns() take the table name as a LIKE pattern, so when single tables are
+ * loaded the _ and % in their names are escaped to stop them matching other tables.
+ *
+ * Nothing is read again until asked for:
+ *
+ *      refresh()               reloads everything
+ *      refreshTableList()      one round trip for the list of tables, then loads only the tables
+ *                              that have been created since and drops the ones that have gone
+ *      refreshTables(names)    reloads just the named tables, e.g. after altering them
+ *
+ * Each refresh swaps in a new snapshot, anyone still holding the old one keeps a consistent view.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.sql.DataSource;
+
+public class MetaDataCache {
+
+    private static final String[] TABLE_TYPES = { "TABLE", "VIEW" };
+
+    private static final String SQL_SELECT_PRIMARY_KEYS =
+        "select kcu.table_name, kcu.column_name, kcu.ordinal_position " +
+        "from information_schema.table_constraints tc " +
+        "join information_schema.key_column_usage kcu " +
+        "  on kcu.constraint_schema = tc.constraint_schema " +
+        " and kcu.constraint_name = tc.constraint_name " +
+        " and kcu.table_name = tc.table_name " +
+        "where tc.constraint_type = 'PRIMARY KEY' " +
+        "and tc.table_schema = ?";
+
+    private final DataSource dataSource;
+    private final String catalog;
+    private final String schema;
+    private volatile SchemaSnapshot snapshot;
+
+    /**
+     * Caches the connection's current catalog, which for MySQL is the database named in the URL.
+     */
+    public MetaDataCache(DataSource dataSource) {
+        this(dataSource, null, null);
+    }
+
+    /**
+     * A null catalog means the connection's current catalog and a null schema means every schema.
+     */
+    public MetaDataCache(DataSource dataSource, String catalog, String schema) {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.schema = schema;
+    }
+
+    /**
+     * The current snapshot, loading it the first time it is asked for.
+     */
+    public SchemaSnapshot getSnapshot() throws SQLException {
+        SchemaSnapshot current = snapshot;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            if (snapshot == null)
+                refresh();
+            return snapshot;
+        }
+    }
+
+    public SchemaSnapshot.Table getTable(String name) throws SQLException {
+        return getSnapshot().getTable(name).orElseThrow(
+            () -> new SQLException(String.format("No table named %s in the cached schema", name)));
+    }
+
+    public synchronized SchemaSnapshot refresh() throws SQLException {
+        long now = System.currentTimeMillis();
+        try (Connection cxn = dataSource.getConnection()) {
+            DatabaseMetaData dbmd = cxn.getMetaData();
+            String cat = catalogOf(cxn);
+            Map<String, String> types = loadTableTypes(dbmd, cat);
+            Map<String, List<SchemaSnapshot.Column>> columns = loadColumns(dbmd, cat, "%");
+            Map<String, List<String>> primaryKeys = loadPrimaryKeys(cxn, dbmd, cat, types.keySet());
+            snapshot = new SchemaSnapshot(buildTables(types, columns, primaryKeys), now);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Picks up tables that have been created or dropped since the last load without reading the
+     * tables that are already cached again.
+     */
+    public synchronized SchemaSnapshot refreshTableList() throws SQLException {
+        if (snapshot == null)
+            return refresh();
+
+        try (Connection cxn = dataSource.getConnection()) {
+            DatabaseMetaData dbmd = cxn.getMetaData();
+            Map<String, String> types = loadTableTypes(dbmd, catalogOf(cxn));
+
+            Set<String> removed = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            removed.addAll(snapshot.getTableNames());
+            removed.removeAll(types.keySet());
+
+            Map<String, String> added = new LinkedHashMap<>(types);
+            added.keySet().removeAll(snapshot.getTableNames());
+
+            snapshot = snapshot.with(loadTables(cxn, dbmd, added), removed);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reloads the named tables. A name that no longer exists in the database is dropped from the
+     * snapshot.
+     */
+    public synchronized SchemaSnapshot refreshTables(String... names) throws SQLException {
+        if (snapshot == null)
+            return refresh();
+
+        try (Connection cxn = dataSource.getConnection()) {
+            DatabaseMetaData dbmd = cxn.getMetaData();
+            String cat = catalogOf(cxn);
+
+            Map<String, String> found = new LinkedHashMap<>();
+            for (String name : names)
+                found.putAll(loadTableTypes(dbmd, cat, escapePattern(dbmd, name)));
+
+            Set<String> removed = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            removed.addAll(Arrays.asList(names));
+            removed.removeAll(found.keySet());
+
+            snapshot = snapshot.with(loadTables(cxn, dbmd, found), removed);
+        }
+        return snapshot;
+    }
+
+    private Collection<SchemaSnapshot.Table> loadTables(Connection cxn, DatabaseMetaData dbmd,
+                                                        Map<String, String> types) throws SQLException {
+        String cat = catalogOf(cxn);
+        Map<String, List<SchemaSnapshot.Column>> columns = new HashMap<>();
+        Map<String, List<String>> primaryKeys = new HashMap<>();
+        for (String table : types.keySet()) {
+            columns.putAll(loadColumns(dbmd, cat, escapePattern(dbmd, table)));
+            primaryKeys.put(table, loadPrimaryKey(dbmd, cat, table));
+        }
+        return buildTables(types, columns, primaryKeys);
+    }
+
+    private String catalogOf(Connection cxn) throws SQLException {
+        return catalog != null ? catalog : cxn.getCatalog();
+    }
+
+    // a table name as a pattern that only matches that name
+    private static String escapePattern(DatabaseMetaData dbmd, String name) throws SQLException {
+        String escape = dbmd.getSearchStringEscape();
+        if (escape == null || escape.isEmpty())
+            return name;
+        return name.replace(escape, escape + escape)
+                   .replace("_", escape + "_")
+                   .replace("%", escape + "%");
+    }
+
+    private Map<String, String> loadTableTypes(DatabaseMetaData dbmd, String cat) throws SQLException {
+        return loadTableTypes(dbmd, cat, "%");
+    }
+
+    // table name -> TABLE, VIEW etc
+    private Map<String, String> loadTableTypes(DatabaseMetaData dbmd, String cat, String tablePattern)
+            throws SQLException {
+        Map<String, String> types = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (ResultSet rs = dbmd.getTables(cat, schema, tablePattern, TABLE_TYPES)) {
+            while (rs.next())
+                types.put(rs.getString("TABLE_NAME"), rs.getString("TABLE_TYPE"));
+        }
+        return types;
+    }
+
+    // table name -> columns, for every table matching the pattern
+    private Map<String, List<SchemaSnapshot.Column>> loadColumns(DatabaseMetaData dbmd, String cat,
+                                                                 String tablePattern) throws SQLException {
+        Map<String, List<SchemaSnapshot.Column>> columns = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (ResultSet rs = dbmd.getColumns(cat, schema, tablePattern, "%")) {
+            while (rs.next()) {
+                SchemaSnapshot.Column column = new SchemaSnapshot.Column(
+                    rs.getString("COLUMN_NAME"),
+                    rs.getInt("ORDINAL_POSITION"),
+                    rs.getInt("DATA_TYPE"),
+                    rs.getString("TYPE_NAME"),
+                    rs.getInt("COLUMN_SIZE"),
+                    rs.getInt("DECIMAL_DIGITS"),
+                    rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls,
+                    "YES".equals(rs.getString("IS_AUTOINCREMENT")));
+                columns.computeIfAbsent(rs.getString("TABLE_NAME"), key -> new ArrayList<>()).add(column);
+            }
+        }
+        return columns;
+    }
+
+    // table name -> primary key columns in key order, for every table in one query if possible
+    private Map<String, List<String>> loadPrimaryKeys(Connection cxn, DatabaseMetaData dbmd, String cat,
+                                                      Set<String> tables) throws SQLException {
+        // MySQL puts what JDBC calls the catalog in information_schema's table_schema column, other
+        // databases put the schema there
+        boolean mysql = dbmd.getDatabaseProductName().contains("MySQL");
+        String tableSchema = schema != null ? schema : mysql ? cat : null;
+        if (tableSchema != null) {
+            try (PreparedStatement statement = cxn.prepareStatement(SQL_SELECT_PRIMARY_KEYS)) {
+                statement.setString(1, tableSchema);
+                Map<String, TreeMap<Integer, String>> keys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next())
+                        keys.computeIfAbsent(rs.getString(1), key -> new TreeMap<>())
+                            .put(rs.getInt(3), rs.getString(2));
+                }
+                Map<String, List<String>> primaryKeys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                keys.forEach((table, columns) -> primaryKeys.put(table, new ArrayList<>(columns.values())));
+                // nothing found may just mean the views are laid out differently, so check with the driver
+                if (!primaryKeys.isEmpty() || tables.isEmpty())
+                    return primaryKeys;
+            }
+            catch (SQLException ex) { /* no information_schema, ask the driver a table at a time */ }
+        }
+
+        Map<String, List<String>> primaryKeys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String table : tables)
+            primaryKeys.put(table, loadPrimaryKey(dbmd, cat, table));
+        return primaryKeys;
+    }
+
+    private List<String> loadPrimaryKey(DatabaseMetaData dbmd, String cat, String table)
+            throws SQLException {
+        TreeMap<Integer, String> columns = new TreeMap<>();
+        try (ResultSet rs = dbmd.getPrimaryKeys(cat, schema, table)) {
+            while (rs.next())
+                columns.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+        }
+        return new ArrayList<>(columns.values());
+    }
+
+    private static List<SchemaSnapshot.Table> buildTables(Map<String, String> types,
+                                                         Map<String, List<SchemaSnapshot.Column>> columns,
+                                                         Map<String, List<String>> primaryKeys) {
+        List<SchemaSnapshot.Table> tables = new ArrayList<>(types.size());
+        types.forEach((name, type) -> tables.add(new SchemaSnapshot.Table(
+            name, type,
+            columns.getOrDefault(name, List.of()),
+            primaryKeys.getOrDefault(name, List.of()))));
+        return tables;
+    }
+}
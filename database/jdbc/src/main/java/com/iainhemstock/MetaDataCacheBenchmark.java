@@ -0,0 +1,72 @@
+/**
+ * Compares reading the tables, columns and primary keys of every table in the schema the way
+ * DatabaseMetaDataDemo does it, three queries per table, with a single MetaDataCache load. The gap
+ * grows with the number of tables, so run it against a schema of a realistic size.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MetaDataCacheBenchmark {
+
+    private static final int WARMUP_LOADS = 3;
+    private static final int MEASURED_LOADS = 10;
+
+    interface Load {
+        int run() throws SQLException;
+    }
+
+    public static void main(String[] args) {
+
+        try (ConnectionPool pool = new ConnectionPool()) {
+            MetaDataCache cache = new MetaDataCache(pool);
+
+            run("per table", () -> {
+                try (Connection cxn = pool.getConnection()) {
+                    DatabaseMetaData dbmd = cxn.getMetaData();
+                    List<String> tables = new ArrayList<>();
+                    try (ResultSet rs = dbmd.getTables(cxn.getCatalog(), null, "%", new String[] { "TABLE" })) {
+                        while (rs.next())
+                            tables.add(rs.getString("TABLE_NAME"));
+                    }
+                    for (String table : tables) {
+                        try (ResultSet rs = dbmd.getColumns(cxn.getCatalog(), null, table, "%")) {
+                            while (rs.next())
+                                rs.getString("COLUMN_NAME");
+                        }
+                        try (ResultSet rs = dbmd.getPrimaryKeys(cxn.getCatalog(), null, table)) {
+                            while (rs.next())
+                                rs.getString("COLUMN_NAME");
+                        }
+                    }
+                    return tables.size();
+                }
+            });
+
+            run("MetaDataCache", () -> cache.refresh().getTables().size());
+        }
+        catch (Exception ex) { ex.printStackTrace(); }
+
+        System.exit(0);
+    }
+
+    private static void run(String label, Load load) throws SQLException {
+        for (int i = 0; i < WARMUP_LOADS; ++i)
+            load.run();
+
+        int tables = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_LOADS; ++i)
+            tables = load.run();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-14s %4d tables %8.1f ms per load %n",
+                label, tables, elapsed / 1e6 / MEASURED_LOADS);
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * Reads a whole table by splitting it into ranges of its primary key and reading the ranges at the
+ * same time, each on its own pooled connection and thread, instead of running one select over the
+ * whole table on one connection:
+ *
+ *      try (Stream<TransactionRecord> rows = new ParallelTableScanner<>(pool, metaData, "transactions",
+ *                                                  () -> new BeanRowMapper<>(TransactionRecord.class))
+ *                                              .partitions(8)
+ *                                              .scan()) {
+ *          rows.forEach(...);
+ *      }
+ *
+ * The primary key is looked up through MetaDataCache and must be a single integer column. Its
+ * smallest and largest values are read first and the range between them is cut into equally wide
+ * partitions, each read with a "where key >= ? and key <= ?" streaming query. The rows are mapped on
+ * the partition's thread so mapping runs in parallel too, and handed over to the stream through a
+ * bounded queue so a slow consumer holds the readers back instead of filling up the heap. Each
+ * partition asks the supplier for its own RowMapper, so the threads don't share one and a mapper
+ * only ever sees the ResultSet of its own partition. The MetaDataCache is passed in so scanners can
+ * share one instead of each loading the schema.
+ *
+ * The partitions are read with MySQL's streaming fetch size, DBConfig.STREAMING_FETCH_SIZE, unless
+ * fetchSize() is given another. Other databases need a positive one, see StreamingQuery.
+ *
+ * An ordered scan returns the rows in primary key order. Each partition is read in key order and the
+ * partitions are handed over one after the other, while the later partitions are already being read
+ * into their queues. An unordered scan hands rows over from whichever partition has one ready, which
+ * keeps every connection busy for the whole scan.
+ *
+ * Rows whose key is larger than the largest key when the scan started are not read, and since every
+ * partition is a separate query the scan is not a consistent snapshot of a table that is being
+ * written to. The reader threads finish once every partition has been read. Closing the stream
+ * before then stops the readers and returns their connections.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.DataSource;
+
+public class ParallelTableScanner<T> {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1_024;
+
+    // put on a queue by a partition once it has handed over all of its rows
+    private static final Object END_OF_PARTITION = new Object();
+
+    private static final class Failure {
+        final RuntimeException cause;
+
+        Failure(RuntimeException cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final MetaDataCache metaData;
+    private final String table;
+    private final Supplier<? extends RowMapper<T>> mappers;
+    private String columns = "*";
+    private int partitions;
+    private int parallelism;
+    private boolean ordered;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int fetchSize = DBConfig.STREAMING_FETCH_SIZE;
+
+    /**
+     * Reads with as many partitions and threads as the pool has connections, leaving one
+     * connection free for the min/max query and everybody else.
+     */
+    public ParallelTableScanner(ConnectionPool pool, MetaDataCache metaData, String table,
+                                Supplier<? extends RowMapper<T>> mappers) {
+        this((DataSource) pool, metaData, table, mappers);
+        this.parallelism = Math.max(1, pool.getMaxSize() - 1);
+        this.partitions = parallelism;
+    }
+
+    public ParallelTableScanner(DataSource dataSource, MetaDataCache metaData, String table,
+                                Supplier<? extends RowMapper<T>> mappers) {
+        this.dataSource = dataSource;
+        this.metaData = metaData;
+        this.table = table;
+        this.mappers = mappers;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.partitions = parallelism;
+    }
+
+    /**
+     * The select list, "*" by default.
+     */
+    public ParallelTableScanner<T> columns(String columns) {
+        this.columns = columns;
+        return this;
+    }
+
+    /**
+     * How many ranges the key is split into. More partitions than threads evens out partitions that
+     * turn out to hold more rows than others.
+     */
+    public ParallelTableScanner<T> partitions(int partitions) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("Partitions must be at least 1: " + partitions);
+        this.partitions = partitions;
+        return this;
+    }
+
+    /**
+     * How many partitions are read at once, each on its own connection.
+     */
+    public ParallelTableScanner<T> parallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public ParallelTableScanner<T> ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * How many mapped rows each partition (or the whole scan when unordered) can have waiting to be
+     * consumed before its reader stops and waits.
+     */
+    public ParallelTableScanner<T> queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * The fetch size each partition's query is read with, DBConfig.STREAMING_FETCH_SIZE by default.
+     */
+    public ParallelTableScanner<T> fetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public Stream<T> scan() throws SQLException {
+        String key = partitionKey();
+        long[] bounds = keyBounds(key);
+        if (bounds == null)
+            return Stream.empty(); // no rows
+
+        List<long[]> ranges = split(bounds[0], bounds[1], partitions);
+        String sql = String.format("select %s from %s where %s >= ? and %s <= ?%s",
+                columns, table, key, key, ordered ? " order by " + key : "");
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(Math.min(parallelism, ranges.size()), runnable -> {
+            Thread thread = new Thread(runnable, "table-scan-" + table + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        BlockingQueue<Object> shared = ordered ? null : new ArrayBlockingQueue<>(queueCapacity);
+        for (long[] range : ranges) {
+            BlockingQueue<Object> queue = ordered ? new ArrayBlockingQueue<>(queueCapacity) : shared;
+            queues.add(queue);
+            // tasks start in submission order, so in an ordered scan the partition the stream is
+            // waiting on is always among those being read
+            readers.execute(() -> read(sql, range, queue));
+        }
+        // the threads finish with the last partition even if the stream is never closed
+        readers.shutdown();
+
+        Iterator<T> rows = ordered ? new OrderedIterator(queues) : new UnorderedIterator(shared, ranges.size());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows,
+                    (ordered ? Spliterator.ORDERED : 0) | Spliterator.NONNULL), false)
+                .onClose(readers::shutdownNow);
+    }
+
+    private String partitionKey() throws SQLException {
+        SchemaSnapshot.Table info = metaData.getTable(table);
+        List<String> primaryKey = info.getPrimaryKey();
+        if (primaryKey.size() != 1)
+            throw new SQLException(String.format(
+                "Table %s can only be partitioned on a single column primary key, it has %s", table, primaryKey));
+
+        String key = primaryKey.get(0);
+        int type = info.getColumn(key).map(SchemaSnapshot.Column::getJdbcType).orElse(Types.OTHER);
+        if (type != Types.INTEGER && type != Types.BIGINT && type != Types.SMALLINT && type != Types.TINYINT)
+            throw new SQLException(String.format(
+                "Table %s can only be partitioned on an integer primary key, %s is not one", table, key));
+        return key;
+    }
+
+    // min and max of the key, or null when the table is empty
+    private long[] keyBounds(String key) throws SQLException {
+        String sql = String.format("select min(%s), max(%s) from %s", key, key, table);
+        try (Connection cxn = dataSource.getConnection();
+             PreparedStatement statement = cxn.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery())
+        {
+            rs.next();
+            long min = rs.getLong(1);
+            if (rs.wasNull())
+                return null;
+            return new long[] { min, rs.getLong(2) };
+        }
+    }
+
+    // Equally wide [from, to] ranges covering min to max, never more ranges than keys. max - min
+    // doesn't fit in a long when the keys go from negative to positive, so it is treated as unsigned.
+    static List<long[]> split(long min, long max, int partitions) {
+        // from the first key of a range to its last
+        long span = Long.divideUnsigned(max - min, partitions);
+        List<long[]> ranges = new ArrayList<>();
+        long from = min;
+        while (Long.compareUnsigned(max - from, span) > 0) {
+            ranges.add(new long[] { from, from + span });
+            from += span + 1;
+        }
+        ranges.add(new long[] { from, max });
+        return ranges;
+    }
+
+    private void read(String sql, long[] range, BlockingQueue<Object> queue) {
+        try {
+            try (Stream<T> rows = StreamingQuery.stream(dataSource, sql, fetchSize, mappers.get(),
+                                                          range[0], range[1])) {
+                Iterator<T> it = rows.iterator();
+                while (it.hasNext())
+                    queue.put(it.next());
+            }
+            queue.put(END_OF_PARTITION);
+        }
+        catch (InterruptedException ex) {
+            // the stream has been closed, nobody is waiting for the rest
+            Thread.currentThread().interrupt();
+        }
+        catch (SQLException ex) {
+            handOver(queue, new Failure(new UncheckedSQLException(ex)));
+        }
+        catch (RuntimeException ex) {
+            handOver(queue, new Failure(ex));
+        }
+    }
+
+    private static void handOver(BlockingQueue<Object> queue, Failure failure) {
+        try { queue.put(failure); }
+        catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object item) {
+        if (item instanceof Failure)
+            throw ((Failure) item).cause;
+        return (T) item;
+    }
+
+    private static Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next row", ex);
+        }
+    }
+
+    /**
+     * Reads the partitions' queues one after the other.
+     */
+    private final class OrderedIterator implements Iterator<T> {
+        private final List<BlockingQueue<Object>> queues;
+        private int current;
+        private Object next;
+
+        OrderedIterator(List<BlockingQueue<Object>> queues) {
+            this.queues = queues;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && current < queues.size()) {
+                Object item = take(queues.get(current));
+                if (item == END_OF_PARTITION)
+                    ++current;
+                else
+                    next = item;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Object item = next;
+            next = null;
+            return unwrap(item);
+        }
+    }
+
+    /**
+     * Reads the queue every partition puts its rows on until each of them has finished.
+     */
+    private final class UnorderedIterator implements Iterator<T> {
+        private final BlockingQueue<Object> queue;
+        private int running;
+        private Object next;
+
+        UnorderedIterator(BlockingQueue<Object> queue, int partitions) {
+            this.queue = queue;
+            this.running = partitions;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && running > 0) {
+                Object item = take(queue);
+                if (item == END_OF_PARTITION)
+                    --running;
+                else
+                    next = item;
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Object item = next;
+            next = null;
+            return unwrap(item);
+        }
+    }
+}
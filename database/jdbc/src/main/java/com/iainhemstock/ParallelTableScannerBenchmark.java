@@ -0,0 +1,69 @@
+/**
+ * Reads the whole transactions table with a single streaming query and then with a
+ * ParallelTableScanner at increasing levels of parallelism, and compares the rows per second. The
+ * mapping of each row is included, since that is spread over the scanner's threads too, each
+ * partition with its own BeanRowMapper.
+ */
+
+package com.iainhemstock;
+
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+public class ParallelTableScannerBenchmark {
+
+    private static final int[] PARALLELISM = { 1, 2, 4, 8 };
+    private static final String TABLE = "transactions";
+
+    interface Scan {
+        Stream<TransactionRecord> open() throws SQLException;
+    }
+
+    public static void main(String[] args) {
+
+        RowMapper<TransactionRecord> mapper = new BeanRowMapper<>(TransactionRecord.class);
+
+        try (ConnectionPool pool = new ConnectionPool(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD,
+                                                      1, PARALLELISM[PARALLELISM.length - 1] + 1))
+        {
+            MetaDataCache metaData = new MetaDataCache(pool);
+
+            run("single query", () -> StreamingQuery.stream(pool, "select * from " + TABLE, mapper));
+
+            for (int parallelism : PARALLELISM) {
+                for (boolean ordered : new boolean[] { false, true }) {
+                    ParallelTableScanner<TransactionRecord> scanner =
+                        new ParallelTableScanner<>(pool, metaData, TABLE,
+                                                   () -> new BeanRowMapper<>(TransactionRecord.class))
+                            .parallelism(parallelism)
+                            .partitions(parallelism * 4)
+                            .ordered(ordered);
+                    run(String.format("%d threads%s", parallelism, ordered ? " ordered" : ""), scanner::scan);
+                }
+            }
+
+            System.out.println(pool.getMetrics());
+        }
+        catch (Exception ex) { ex.printStackTrace(); }
+
+        System.exit(0);
+    }
+
+    private static void run(String label, Scan scan) throws SQLException {
+        // once to warm up, once measured
+        count(scan);
+
+        long start = System.nanoTime();
+        long rows = count(scan);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-20s %10d rows %8d ms %12.0f rows/s %n",
+                label, rows, elapsed / 1_000_000, rows / (elapsed / 1e9));
+    }
+
+    private static long count(Scan scan) throws SQLException {
+        try (Stream<TransactionRecord> rows = scan.open()) {
+            return rows.count();
+        }
+    }
+}
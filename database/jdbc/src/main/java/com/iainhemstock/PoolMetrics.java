@@ -0,0 +1,60 @@
+package com.iainhemstock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a ConnectionPool. The borrow wait is the time a caller spent inside
+ * getConnection(), which includes waiting for a free slot, validating an idle connection and
+ * opening a new physical connection when the pool has to grow.
+ */
+public class PoolMetrics {
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder connectionsDestroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder totalBorrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+
+    void recordBorrow(long waitNanos) {
+        borrows.increment();
+        totalBorrowWaitNanos.add(waitNanos);
+        maxBorrowWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void recordBorrowTimeout() { borrowTimeouts.increment(); }
+    void recordConnectionCreated() { connectionsCreated.increment(); }
+    void recordConnectionDestroyed() { connectionsDestroyed.increment(); }
+    void recordValidationFailure() { validationFailures.increment(); }
+    void recordLeak() { leaksDetected.increment(); }
+
+    public long getBorrows() { return borrows.sum(); }
+    public long getBorrowTimeouts() { return borrowTimeouts.sum(); }
+    public long getConnectionsCreated() { return connectionsCreated.sum(); }
+    public long getConnectionsDestroyed() { return connectionsDestroyed.sum(); }
+    public long getValidationFailures() { return validationFailures.sum(); }
+    public long getLeaksDetected() { return leaksDetected.sum(); }
+
+    public long getMaxBorrowWait(TimeUnit unit) {
+        return unit.convert(maxBorrowWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public double getAverageBorrowWaitMicros() {
+        long count = borrows.sum();
+        return count == 0 ? 0.0 : totalBorrowWaitNanos.sum() / 1_000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "borrows=%d timeouts=%d created=%d destroyed=%d validationFailures=%d leaks=%d " +
+            "avgBorrowWait=%.1fus maxBorrowWait=%dus",
+            getBorrows(), getBorrowTimeouts(), getConnectionsCreated(), getConnectionsDestroyed(),
+            getValidationFailures(), getLeaksDetected(), getAverageBorrowWaitMicros(),
+            getMaxBorrowWait(TimeUnit.MICROSECONDS));
+    }
+}
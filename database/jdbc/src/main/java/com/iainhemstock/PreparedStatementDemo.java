@@ -6,7 +6,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -21,7 +20,7 @@ public class PreparedStatementDemo {
         String sql = "select * from transactions where transaction_date < ?";
 
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             PreparedStatement pstatement = cxn.prepareStatement(sql))
         {
             //======================================================================================
@@ -1,18 +1,18 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.util.stream.Stream;
 
 public class Query {
     public static void main( String[] args )
     {
         String sql = "select * from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             ResultSet rs = statement.executeQuery(sql))
         {
@@ -31,6 +31,39 @@ public class Query {
             ex.printStackTrace();
         }
 
+        //==========================================================================================
+        // Stream the rows rather than letting the driver read the whole table into memory first.
+        // Rows are fetched as the stream is consumed and closing the stream closes the statement
+        // and result set. BeanRowMapper looks the columns up once rather than on every row.
+        //==========================================================================================
+        try (
+            Connection cxn = ConnectionProvider.getConnection();
+            Stream<TransactionRecord> rows = StreamingQuery.stream(cxn, sql,
+                                                        new BeanRowMapper<>(TransactionRecord.class)))
+        {
+            rows.forEach(System.out::println);
+        }
+        catch(SQLException ex) {
+            ex.printStackTrace();
+        }
+
+        //==========================================================================================
+        // Split the table into ranges of its primary key and read the ranges at the same time,
+        // each on its own pooled connection. ordered(true) still returns the rows in id order.
+        //==========================================================================================
+        try (
+            Stream<TransactionRecord> rows =
+                new ParallelTableScanner<>(ConnectionProvider.getPool(), ConnectionProvider.getMetaDataCache(),
+                                           "transactions", () -> new BeanRowMapper<>(TransactionRecord.class))
+                    .ordered(true)
+                    .scan())
+        {
+            rows.forEach(System.out::println);
+        }
+        catch(SQLException ex) {
+            ex.printStackTrace();
+        }
+
         System.exit(0);
     }
 }
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -19,7 +18,7 @@ public class ResultSetAbsolutePositioning {
 
         String sql = "select id, transaction_amount, transaction_date from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             ResultSet rs = statement.executeQuery(sql))
         {
@@ -43,6 +42,46 @@ public class ResultSetAbsolutePositioning {
             }
         }
         catch(SQLException ex) { ex.printStackTrace(); }
+
+        try {
+            //======================================================================================
+            // The same again from a copy of the results held in memory. The connection is handed
+            // back as soon as the rows have been read and asking for the same query again doesn't
+            // go to the database while the cached copy is less than a minute old.
+            //======================================================================================
+            ResultSetCache cache = new ResultSetCache(ConnectionProvider.getPool(), 60_000, 10);
+            ColumnarTable.Cursor rs = cache.query(sql);
+            Integer[] rowOrder = { 3, 1, 2 };
+            for (int i = 0; i < rowOrder.length; ++i) {
+
+                rs.absolute(rowOrder[i]); // move to the ith row
+
+                System.out.printf("Currently processing row %d ---> ", rs.getRow());
+                System.out.printf("%d %f %s %n", rs.getInt("id"), rs.getDouble("transaction_amount"),
+                        rs.getTimestamp("transaction_date").toString());
+            }
+        }
+        catch(SQLException ex) { ex.printStackTrace(); }
+
+        try {
+            //======================================================================================
+            // Jumping to a row with absolute() still reads every row before it. To show the table a
+            // page at a time, page by key instead. Each page seeks straight past the last id of the
+            // page before, so a deep page costs no more than the first one.
+            //======================================================================================
+            KeysetPager<TransactionRecord> pager =
+                new KeysetPager<>(ConnectionProvider.getPool(), "transactions",
+                                  new BeanRowMapper<>(TransactionRecord.class))
+                    .pageSize(2);
+            KeysetPager.Page<TransactionRecord> page = pager.first();
+            for (int pageNumber = 1; pageNumber <= 3; ++pageNumber) {
+                System.out.printf("Page %d ---> %s %n", pageNumber, page.getRows());
+                if (!page.hasNext())
+                    break;
+                page = pager.next(page.getNextToken());
+            }
+        }
+        catch(SQLException ex) { ex.printStackTrace(); }
     }
 
     public static void main(String[] args) {
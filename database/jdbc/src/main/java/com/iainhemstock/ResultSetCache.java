@@ -0,0 +1,136 @@
+/**
+ * Keeps the results of queries in memory as ColumnarTables so that running the same query with the
+ * same parameters again doesn't go to the database at all:
+ *
+ *      ResultSetCache cache = new ResultSetCache(pool, 60_000, 100);
+ *      ColumnarTable.Cursor rs = cache.query("select * from transactions where id > ?", 1000);
+ *      rs.absolute(3);
+ *
+ * Results are looked up by the sql text and the parameter values. A result is thrown away once it is
+ * older than ttlMillis, and when the cache holds maxEntries results the least recently used one is
+ * thrown away to make room. Nothing notices when the rows in the database change, so only cache
+ * queries where being up to ttlMillis out of date is acceptable, or call invalidate() after writing.
+ *
+ * The query runs on an ordinary forward-only statement which is closed, along with its connection,
+ * as soon as the rows have been copied into memory. If two threads miss on the same query at the
+ * same time both run it and the second result replaces the first.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+public class ResultSetCache {
+
+    private static class CachedResult {
+        final ColumnarTable table;
+        final long expiresAtNanos;
+
+        CachedResult(ColumnarTable table, long expiresAtNanos) {
+            this.table = table;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<List<Object>, CachedResult> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResultSetCache(DataSource dataSource, long ttlMillis, int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("Result set cache max entries must be at least 1: " + maxEntries);
+
+        this.dataSource = dataSource;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        // access ordered so the eldest entry is always the least recently used result
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+                return size() > ResultSetCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * A new cursor over the cached result, running the query first if there is no cached result
+     * or it has expired.
+     */
+    public ColumnarTable.Cursor query(String sql, Object... params) throws SQLException {
+        return get(sql, params).cursor();
+    }
+
+    public ColumnarTable get(String sql, Object... params) throws SQLException {
+        List<Object> key = keyOf(sql, params);
+        long now = System.nanoTime();
+
+        synchronized (entries) {
+            CachedResult entry = entries.get(key);
+            if (entry != null && now - entry.expiresAtNanos < 0) {
+                hits.increment();
+                return entry.table;
+            }
+        }
+
+        misses.increment();
+        ColumnarTable table = load(sql, params);
+        synchronized (entries) {
+            entries.put(key, new CachedResult(table, System.nanoTime() + ttlNanos));
+        }
+        return table;
+    }
+
+    public void invalidate(String sql, Object... params) {
+        synchronized (entries) {
+            entries.remove(keyOf(sql, params));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private ColumnarTable load(String sql, Object... params) throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             PreparedStatement statement = cxn.prepareStatement(sql))
+        {
+            for (int i = 0; i < params.length; ++i)
+                statement.setObject(i + 1, params[i]);
+            try (ResultSet rs = statement.executeQuery()) {
+                return ColumnarTable.from(rs);
+            }
+        }
+    }
+
+    private static List<Object> keyOf(String sql, Object... params) {
+        List<Object> key = new ArrayList<>(params.length + 1);
+        key.add(sql);
+        key.addAll(Arrays.asList(params));
+        return key;
+    }
+}
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -11,7 +10,7 @@ public class ResultSetConcurrency {
 
     public static void main(String[] args) {
 
-        try (Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD)) {
+        try (Connection cxn = ConnectionProvider.getConnection()) {
 
             //======================================================================================
             // Find out whether the database supports read only ResultSets and updatable ResultSets.
@@ -1,17 +1,20 @@
 /**
  * Once a ResultSet has provided the results of a query it is possible to insert a new row into the
  * database through the ResultSet.
+ *
+ * This is the slowest way of inserting rows, one round trip per row. BulkLoader is far quicker for
+ * loading a large number of rows.
  */
 
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
 import java.sql.DatabaseMetaData;
 import java.sql.Timestamp;
+import java.util.stream.IntStream;
 
 public class ResultSetDatabaseInsert {
 
@@ -19,7 +22,7 @@ public class ResultSetDatabaseInsert {
 
         String sql = "select * from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
                                                             ResultSet.CONCUR_UPDATABLE);
             ResultSet rs = statement.executeQuery(sql))
@@ -37,6 +40,21 @@ public class ResultSetDatabaseInsert {
         }
         catch (SQLException ex) { ex.printStackTrace(); }
 
+        //==========================================================================================
+        // Insert a large number of rows with BulkLoader.
+        // The rows are generated lazily and sent as multi-row inserts (or streamed as CSV with
+        // LOAD DATA when the connection allows it).
+        //==========================================================================================
+        try (Connection cxn = ConnectionProvider.getConnection()) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.AUTO)
+                    .load(IntStream.range(0, 20_000)
+                                   .mapToObj(i -> new TransactionRecord(0, i % 1000 + 0.99, now)));
+
+            System.out.println(stats);
+        }
+        catch (SQLException ex) { ex.printStackTrace(); }
+
         System.exit(0);
     }
 }
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -17,7 +16,7 @@ public class ResultSetForwardIteration {
         //======================================================================================
         String sql = "select id, transaction_amount, transaction_date from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             ResultSet rs = statement.executeQuery(sql))
         {
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -19,7 +18,7 @@ public class ResultSetRelativePositioning {
 
         String sql = "select id, transaction_amount, transaction_date from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             ResultSet rs = statement.executeQuery(sql))
         {
@@ -37,6 +36,25 @@ public class ResultSetRelativePositioning {
             System.out.printf("Currently processing row %d ---> ", rs.getRow());
         }
         catch(SQLException ex) { ex.printStackTrace(); }
+
+        try {
+            //======================================================================================
+            // A ColumnarTable cursor moves the same way over a copy of the rows held in memory,
+            // without a scrollable cursor open on the server
+            //======================================================================================
+            ResultSetCache cache = new ResultSetCache(ConnectionProvider.getPool(), 60_000, 10);
+            ColumnarTable.Cursor rs = cache.query(sql);
+
+            rs.relative(3);
+            System.out.printf("Currently processing row %d ---> ", rs.getRow());
+
+            rs.relative(-2);
+            System.out.printf("Currently processing row %d ---> ", rs.getRow());
+
+            rs.relative(1);
+            System.out.printf("Currently processing row %d ---> ", rs.getRow());
+        }
+        catch(SQLException ex) { ex.printStackTrace(); }
     }
 
     public static void main(String[] args) {
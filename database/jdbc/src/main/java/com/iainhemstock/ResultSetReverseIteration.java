@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -19,7 +18,7 @@ public class ResultSetReverseIteration {
 
         String sql = "select id, transaction_amount, transaction_date from transactions";
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement();
             ResultSet rs = statement.executeQuery(sql))
         {
@@ -34,6 +33,23 @@ public class ResultSetReverseIteration {
         }
         catch(SQLException ex) { ex.printStackTrace(); }
 
+        try {
+            //======================================================================================
+            // Loop backwards through a copy of the results held in memory. A second pass doesn't
+            // run the query again, it reads the cached copy.
+            //======================================================================================
+            ResultSetCache cache = new ResultSetCache(ConnectionProvider.getPool(), 60_000, 10);
+            for (int pass = 0; pass < 2; ++pass) {
+                ColumnarTable.Cursor rs = cache.query(sql);
+                rs.afterLast();
+
+                while (rs.previous()) {
+                    System.out.printf("Currently processing row %d ---> ", rs.getRow());
+                }
+            }
+        }
+        catch(SQLException ex) { ex.printStackTrace(); }
+
         System.exit(0);
     }
 }
@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.sql.ResultSet;
@@ -16,7 +15,7 @@ public class ResultSetType {
         //======================================================================================
         // Find what result set type the current database is
         //======================================================================================
-        try (Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD)) {
+        try (Connection cxn = ConnectionProvider.getConnection()) {
             boolean isSupported;
             DatabaseMetaData dbmd = cxn.getMetaData();
             isSupported = dbmd.supportsResultSetType(ResultSet.TYPE_FORWARD_ONLY);
@@ -0,0 +1,488 @@
+/**
+ * A DataSource in front of a primary database and a number of read replicas that sends queries to
+ * the replicas and everything else to the primary, without the code using the connection having to
+ * know there is more than one database.
+ *
+ * The Connection it hands out only borrows real connections as it needs them. A statement is sent
+ * to a replica when it is a read:
+ *
+ *      - executeQuery() on a plain Statement with a select that doesn't lock rows (no "for update",
+ *        "for share" or "lock in share mode")
+ *      - prepareStatement() with such a select, as long as it doesn't ask for generated keys or an
+ *        updatable result set
+ *
+ * Everything else, including prepareCall(), executeUpdate(), execute() and batches, goes to the
+ * primary. Once setAutoCommit(false) has been called everything goes to the primary too until
+ * auto-commit is switched back on, so a transaction sees its own writes and its reads take their
+ * locks on the database they will be committed to. Calls on the connection itself, such as
+ * getMetaData() or setTransactionIsolation(), also go to the primary.
+ *
+ * The first read on a connection picks the replica with the fewest connections currently handed out
+ * by this router, and the connection sticks with that replica until it is closed. A background task
+ * asks every replica how far behind the primary it is every lagCheckMillis. A replica further behind
+ * than maxLagMillis, or one that can't be reached, is left out until it catches up. With no replica
+ * to use the reads go to the primary.
+ */
+
+package com.iainhemstock;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+
+public class RoutingDataSource implements DataSource, AutoCloseable {
+
+    private static final Pattern LOCKING_READ =
+        Pattern.compile("\\bfor\\s+(update|share)\\b|\\block\\s+in\\s+share\\s+mode\\b");
+
+    /**
+     * Works out how far a replica is behind the primary, in milliseconds.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+        long lagMillis(Connection replica) throws SQLException;
+    }
+
+    /**
+     * Reads Seconds_Behind_Master from MySQL's SHOW SLAVE STATUS. A server that isn't replicating
+     * from anything has no lag, a replica whose replication has stopped reports null which is
+     * treated as being infinitely far behind.
+     */
+    public static final LagProbe MYSQL_LAG_PROBE = replica -> {
+        try (Statement statement = replica.createStatement();
+             ResultSet rs = statement.executeQuery("show slave status"))
+        {
+            if (!rs.next())
+                return 0L;
+            long seconds = rs.getLong("Seconds_Behind_Master");
+            return rs.wasNull() ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(seconds);
+        }
+    };
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final LagProbe lagProbe;
+    private final ScheduledExecutorService lagChecker;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder primaryWrites = new LongAdder();
+
+    /**
+     * Routes between DBConfig.URL and DBConfig.REPLICA_URLS, each with its own pool.
+     */
+    public RoutingDataSource() {
+        this(new ConnectionPool());
+    }
+
+    /**
+     * Routes between the given primary pool and a pool for each of DBConfig.REPLICA_URLS.
+     */
+    public RoutingDataSource(ConnectionPool primary) {
+        this(primary, replicaPools(), DBConfig.REPLICA_MAX_LAG_MILLIS, DBConfig.REPLICA_LAG_CHECK_MILLIS,
+                MYSQL_LAG_PROBE);
+    }
+
+    public RoutingDataSource(ConnectionPool primary, List<ConnectionPool> replicas, long maxLagMillis,
+                             long lagCheckMillis, LagProbe lagProbe) {
+        this.primary = primary;
+        List<Replica> list = new ArrayList<>();
+        for (ConnectionPool pool : replicas)
+            list.add(new Replica(pool));
+        this.replicas = Collections.unmodifiableList(list);
+        this.maxLagMillis = maxLagMillis;
+        this.lagProbe = lagProbe;
+
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.replicas.isEmpty())
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new RoutingConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+            "RoutingDataSource only hands out connections for its configured user");
+    }
+
+    public ConnectionPool getPrimary() { return primary; }
+    public long getReplicaReads() { return replicaReads.sum(); }
+    public long getPrimaryReads() { return primaryReads.sum(); }
+    public long getPrimaryWrites() { return primaryWrites.sum(); }
+
+    /**
+     * The number of replicas currently close enough to the primary to be read from.
+     */
+    public int getUsableReplicaCount() {
+        int count = 0;
+        for (Replica replica : replicas)
+            if (replica.usable)
+                ++count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        primary.close();
+        for (Replica replica : replicas)
+            replica.pool.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("replicaReads=%d primaryReads=%d primaryWrites=%d usableReplicas=%d/%d",
+                getReplicaReads(), getPrimaryReads(), getPrimaryWrites(), getUsableReplicaCount(),
+                replicas.size());
+    }
+
+    /**
+     * True for a select that doesn't lock the rows it reads.
+     */
+    static boolean isRead(String sql) {
+        String normalised = sql.trim().toLowerCase(Locale.ROOT);
+        return (normalised.startsWith("select") || normalised.startsWith("("))
+            && !LOCKING_READ.matcher(normalised).find();
+    }
+
+    private static List<ConnectionPool> replicaPools() {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String url : DBConfig.REPLICA_URLS)
+            pools.add(new ConnectionPool(url, DBConfig.USER, DBConfig.PASSWORD,
+                                         DBConfig.POOL_MIN_SIZE, DBConfig.POOL_MAX_SIZE));
+        return pools;
+    }
+
+    // Least outstanding connections wins. Starting the search at a different replica each time
+    // spreads the load when several replicas are tied.
+    private Replica chooseReplica() {
+        Replica best = null;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(1, replicas.size()));
+        for (int i = 0; i < replicas.size(); ++i) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.usable && (best == null || replica.outstanding.get() < best.outstanding.get()))
+                best = replica;
+        }
+        return best;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            try (Connection cxn = replica.pool.getConnection()) {
+                replica.usable = lagProbe.lagMillis(cxn) <= maxLagMillis;
+            }
+            catch (SQLException | RuntimeException ex) {
+                replica.usable = false;
+            }
+        }
+    }
+
+    private static final class Replica {
+        final ConnectionPool pool;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile boolean usable = true;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * The Connection handed out by the router. It borrows a primary connection the first time
+     * something has to go to the primary and a replica connection the first time something can be
+     * read from a replica, and returns both when it is closed.
+     */
+    private final class RoutingConnection implements InvocationHandler {
+        private Connection primaryCxn;
+        private Connection replicaCxn;
+        private Replica replica;
+        private boolean autoCommit = true;
+        private boolean closed;
+        private Connection self;
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            self = (Connection) proxy;
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return String.format("Routing[primary=%s, replica=%s]", primaryCxn, replicaCxn);
+                default:
+                    break;
+            }
+
+            if (closed)
+                throw new SQLException("Connection has already been closed");
+
+            switch (method.getName()) {
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    // switching auto-commit on with nothing borrowed yet has nothing to apply to
+                    if (!autoCommit || primaryCxn != null)
+                        primary().setAutoCommit(autoCommit);
+                    return null;
+                case "commit":
+                case "rollback":
+                    // nothing has been written if the primary was never borrowed
+                    return primaryCxn == null ? null : RoutingDataSource.invoke(primaryCxn, method, args);
+                case "createStatement":
+                    return Proxy.newProxyInstance(
+                            Statement.class.getClassLoader(),
+                            new Class<?>[] { Statement.class },
+                            new RoutingStatement(args));
+                case "prepareStatement":
+                    if (isRead(args))
+                        return RoutingDataSource.invoke(readConnection(), method, args);
+                    primaryWrites.increment();
+                    return RoutingDataSource.invoke(primary(), method, args);
+                default:
+                    return RoutingDataSource.invoke(primary(), method, args);
+            }
+        }
+
+        // prepareStatement(sql) or prepareStatement(sql, resultSetType, CONCUR_READ_ONLY[, holdability])
+        private boolean isRead(Object[] args) {
+            if (args.length == 2)
+                return false; // asking for generated keys
+            if (args.length >= 3 && (Integer) args[2] != ResultSet.CONCUR_READ_ONLY)
+                return false;
+            return RoutingDataSource.isRead((String) args[0]);
+        }
+
+        Connection primary() throws SQLException {
+            if (primaryCxn == null) {
+                primaryCxn = primary.getConnection();
+                if (!autoCommit)
+                    primaryCxn.setAutoCommit(false);
+            }
+            return primaryCxn;
+        }
+
+        // The replica connection, or the primary when in a transaction or no replica can be used
+        Connection readConnection() throws SQLException {
+            Connection cxn = chooseReadConnection();
+            if (cxn == primaryCxn)
+                primaryReads.increment();
+            else
+                replicaReads.increment();
+            return cxn;
+        }
+
+        private Connection chooseReadConnection() throws SQLException {
+            if (!autoCommit)
+                return primary();
+            if (replicaCxn != null)
+                return replicaCxn;
+
+            Replica chosen = chooseReplica();
+            if (chosen == null)
+                return primary();
+            chosen.outstanding.incrementAndGet();
+            try {
+                replicaCxn = chosen.pool.getConnection();
+                replica = chosen;
+                return replicaCxn;
+            }
+            catch (SQLException ex) {
+                chosen.outstanding.decrementAndGet();
+                chosen.usable = false; // the lag checker puts it back once it can be reached again
+                return primary();
+            }
+        }
+
+        Connection self() {
+            return self;
+        }
+
+        private void close() throws SQLException {
+            if (closed)
+                return;
+            closed = true;
+            SQLException failure = null;
+            if (replicaCxn != null) {
+                replica.outstanding.decrementAndGet();
+                try { replicaCxn.close(); }
+                catch (SQLException ex) { failure = ex; }
+            }
+            if (primaryCxn != null) {
+                try { primaryCxn.close(); }
+                catch (SQLException ex) {
+                    if (failure != null) ex.addSuppressed(failure);
+                    failure = ex;
+                }
+            }
+            if (failure != null)
+                throw failure;
+        }
+
+        /**
+         * A plain Statement can't be created until it is known which database the sql is for, so
+         * this one remembers the settings it is given and creates the real statement on the right
+         * connection when it is executed, applying the settings to it. If a later execute needs the
+         * other database the statement is recreated there.
+         */
+        private final class RoutingStatement implements InvocationHandler {
+            private final Object[] createArgs;
+            private final List<Object[]> settings = new ArrayList<>();
+            private final List<Method> settingMethods = new ArrayList<>();
+            private Statement target;
+            private Connection targetCxn;
+            private boolean statementClosed;
+
+            RoutingStatement(Object[] createArgs) {
+                this.createArgs = createArgs;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                synchronized (RoutingConnection.this) {
+                    String name = method.getName();
+                    switch (name) {
+                        case "close":
+                            statementClosed = true;
+                            if (target != null)
+                                target.close();
+                            return null;
+                        case "isClosed":
+                            return statementClosed;
+                        case "getConnection":
+                            return self();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Routing[" + target + "]";
+                        default:
+                            break;
+                    }
+
+                    if (statementClosed)
+                        throw new SQLException("Statement has already been closed");
+
+                    if (name.equals("executeQuery") && isReadOnlyStatement()
+                            && RoutingDataSource.isRead((String) args[0]))
+                        return RoutingDataSource.invoke(on(readConnection()), method, args);
+
+                    if (name.startsWith("execute") || name.equals("addBatch")) {
+                        if (name.startsWith("execute"))
+                            primaryWrites.increment();
+                        return RoutingDataSource.invoke(on(primary()), method, args);
+                    }
+
+                    if (name.startsWith("set") || name.equals("closeOnCompletion")) {
+                        settingMethods.add(method);
+                        settings.add(args);
+                        if (target == null)
+                            return null;
+                    }
+
+                    return RoutingDataSource.invoke(target != null ? target : on(primary()), method, args);
+                }
+            }
+
+            private boolean isReadOnlyStatement() {
+                return createArgs == null || createArgs.length < 2
+                    || (Integer) createArgs[1] == ResultSet.CONCUR_READ_ONLY;
+            }
+
+            // the real statement on cxn, creating it there if need be
+            private Statement on(Connection cxn) throws Throwable {
+                if (target != null && targetCxn == cxn)
+                    return target;
+                if (target != null)
+                    target.close();
+
+                target = createArgs == null || createArgs.length == 0
+                    ? cxn.createStatement()
+                    : createArgs.length == 2
+                        ? cxn.createStatement((Integer) createArgs[0], (Integer) createArgs[1])
+                        : cxn.createStatement((Integer) createArgs[0], (Integer) createArgs[1],
+                                              (Integer) createArgs[2]);
+                targetCxn = cxn;
+                for (int i = 0; i < settings.size(); ++i)
+                    RoutingDataSource.invoke(target, settingMethods.get(i), settings.get(i));
+                return target;
+            }
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException { return primary.getLogWriter(); }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException { primary.setLogWriter(out); }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Configure the borrow timeout on the pools");
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException { return primary.getLoginTimeout(); }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        throw new SQLException("RoutingDataSource does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) { return iface.isInstance(this); }
+}
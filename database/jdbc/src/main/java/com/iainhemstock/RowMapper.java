@@ -0,0 +1,25 @@
+package com.iainhemstock;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a ResultSet into an object. The mapper should only read the current row
+ * and must not move the cursor.
+ *
+ * Code that maps every row of a ResultSet calls bind() once with its metadata, before the first row,
+ * and maps the rows with the mapper it returns. A mapper that works something out from the columns,
+ * like BeanRowMapper, does that once per query there instead of on every row.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    T mapRow(ResultSet rs) throws SQLException;
+
+    /**
+     * The mapper to use for the rows of a ResultSet with these columns.
+     */
+    default RowMapper<T> bind(ResultSetMetaData meta) throws SQLException {
+        return this;
+    }
+}
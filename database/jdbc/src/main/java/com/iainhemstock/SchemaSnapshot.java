@@ -0,0 +1,149 @@
+package com.iainhemstock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable copy of the tables, columns and primary keys of a schema as read by MetaDataCache.
+ * Tables and columns are looked up by name ignoring case, the way most databases treat unquoted
+ * identifiers. A snapshot never changes once built, so it can be shared between threads and held on
+ * to for as long as needed. Refreshing the cache builds a new snapshot instead.
+ */
+public final class SchemaSnapshot {
+
+    public static final class Column {
+        private final String name;
+        private final int position;
+        private final int jdbcType;
+        private final String typeName;
+        private final int size;
+        private final int decimalDigits;
+        private final boolean nullable;
+        private final boolean autoIncrement;
+
+        Column(String name, int position, int jdbcType, String typeName, int size, int decimalDigits,
+               boolean nullable, boolean autoIncrement) {
+            this.name = name;
+            this.position = position;
+            this.jdbcType = jdbcType;
+            this.typeName = typeName;
+            this.size = size;
+            this.decimalDigits = decimalDigits;
+            this.nullable = nullable;
+            this.autoIncrement = autoIncrement;
+        }
+
+        public String getName() { return name; }
+        /** 1-based, the same as the column's index in a select * from the table */
+        public int getPosition() { return position; }
+        /** One of the java.sql.Types constants */
+        public int getJdbcType() { return jdbcType; }
+        public String getTypeName() { return typeName; }
+        public int getSize() { return size; }
+        public int getDecimalDigits() { return decimalDigits; }
+        public boolean isNullable() { return nullable; }
+        public boolean isAutoIncrement() { return autoIncrement; }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s(%d)%s", name, typeName, size, nullable ? "" : " not null");
+        }
+    }
+
+    public static final class Table {
+        private final String name;
+        private final String type;
+        private final List<Column> columns;
+        private final Map<String, Column> columnsByName;
+        private final List<String> primaryKey;
+
+        Table(String name, String type, List<Column> columns, List<String> primaryKey) {
+            this.name = name;
+            this.type = type;
+            List<Column> ordered = new ArrayList<>(columns);
+            ordered.sort((a, b) -> Integer.compare(a.position, b.position));
+            this.columns = Collections.unmodifiableList(ordered);
+            Map<String, Column> byName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Column column : ordered)
+                byName.put(column.name, column);
+            this.columnsByName = Collections.unmodifiableMap(byName);
+            this.primaryKey = Collections.unmodifiableList(new ArrayList<>(primaryKey));
+        }
+
+        public String getName() { return name; }
+        /** TABLE, VIEW etc, as reported by DatabaseMetaData.getTables() */
+        public String getType() { return type; }
+        /** In the order they appear in the table */
+        public List<Column> getColumns() { return columns; }
+        /** In key sequence order, more than one name for a compound key and empty when there is none */
+        public List<String> getPrimaryKey() { return primaryKey; }
+
+        public Optional<Column> getColumn(String name) {
+            return Optional.ofNullable(columnsByName.get(name));
+        }
+
+        public List<String> getColumnNames() {
+            List<String> names = new ArrayList<>(columns.size());
+            for (Column column : columns)
+                names.add(column.name);
+            return Collections.unmodifiableList(names);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s pk=%s", type, name, columns, primaryKey);
+        }
+    }
+
+    private final Map<String, Table> tables;
+    private final long loadedAtMillis;
+
+    SchemaSnapshot(Collection<Table> tables, long loadedAtMillis) {
+        Map<String, Table> byName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Table table : tables)
+            byName.put(table.name, table);
+        this.tables = Collections.unmodifiableMap(byName);
+        this.loadedAtMillis = loadedAtMillis;
+    }
+
+    public Optional<Table> getTable(String name) {
+        return Optional.ofNullable(tables.get(name));
+    }
+
+    /**
+     * In name order.
+     */
+    public Collection<Table> getTables() {
+        return tables.values();
+    }
+
+    public Set<String> getTableNames() {
+        return tables.keySet();
+    }
+
+    /**
+     * When the oldest table in the snapshot was read from the database.
+     */
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    /**
+     * A copy of this snapshot with the given tables added or replaced and the named tables removed.
+     */
+    SchemaSnapshot with(Collection<Table> changed, Collection<String> removed) {
+        Map<String, Table> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(tables);
+        for (String name : removed)
+            merged.remove(name);
+        for (Table table : changed)
+            merged.put(table.name, table);
+        return new SchemaSnapshot(merged.values(), loadedAtMillis);
+    }
+}
@@ -0,0 +1,60 @@
+package com.iainhemstock;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a sql statement to its shape so that statements which only differ in their values are
+ * counted together by JdbcInstrumentation:
+ *
+ *      select * from transactions where id = 42 and note = 'it''s'
+ *      select * from transactions where id=? and note=?
+ *
+ * both become "select * from transactions where id = ? and note = ?". String and number literals
+ * become ?, an in list of any length becomes "in (?)", the repeated row groups of a multi-row
+ * insert collapse to one, whitespace is collapsed and everything is lower cased.
+ */
+public final class SqlFingerprint {
+
+    private static final int MAX_CACHED = 10_000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL =
+        Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?:e[-+]?\\d+)?(?![\\w.])");
+    private static final Pattern SPACE_AROUND_OPERATOR = Pattern.compile("\\s*(=|<>|!=|<=|>=|<|>|,)\\s*");
+    private static final Pattern IN_LIST = Pattern.compile("\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern REPEATED_ROWS =
+        Pattern.compile("(\\(\\?(?:, \\?)*\\))(?:, \\(\\?(?:, \\?)*\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // the same few statements are fingerprinted over and over, a regex pass each time would add up
+    private static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {}
+
+    public static String of(String sql) {
+        if (sql == null)
+            return "<unknown>";
+        String fingerprint = cache.get(sql);
+        if (fingerprint != null)
+            return fingerprint;
+
+        fingerprint = normalise(sql);
+        if (cache.size() >= MAX_CACHED)
+            cache.clear(); // far more distinct statements than expected, most likely literals in the sql
+        cache.put(sql, fingerprint);
+        return fingerprint;
+    }
+
+    static String normalise(String sql) {
+        String s = WHITESPACE.matcher(sql.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+        s = STRING_LITERAL.matcher(s).replaceAll("?");
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        s = SPACE_AROUND_OPERATOR.matcher(s).replaceAll(" $1 ").replace(" , ", ", ");
+        s = IN_LIST.matcher(s).replaceAll("in (?)");
+        s = REPEATED_ROWS.matcher(s).replaceAll("$1");
+        return WHITESPACE.matcher(s).replaceAll(" ").trim();
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Keeps the PreparedStatements and CallableStatements of a single Connection open so the same sql
+ * doesn't have to be prepared again every time it is run.
+ *
+ * Statements are looked up by their sql text. The cache holds at most capacity statements and
+ * closes the least recently used one when it is full. Closing a statement handed out by the cache
+ * doesn't close it, it clears its parameters and batch, closes any open ResultSet and puts it back
+ * in the cache. If the same sql is asked for while its cached statement is still in use a separate,
+ * uncached statement is prepared for it. Closing that one closes it for real, and reclaim() closes
+ * it if its user forgot to.
+ *
+ * A statement whose settings were changed (fetch size, max rows, query timeout and so on) is closed
+ * rather than returned to the cache so the next user doesn't inherit them.
+ *
+ * invalidate() closes every cached statement. It must be called before the connection is closed,
+ * although a cached statement that was closed along with its connection is spotted and replaced.
+ */
+
+package com.iainhemstock;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StatementCache implements AutoCloseable {
+
+    private static final Set<String> STATEMENT_SETTINGS = Set.of(
+        "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize",
+        "setQueryTimeout", "setEscapeProcessing", "setPoolable", "setCursorName", "closeOnCompletion");
+
+    private final Connection cxn;
+    private final int capacity;
+    private final StatementCacheStats stats;
+    private final Map<Key, CachedStatement> statements;
+    // statements prepared because the cached one was busy, until the next reclaim() or invalidate()
+    private final List<PreparedStatement> uncached = new ArrayList<>();
+
+    public StatementCache(Connection cxn, int capacity) {
+        this(cxn, capacity, new StatementCacheStats());
+    }
+
+    public StatementCache(Connection cxn, int capacity, StatementCacheStats stats) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Statement cache capacity must be at least 1: " + capacity);
+
+        this.cxn = cxn;
+        this.capacity = capacity;
+        this.stats = stats;
+        // access ordered so the eldest entry is always the least recently used statement
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity)
+                    return false;
+                StatementCache.this.stats.recordEviction();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    public synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+        return lend(new Key(sql, false));
+    }
+
+    public synchronized CallableStatement prepareCall(String sql) throws SQLException {
+        return (CallableStatement) lend(new Key(sql, true));
+    }
+
+    public StatementCacheStats getStats() {
+        return stats;
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Takes back statements that are still open, for example because the code using them forgot to
+     * close them before handing its connection back to a pool.
+     */
+    public synchronized void reclaim() {
+        List<CachedStatement> inUse = new ArrayList<>();
+        for (CachedStatement cached : statements.values())
+            if (cached.handle != null)
+                inUse.add(cached);
+        for (CachedStatement cached : inUse)
+            cached.handle.close();
+        closeUncached();
+    }
+
+    /**
+     * Closes and forgets every cached statement.
+     */
+    public synchronized void invalidate() {
+        List<CachedStatement> cached = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement statement : cached)
+            statement.evict();
+        closeUncached();
+    }
+
+    private void closeUncached() {
+        for (PreparedStatement statement : uncached)
+            closeQuietly(statement);
+        uncached.clear();
+    }
+
+    @Override
+    public void close() {
+        invalidate();
+    }
+
+    private PreparedStatement lend(Key key) throws SQLException {
+        CachedStatement cached = statements.get(key);
+        if (cached != null && cached.physical.isClosed()) {
+            statements.remove(key);
+            cached = null;
+        }
+
+        if (cached != null && cached.handle == null) {
+            stats.recordHit();
+            return cached.lend();
+        }
+
+        stats.recordMiss();
+        PreparedStatement physical = key.callable ? cxn.prepareCall(key.sql) : cxn.prepareStatement(key.sql);
+        if (cached != null) {
+            // the cached one is busy, this one is closed for real when done with
+            uncached.removeIf(StatementCache::isClosed);
+            uncached.add(physical);
+            return physical;
+        }
+
+        cached = new CachedStatement(key, physical);
+        statements.put(key, cached);
+        return cached.lend();
+    }
+
+    private static boolean isClosed(PreparedStatement statement) {
+        try { return statement.isClosed(); }
+        catch (SQLException ex) { return true; }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try { statement.close(); }
+        catch (SQLException ex) { /* nothing useful can be done with it */ }
+    }
+
+    private static final class Key {
+        final String sql;
+        final boolean callable;
+
+        Key(String sql, boolean callable) {
+            this.sql = sql;
+            this.callable = callable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return callable == other.callable && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + (callable ? 1 : 0);
+        }
+    }
+
+    private final class CachedStatement {
+        final Key key;
+        final PreparedStatement physical;
+        StatementHandle handle; // not null while lent out
+        boolean evicted;
+
+        CachedStatement(Key key, PreparedStatement physical) {
+            this.key = key;
+            this.physical = physical;
+        }
+
+        PreparedStatement lend() {
+            handle = new StatementHandle(this);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { key.callable ? CallableStatement.class : PreparedStatement.class },
+                    handle);
+        }
+
+        void evict() {
+            evicted = true;
+            if (handle == null)
+                closeQuietly(physical);
+        }
+
+        void giveBack(boolean settingsChanged) {
+            handle = null;
+            if (evicted || settingsChanged) {
+                statements.remove(key, this);
+                closeQuietly(physical);
+                return;
+            }
+
+            try {
+                ResultSet rs = physical.getResultSet();
+                if (rs != null) rs.close();
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+            }
+            catch (SQLException ex) {
+                statements.remove(key, this);
+                closeQuietly(physical);
+            }
+        }
+    }
+
+    /**
+     * The statement handed out by the cache. Closing it gives the statement back to the cache.
+     */
+    private final class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed;
+        private boolean settingsChanged;
+
+        StatementHandle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        void close() {
+            synchronized (StatementCache.this) {
+                if (!closed) {
+                    closed = true;
+                    cached.giveBack(settingsChanged);
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + cached.physical + "]";
+                default:
+                    break;
+            }
+
+            if (closed)
+                throw new SQLException("Statement has already been closed");
+            if (STATEMENT_SETTINGS.contains(method.getName()))
+                settingsChanged = true;
+
+            try {
+                return method.invoke(cached.physical, args);
+            }
+            catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Measures what a StatementCache saves. Each operation prepares a statement, runs it and closes it,
+ * first straight against the connection and then through a StatementCache.
+ *
+ * By default MySQL Connector/J prepares statements on the client, in which case the saving is the
+ * parsing of the sql by the driver. Adding useServerPrepStmts=true to the url makes every prepare a
+ * round trip to the server and the difference becomes much larger.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class StatementCacheBenchmark {
+
+    private static final int WARMUP_OPERATIONS = 2_000;
+    private static final int MEASURED_OPERATIONS = 20_000;
+    private static final String SQL_SELECT_TRANSACTION =
+        "select id, transaction_amount, transaction_date " +
+        "from transactions " +
+        "where id=?";
+
+    interface StatementSource {
+        PreparedStatement prepare(String sql) throws SQLException;
+    }
+
+    public static void main(String[] args) {
+
+        try (Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+             StatementCache cache = new StatementCache(cxn, DBConfig.POOL_STATEMENT_CACHE_SIZE))
+        {
+            run("prepareStatement() every time", cxn::prepareStatement);
+            run("StatementCache", cache::prepareStatement);
+
+            System.out.println(cache.getStats());
+        }
+        catch (SQLException ex) { ex.printStackTrace(); }
+
+        System.exit(0);
+    }
+
+    private static void run(String label, StatementSource source) throws SQLException {
+        execute(source, WARMUP_OPERATIONS);
+
+        long start = System.nanoTime();
+        execute(source, MEASURED_OPERATIONS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-30s %8.1f us/op %n", label, elapsed / 1_000.0 / MEASURED_OPERATIONS);
+    }
+
+    private static void execute(StatementSource source, int operations) throws SQLException {
+        for (int i = 0; i < operations; ++i) {
+            try (PreparedStatement statement = source.prepare(SQL_SELECT_TRANSACTION)) {
+                statement.setInt(1, i);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.iainhemstock;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss and eviction counts for one or more StatementCaches. A ConnectionPool shares a single
+ * instance between the caches of all its connections so the counts survive connections being
+ * closed and reopened.
+ */
+public class StatementCacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    void recordHit() { hits.increment(); }
+    void recordMiss() { misses.increment(); }
+    void recordEviction() { evictions.increment(); }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d evictions=%d hitRatio=%.2f",
+                getHits(), getMisses(), getEvictions(), getHitRatio());
+    }
+}
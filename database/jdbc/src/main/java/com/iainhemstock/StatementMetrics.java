@@ -0,0 +1,64 @@
+package com.iainhemstock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What JdbcInstrumentation has seen of every statement with the same SqlFingerprint: how many times
+ * it ran and failed, how long executing it took, how long reading its results took and how many
+ * rows were read. Execute time runs from the call to executeQuery(), executeUpdate(), execute() or
+ * executeBatch() until it returns. Fetch time is the time spent inside ResultSet.next().
+ */
+public class StatementMetrics {
+
+    private final String fingerprint;
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowExecutions = new LongAdder();
+    private final LongAdder rowsFetched = new LongAdder();
+    private final LongAdder totalExecuteNanos = new LongAdder();
+    private final LongAdder totalFetchNanos = new LongAdder();
+    private final LatencyHistogram executeLatency = new LatencyHistogram();
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+    StatementMetrics(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    void recordExecute(long nanos, boolean failed, boolean slow) {
+        executions.increment();
+        if (failed)
+            failures.increment();
+        if (slow)
+            slowExecutions.increment();
+        totalExecuteNanos.add(nanos);
+        executeLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordFetch(long rows, long nanos) {
+        rowsFetched.add(rows);
+        totalFetchNanos.add(nanos);
+        fetchLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public String getFingerprint() { return fingerprint; }
+    public long getExecutions() { return executions.sum(); }
+    public long getFailures() { return failures.sum(); }
+    public long getSlowExecutions() { return slowExecutions.sum(); }
+    public long getRowsFetched() { return rowsFetched.sum(); }
+    public LatencyHistogram getExecuteLatency() { return executeLatency; }
+    /** one value per ResultSet, the time spent in next() from the first row to the last */
+    public LatencyHistogram getFetchLatency() { return fetchLatency; }
+
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalExecuteNanos.sum() + totalFetchNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%n    executions=%d failures=%d slow=%d rows=%d total=%dms%n" +
+                             "    execute[%s]%n    fetch[%s]",
+                fingerprint, getExecutions(), getFailures(), getSlowExecutions(), getRowsFetched(),
+                getTotalMillis(), executeLatency, fetchLatency);
+    }
+}
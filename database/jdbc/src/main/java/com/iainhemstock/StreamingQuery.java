@@ -0,0 +1,158 @@
+/**
+ * Runs a query and hands back its rows as a java.util.stream.Stream that reads from the database as
+ * it is consumed.
+ *
+ * By default MySQL Connector/J reads the entire result of a query into memory before executeQuery()
+ * returns, so iterating a large table can run out of heap long before the first row is processed.
+ * Asking for a TYPE_FORWARD_ONLY, CONCUR_READ_ONLY statement with a fetch size of Integer.MIN_VALUE
+ * switches the driver to streaming the rows one at a time. Other drivers (and MySQL with
+ * useCursorFetch=true in the url) take a positive fetch size which is the number of rows read per
+ * round trip instead, and the JDBC spec says a negative one is invalid, so drivers such as H2 and
+ * PostgreSQL throw on it. The overloads without a fetch size use DBConfig.STREAMING_FETCH_SIZE,
+ * MySQL's Integer.MIN_VALUE; pass a positive fetch size for any other database.
+ *
+ * Rows are only read when the stream asks for the next element so a slow consumer simply slows the
+ * read down, and memory use stays the same however large the table is as long as the stream isn't
+ * collected into a list. The statement and result set (and the connection when the stream was
+ * created from a DataSource) are closed when the stream is closed or has been read to the end, so
+ * streams should be used inside a try-with-resources block:
+ *
+ *      try (Stream<Integer> ids = StreamingQuery.stream(cxn, "select id from transactions",
+ *                                                       rs -> rs.getInt(1))) {
+ *          ids.forEach(...);
+ *      }
+ *
+ * Note that while a MySQL streaming result is open no other statement can be run on the same
+ * connection.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.sql.DataSource;
+
+public class StreamingQuery {
+
+    private StreamingQuery() {}
+
+    public static <T> Stream<T> stream(Connection cxn, String sql, RowMapper<T> mapper, Object... params)
+            throws SQLException {
+        return stream(cxn, false, sql, DBConfig.STREAMING_FETCH_SIZE, mapper, params);
+    }
+
+    public static <T> Stream<T> stream(Connection cxn, String sql, int fetchSize, RowMapper<T> mapper,
+                                       Object... params) throws SQLException {
+        return stream(cxn, false, sql, fetchSize, mapper, params);
+    }
+
+    /**
+     * Borrows a connection from the DataSource for the lifetime of the stream. Closing the stream
+     * closes the connection too.
+     */
+    public static <T> Stream<T> stream(DataSource dataSource, String sql, RowMapper<T> mapper,
+                                       Object... params) throws SQLException {
+        return stream(dataSource, sql, DBConfig.STREAMING_FETCH_SIZE, mapper, params);
+    }
+
+    public static <T> Stream<T> stream(DataSource dataSource, String sql, int fetchSize, RowMapper<T> mapper,
+                                       Object... params) throws SQLException {
+        return stream(dataSource.getConnection(), true, sql, fetchSize, mapper, params);
+    }
+
+    private static <T> Stream<T> stream(Connection cxn, boolean ownsConnection, String sql, int fetchSize,
+                                        RowMapper<T> mapper, Object... params) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = cxn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; ++i)
+                statement.setObject(i + 1, params[i]);
+
+            ResultSet rs = statement.executeQuery();
+            Resources resources = new Resources(rs, statement, ownsConnection ? cxn : null);
+            return StreamSupport.stream(new RowSpliterator<>(rs, mapper.bind(rs.getMetaData()), resources), false)
+                                .onClose(resources::close);
+        }
+        catch (SQLException | RuntimeException ex) {
+            try {
+                if (statement != null) statement.close();
+                if (ownsConnection) cxn.close();
+            }
+            catch (SQLException closeEx) { ex.addSuppressed(closeEx); }
+            throw ex;
+        }
+    }
+
+    /**
+     * Pulls one row at a time from the ResultSet. There is no way to split a forward only cursor so
+     * the stream is always sequential.
+     */
+    private static class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private final Resources resources;
+
+        RowSpliterator(ResultSet rs, RowMapper<T> mapper, Resources resources) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+            this.mapper = mapper;
+            this.resources = resources;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                if (resources.isClosed() || !rs.next()) {
+                    // release the connection as soon as the last row has been read
+                    resources.close();
+                    return false;
+                }
+                action.accept(mapper.mapRow(rs));
+                return true;
+            }
+            catch (SQLException ex) {
+                resources.close();
+                throw new UncheckedSQLException(ex);
+            }
+        }
+    }
+
+    private static class Resources {
+        private final ResultSet rs;
+        private final PreparedStatement statement;
+        private final Connection cxn;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Resources(ResultSet rs, PreparedStatement statement, Connection cxn) {
+            this.rs = rs;
+            this.statement = statement;
+            this.cxn = cxn;
+        }
+
+        boolean isClosed() {
+            return closed.get();
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true))
+                return;
+            try {
+                try { rs.close(); }
+                finally {
+                    try { statement.close(); }
+                    finally { if (cxn != null) cxn.close(); }
+                }
+            }
+            catch (SQLException ex) { throw new UncheckedSQLException(ex); }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * A row of the transactions table: id, transaction_amount and transaction_date.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+public class TransactionRecord {
+
+    private int id;
+    private double transactionAmount;
+    private Timestamp transactionDate;
+
+    public TransactionRecord() {}
+
+    public TransactionRecord(int id, double transactionAmount, Timestamp transactionDate) {
+        this.id = id;
+        this.transactionAmount = transactionAmount;
+        this.transactionDate = transactionDate;
+    }
+
+    public int getId() { return id; }
+    public double getTransactionAmount() { return transactionAmount; }
+    public Timestamp getTransactionDate() { return transactionDate; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TransactionRecord)) return false;
+        TransactionRecord other = (TransactionRecord) o;
+        return id == other.id
+            && Double.compare(transactionAmount, other.transactionAmount) == 0
+            && Objects.equals(transactionDate, other.transactionDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, transactionAmount, transactionDate);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("id: %d transaction: %f date: %s", id, transactionAmount, transactionDate);
+    }
+}
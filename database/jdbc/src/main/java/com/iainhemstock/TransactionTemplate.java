@@ -0,0 +1,180 @@
+/**
+ * Runs a unit of work inside a transaction so callers don't have to hand code setAutoCommit(false),
+ * commit() and rollback() every time:
+ *
+ *      template.execute("transfer", cxn -> {
+ *          ... two or more statements on cxn ...
+ *          return null;
+ *      });
+ *
+ * The work is committed if it returns and rolled back if it throws. When two transactions lock the
+ * same rows in a different order the database picks one of them as a deadlock victim and rolls it
+ * back, and a transaction that waits too long for a lock is given up on. Neither means the work was
+ * wrong, so on those failures the whole unit of work is run again on a fresh connection, after a
+ * backoff that doubles each attempt and is jittered so that the transactions that collided don't
+ * just collide again. Any other failure is rolled back and thrown straight away.
+ *
+ * Every call is timed, from the first attempt to the final commit or failure, into a
+ * LatencyHistogram kept per transaction name so the tail latency added by retries can be seen.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+public class TransactionTemplate {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1_000;
+
+    // MySQL reports a deadlock as 1213 with SQLSTATE 40001 but a lock wait timeout as 1205 with the
+    // generic HY000, so the error code has to be checked as well as the state
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int MYSQL_DEADLOCK = 1213;
+    // serialization failure or deadlock, PostgreSQL's deadlock and PostgreSQL's lock not available
+    private static final Set<String> RETRYABLE_SQL_STATES = Set.of("40001", "40P01", "55P03");
+
+    /**
+     * The work to run inside the transaction. It must not commit, roll back or close the connection.
+     */
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction(Connection cxn) throws SQLException;
+    }
+
+    private final DataSource dataSource;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private Integer isolationLevel;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    public TransactionTemplate(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * One of the Connection.TRANSACTION_* levels. Without it the connection's default is used.
+     */
+    public TransactionTemplate isolationLevel(int level) {
+        this.isolationLevel = level;
+        return this;
+    }
+
+    public TransactionTemplate maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("Max attempts must be at least 1: " + maxAttempts);
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public TransactionTemplate backoffMillis(long initial, long max) {
+        if (initial < 0 || initial > max)
+            throw new IllegalArgumentException(
+                String.format("Invalid backoff: initial=%dms max=%dms", initial, max));
+        this.initialBackoffMillis = initial;
+        this.maxBackoffMillis = max;
+        return this;
+    }
+
+    public <T> T execute(String name, TransactionCallback<T> work) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; ++attempt) {
+                try {
+                    return executeOnce(work);
+                }
+                catch (SQLException ex) {
+                    if (attempt >= maxAttempts || !isRetryable(ex))
+                        throw ex;
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+        finally {
+            getHistogram(name).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public LatencyHistogram getHistogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * How many attempts have been run again after a deadlock or lock timeout, across all transactions.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * True for failures that are down to timing with other transactions rather than the work itself:
+     * deadlocks, serialization failures and lock wait timeouts.
+     */
+    public static boolean isRetryable(SQLException ex) {
+        for (SQLException next = ex; next != null; next = next.getNextException()) {
+            if (RETRYABLE_SQL_STATES.contains(next.getSQLState()))
+                return true;
+            if (next.getErrorCode() == MYSQL_DEADLOCK || next.getErrorCode() == MYSQL_LOCK_WAIT_TIMEOUT)
+                return true;
+        }
+        return false;
+    }
+
+    private <T> T executeOnce(TransactionCallback<T> work) throws SQLException {
+        try (Connection cxn = dataSource.getConnection()) {
+            boolean autoCommit = cxn.getAutoCommit();
+            int previousIsolation = cxn.getTransactionIsolation();
+            if (isolationLevel != null && isolationLevel != previousIsolation)
+                cxn.setTransactionIsolation(isolationLevel);
+            cxn.setAutoCommit(false);
+
+            try {
+                T result = work.doInTransaction(cxn);
+                cxn.commit();
+                return result;
+            }
+            catch (SQLException | RuntimeException ex) {
+                try { cxn.rollback(); } // rolls back any changes that were made prior to the failure
+                catch (SQLException rollbackEx) { ex.addSuppressed(rollbackEx); }
+                throw ex;
+            }
+            finally {
+                // a pooled connection goes back for reuse, so leave it the way it was found
+                cxn.setAutoCommit(autoCommit);
+                if (isolationLevel != null && isolationLevel != previousIsolation)
+                    cxn.setTransactionIsolation(previousIsolation);
+            }
+        }
+    }
+
+    // Full jitter: sleep anywhere between 0 and the doubled backoff for this attempt
+    private void backoff(int attempt) throws SQLException {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        if (ceiling <= 0)
+            return;
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry transaction", ex);
+        }
+    }
+}
@@ -8,57 +8,76 @@
  * However, without operating within a transaction, if the first statement failed aftr the money had
  * been deducted from the first account's balance then the second statement would never run and the
  * money would have vanished.
+ *
+ * The first section makes a transfer by hand with plain JDBC. The second makes many of them from
+ * several threads with TransactionTemplate, which takes care of switching off auto-commit, committing
+ * and rolling back, and runs the transfer again if it fails with a deadlock or serialization failure.
+ * Here each transfer only appends a row to each account table, so transfers running at once don't
+ * lock the same rows and the retry count printed at the end is normally zero. Each transfer is timed
+ * so the spread of latencies can be printed at the end.
  */
 
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Transactions {
 
+    private static final int THREADS = 4;
+    private static final int TRANSFERS_PER_THREAD = 250;
+    private static final String TRANSFER = "account1/account2 transfer";
+
     public static void main(String[] args) {
 
+        //==========================================================================================
+        // By hand
+        //==========================================================================================
         Connection cxn = null;
-        PreparedStatement statement = null;
+        PreparedStatement debit = null;
+        PreparedStatement credit = null;
 
         try {
-            cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            cxn = ConnectionProvider.getConnection();
 
             // By default a Connection commits to the database after each statement is executed.
             // By switching this off we can explicitly commit when we want to.
             cxn.setAutoCommit(false);
 
+            // A table name can't be a ? parameter, it has to be part of the sql itself
             String sql =
-                "insert into ? " +
+                "insert into %s " +
                 "(transaction_amount, transaction_date) " +
                 "values (?, ?)";
             double amount = 100.0;
             Timestamp now = new Timestamp(System.currentTimeMillis());
-            statement = cxn.prepareStatement(sql);
+            debit = cxn.prepareStatement(String.format(sql, "account1"));
+            credit = cxn.prepareStatement(String.format(sql, "account2"));
 
             // deduct the amount from the first account
-            statement.setString(1, "account1");
-            statement.setDouble(2, -amount);
-            statement.setTimestamp(3, now);
-            statement.executeUpdate(); // won't actually execute until commit is called later
+            debit.setDouble(1, -amount);
+            debit.setTimestamp(2, now);
+            debit.executeUpdate(); // won't actually be applied until commit is called later
 
             // credit the ammount to the second account
-            statement.setString(1, "account2");
-            statement.setDouble(2, amount);
-            statement.setTimestamp(3, now);
-            statement.executeUpdate(); // won't actually execute until commit is called later
+            credit.setDouble(1, amount);
+            credit.setTimestamp(2, now);
+            credit.executeUpdate(); // won't actually be applied until commit is called later
 
-            // Explicitly tell the connection to execute the statements.
+            // Explicitly tell the connection to apply the statements.
             // Should any of them fail then the exception will be caught and the changes rolled back.
             cxn.commit();
             cxn.setAutoCommit(true);
         }
         catch (SQLException ex) {
+            ex.printStackTrace();
             if (cxn != null) {
                 try { cxn.rollback(); } // rolls back any changes that were made prior to the failure
                 catch (SQLException exc) { exc.printStackTrace(); }
@@ -66,12 +85,73 @@ public class Transactions {
         }
         finally {
             try {
-                if (statement != null) statement.close();
+                if (debit != null) debit.close();
+                if (credit != null) credit.close();
                 if (cxn != null) cxn.close();
             }
             catch (SQLException ex) { ex.printStackTrace(); }
         }
 
+        //==========================================================================================
+        // With TransactionTemplate, from several threads at once
+        //==========================================================================================
+        TransactionTemplate template = new TransactionTemplate(ConnectionProvider.getPool())
+            .isolationLevel(Connection.TRANSACTION_READ_COMMITTED);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            // Half of the threads transfer from account1 to account2 and the other half the other
+            // way round.
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; ++i) {
+                boolean reversed = i % 2 == 1;
+                results.add(threads.submit(() -> {
+                    for (int n = 0; n < TRANSFERS_PER_THREAD; ++n) {
+                        if (reversed)
+                            template.execute(TRANSFER, tx -> transfer(tx, "account2", "account1", 100.0));
+                        else
+                            template.execute(TRANSFER, tx -> transfer(tx, "account1", "account2", 100.0));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results)
+                result.get();
+        }
+        catch (Exception ex) { ex.printStackTrace(); }
+        finally { threads.shutdown(); }
+
+        System.out.println(TRANSFER + ": " + template.getHistogram(TRANSFER));
+        System.out.println("retries: " + template.getRetries());
+
         System.exit(0);
     }
+
+    private static Void transfer(Connection cxn, String from, String to, double amount)
+            throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        // deduct the amount from the first account
+        insert(cxn, from, -amount, now); // won't actually be applied until the template commits
+
+        // credit the ammount to the second account
+        insert(cxn, to, amount, now); // won't actually be applied until the template commits
+
+        // Returning without an exception tells the template to commit. Should either statement
+        // fail then the template rolls back the changes and the money stays where it was.
+        return null;
+    }
+
+    private static void insert(Connection cxn, String account, double amount, Timestamp date)
+            throws SQLException {
+        String sql =
+            "insert into " + account + " " +
+            "(transaction_amount, transaction_date) " +
+            "values (?, ?)";
+        try (PreparedStatement statement = cxn.prepareStatement(sql)) {
+            statement.setDouble(1, amount);
+            statement.setTimestamp(2, date);
+            statement.executeUpdate();
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.iainhemstock;
+
+import java.sql.SQLException;
+
+/**
+ * Carries an SQLException out of code that can't throw checked exceptions, such as a Stream or an
+ * Iterator built on top of a ResultSet.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
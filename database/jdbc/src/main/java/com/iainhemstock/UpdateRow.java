@@ -1,7 +1,6 @@
 package com.iainhemstock;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.SQLException;
 
@@ -10,7 +9,7 @@ public class UpdateRow {
     public static void main(String[] args) {
 
         try (
-            Connection cxn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASSWORD);
+            Connection cxn = ConnectionProvider.getConnection();
             Statement statement = cxn.createStatement())
         {
             String sql = "update transactions set transaction_amount=987.65 where id=343";
@@ -18,6 +17,19 @@ public class UpdateRow {
         }
         catch(SQLException ex) { ex.printStackTrace(); }
 
+        //==========================================================================================
+        // A row that changes thousands of times a second doesn't need an update for every change.
+        // The write behind updater keeps the latest amount in memory and writes it once per flush
+        // interval, batched together with any other rows that changed in the meantime.
+        //==========================================================================================
+        try (WriteBehindUpdater updater = new WriteBehindUpdater(ConnectionProvider.getPool(), "transactions")) {
+            for (int i = 0; i < 10_000; ++i)
+                updater.update(343, "transaction_amount", 987.65 + i / 100.0);
+            updater.flush();
+            System.out.println(updater);
+        }
+        catch(SQLException ex) { ex.printStackTrace(); }
+
         System.exit(0);
     }
 }
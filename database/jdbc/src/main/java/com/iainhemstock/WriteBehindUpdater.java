@@ -0,0 +1,407 @@
+/**
+ * Buffers updates to rows in memory and writes them to the database a little later, so a row that
+ * is changed many times a second costs one UPDATE per flush instead of one per change:
+ *
+ *      try (WriteBehindUpdater updater = new WriteBehindUpdater(pool, "transactions")) {
+ *          updater.update(343, "transaction_amount", 987.65);
+ *          updater.update(343, "transaction_amount", 987.70);   // replaces the change above
+ *          ...
+ *      }                                                        // writes what is left
+ *
+ * Changes to the same primary key are merged column by column, the latest value winning, until the
+ * next flush. A flush runs every flushIntervalMillis on a background thread, or straight away once
+ * maxPendingRows different rows are waiting. It writes each row with one "update ... set ... where
+ * key = ?" and sends them with executeBatch(), grouped by which columns were changed, in a single
+ * transaction so that a failed flush leaves none of its rows written.
+ *
+ * While one flush is being written the next one fills up. If the database falls behind and that one
+ * reaches maxPendingRows too, update() waits for room (changes to rows that are already waiting
+ * never wait), and after enqueueTimeoutMillis gives up with a SQLTransientException. The callers are
+ * slowed down to the speed of the database instead of the buffer growing without limit.
+ *
+ * Until a change has been flushed it only exists in memory and is lost if the process dies. A
+ * Listener is told about each change as it is accepted, so it can be written to a local journal
+ * first, and about each flush that was committed, so the journal can be trimmed. A flush that fails
+ * is handed to the listener, and dropped unless failed() returns true. Then its rows are queued for
+ * the next flush again, without waiting for room, and any column changed by update() in the meantime
+ * keeps its newer value.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+public class WriteBehindUpdater implements AutoCloseable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_MAX_PENDING_ROWS = 10_000;
+    public static final int DEFAULT_MAX_BATCH_ROWS = 1_000;
+    public static final long DEFAULT_ENQUEUE_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Durability hooks. accepted() is called by the thread calling update(), before update()
+     * returns. flushed() and failed() are called by the thread that ran the flush, with the rows as
+     * they were written: primary key to the changed columns and their values. failed() returns true
+     * to have the rows written again with the next flush. It shouldn't call update(), which can wait
+     * for the very flush that is reporting the failure.
+     */
+    public interface Listener {
+        default void accepted(Object key, Map<String, Object> changes) {}
+        default void flushed(Map<Object, Map<String, Object>> rows) {}
+        default boolean failed(Map<Object, Map<String, Object>> rows, SQLException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String keyColumn;
+    // read by the flusher thread, which is already running when these are set
+    private volatile long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+    private volatile int maxPendingRows = DEFAULT_MAX_PENDING_ROWS;
+    private volatile int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+    private volatile long enqueueTimeoutMillis = DEFAULT_ENQUEUE_TIMEOUT_MILLIS;
+    private volatile Listener listener = new Listener() {};
+
+    // guarded by itself, replaced with an empty map by each flush
+    private final Object lock = new Object();
+    private Map<Object, Map<String, Object>> pending = new LinkedHashMap<>();
+    private boolean closed;
+
+    // held for the whole of a flush so flushes are written one at a time, in order
+    private final Object flushLock = new Object();
+    private final Thread flusher;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Looks up the table's primary key, which must be a single column.
+     */
+    public WriteBehindUpdater(ConnectionPool pool, String table) throws SQLException {
+        this(pool, table, singleColumnKey(new MetaDataCache(pool), table));
+    }
+
+    public WriteBehindUpdater(DataSource dataSource, String table, String keyColumn) {
+        this.dataSource = dataSource;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.flusher = new Thread(this::runFlusher, "write-behind-" + table);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    private static String singleColumnKey(MetaDataCache metaData, String table) throws SQLException {
+        List<String> primaryKey = metaData.getTable(table).getPrimaryKey();
+        if (primaryKey.size() != 1)
+            throw new SQLException(String.format(
+                "Table %s needs a single column primary key for write behind, it has %s", table, primaryKey));
+        return primaryKey.get(0);
+    }
+
+    /**
+     * How long a change can wait before it is written. The longer the window the more changes to a
+     * hot row are merged into one, and the more is lost if the process dies.
+     */
+    public WriteBehindUpdater flushIntervalMillis(long millis) {
+        if (millis < 1)
+            throw new IllegalArgumentException("Flush interval must be at least 1ms: " + millis);
+        this.flushIntervalMillis = millis;
+        synchronized (lock) {
+            lock.notifyAll(); // the flusher may be waiting out the old interval
+        }
+        return this;
+    }
+
+    public WriteBehindUpdater maxPendingRows(int maxPendingRows) {
+        if (maxPendingRows < 1)
+            throw new IllegalArgumentException("Max pending rows must be at least 1: " + maxPendingRows);
+        this.maxPendingRows = maxPendingRows;
+        return this;
+    }
+
+    /**
+     * How many rows are sent with each executeBatch().
+     */
+    public WriteBehindUpdater maxBatchRows(int maxBatchRows) {
+        if (maxBatchRows < 1)
+            throw new IllegalArgumentException("Max batch rows must be at least 1: " + maxBatchRows);
+        this.maxBatchRows = maxBatchRows;
+        return this;
+    }
+
+    public WriteBehindUpdater enqueueTimeoutMillis(long millis) {
+        this.enqueueTimeoutMillis = millis;
+        return this;
+    }
+
+    public WriteBehindUpdater listener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public void update(Object key, String column, Object value) throws SQLException {
+        update(key, Collections.singletonMap(column, value));
+    }
+
+    /**
+     * Queues the changes to be written with the next flush, merged into any changes to the same
+     * row that are already waiting.
+     */
+    public void update(Object key, Map<String, Object> changes) throws SQLException {
+        if (changes.isEmpty())
+            return;
+
+        synchronized (lock) {
+            if (closed)
+                throw new SQLException("Write behind updater has been closed");
+
+            Map<String, Object> row = pending.get(key);
+            if (row == null && pending.size() >= maxPendingRows) {
+                awaitRoom();
+                row = pending.get(key);
+            }
+            listener.accepted(key, changes);
+
+            if (row == null) {
+                row = new TreeMap<>(); // sorted, so rows changing the same columns share a statement
+                pending.put(key, row);
+                if (pending.size() >= maxPendingRows)
+                    lock.notifyAll(); // wake the flusher without waiting for the interval
+            }
+            else {
+                coalesced.increment();
+            }
+            row.putAll(changes);
+            updates.increment();
+        }
+    }
+
+    // called holding lock
+    private void awaitRoom() throws SQLException {
+        lock.notifyAll();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMillis);
+        try {
+            while (pending.size() >= maxPendingRows && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    throw new SQLTransientException(String.format(
+                        "Timed out after %dms waiting for room in the write behind queue for %s, %d rows pending",
+                        enqueueTimeoutMillis, table, pending.size()));
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for room in the write behind queue", ex);
+        }
+        finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (closed)
+            throw new SQLException("Write behind updater has been closed");
+    }
+
+    /**
+     * Writes everything that is waiting now, on the calling thread.
+     */
+    public void flush() {
+        flushPending();
+    }
+
+    // false when the flush failed
+    private boolean flushPending() {
+        Map<Object, Map<String, Object>> rows;
+        SQLException failure;
+        synchronized (flushLock) {
+            synchronized (lock) {
+                if (pending.isEmpty())
+                    return true;
+                rows = pending;
+                pending = new LinkedHashMap<>();
+                lock.notifyAll(); // there is room again
+            }
+            failure = write(rows);
+            if (failure == null) {
+                listener.flushed(rows);
+                return true;
+            }
+        }
+        // outside flushLock so the next flush isn't held up by the listener
+        if (listener.failed(rows, failure))
+            requeue(rows);
+        return false;
+    }
+
+    /**
+     * Puts the rows of a failed flush back in the queue. A column that has been changed again since
+     * keeps its newer value. Nothing waits for room, and the flusher isn't woken early even if the
+     * queue is now full, so a database that is down isn't retried in a tight loop.
+     */
+    private void requeue(Map<Object, Map<String, Object>> rows) {
+        synchronized (lock) {
+            if (closed)
+                return; // close() has made the last flush
+            for (Map.Entry<Object, Map<String, Object>> failed : rows.entrySet()) {
+                Map<String, Object> row = pending.get(failed.getKey());
+                if (row == null)
+                    pending.put(failed.getKey(), failed.getValue());
+                else
+                    failed.getValue().forEach(row::putIfAbsent);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        boolean failed = false;
+        while (true) {
+            synchronized (lock) {
+                long start = System.nanoTime();
+                try {
+                    // after a failed flush wait out the interval even if the queue is full
+                    while (!closed && (failed || pending.size() < maxPendingRows)) {
+                        long remaining = start + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis) - System.nanoTime();
+                        if (remaining <= 0)
+                            break;
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+                if (closed)
+                    return;
+            }
+            try {
+                failed = !flushPending();
+            }
+            catch (RuntimeException ex) {
+                // thrown by the listener, the flusher carries on with the next flush
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    // null once the rows have been committed, otherwise why they weren't
+    private SQLException write(Map<Object, Map<String, Object>> rows) {
+        // rows changing the same columns can go in the same batch
+        Map<Set<String>, List<Object>> keysByColumns = new LinkedHashMap<>();
+        for (Map.Entry<Object, Map<String, Object>> row : rows.entrySet())
+            keysByColumns.computeIfAbsent(row.getValue().keySet(), columns -> new ArrayList<>()).add(row.getKey());
+
+        try (Connection cxn = dataSource.getConnection()) {
+            boolean autoCommit = cxn.getAutoCommit();
+            cxn.setAutoCommit(false);
+            try {
+                for (Map.Entry<Set<String>, List<Object>> group : keysByColumns.entrySet())
+                    writeGroup(cxn, group.getKey(), group.getValue(), rows);
+                cxn.commit();
+            }
+            catch (SQLException | RuntimeException ex) {
+                cxn.rollback();
+                throw ex;
+            }
+            finally {
+                cxn.setAutoCommit(autoCommit);
+            }
+        }
+        catch (SQLException ex) {
+            failedRows.add(rows.size());
+            return ex;
+        }
+        catch (RuntimeException ex) {
+            // e.g. a value the driver's setObject() can't take
+            failedRows.add(rows.size());
+            return new SQLException("Write behind flush to " + table + " failed", ex);
+        }
+
+        rowsWritten.add(rows.size());
+        flushes.increment();
+        return null;
+    }
+
+    private void writeGroup(Connection cxn, Set<String> columns, List<Object> keys,
+                            Map<Object, Map<String, Object>> rows) throws SQLException {
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns)
+            assignments.add(column + " = ?");
+        String sql = String.format("update %s set %s where %s = ?", table, String.join(", ", assignments), keyColumn);
+
+        try (PreparedStatement statement = cxn.prepareStatement(sql)) {
+            int batched = 0;
+            for (Object key : keys) {
+                int index = 1;
+                for (Object value : rows.get(key).values())
+                    statement.setObject(index++, value);
+                statement.setObject(index, key);
+                statement.addBatch();
+                if (++batched == maxBatchRows) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0)
+                statement.executeBatch();
+        }
+    }
+
+    public int getPendingRows() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    public long getUpdates() { return updates.sum(); }
+    /** updates merged into a row that was already waiting instead of adding a row */
+    public long getCoalesced() { return coalesced.sum(); }
+    public long getRowsWritten() { return rowsWritten.sum(); }
+    public long getFlushes() { return flushes.sum(); }
+    public long getFailedRows() { return failedRows.sum(); }
+    /** total time callers of update() spent waiting for room */
+    public long getWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()); }
+
+    /**
+     * Stops the background flushes and writes whatever is still waiting.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed)
+                return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d updates, %d coalesced, %d rows written in %d flushes, %d rows failed, %d ms waiting",
+                getUpdates(), getCoalesced(), getRowsWritten(), getFlushes(), getFailedRows(), getWaitMillis());
+    }
+}
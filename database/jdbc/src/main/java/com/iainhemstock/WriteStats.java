@@ -0,0 +1,40 @@
+package com.iainhemstock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What happened during a single bulk write by BatchWriter or BulkLoader: how many rows were written,
+ * in how many round trips to the database and how long it took.
+ */
+public class WriteStats {
+
+    private long rowsWritten;
+    private int roundTrips;
+    private long executeNanos;
+    private long elapsedNanos;
+
+    void recordRoundTrip(long rows, long nanos) {
+        rowsWritten += rows;
+        roundTrips++;
+        executeNanos += nanos;
+    }
+
+    void setElapsedNanos(long nanos) {
+        elapsedNanos = nanos;
+    }
+
+    public long getRowsWritten() { return rowsWritten; }
+    public int getRoundTrips() { return roundTrips; }
+    public long getExecuteMillis() { return TimeUnit.NANOSECONDS.toMillis(executeNanos); }
+    public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsWritten / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows in %d round trips, %d ms (%d ms executing), %.0f rows/s",
+                rowsWritten, roundTrips, getElapsedMillis(), getExecuteMillis(), getRowsPerSecond());
+    }
+}
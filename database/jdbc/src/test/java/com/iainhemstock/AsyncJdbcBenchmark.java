@@ -0,0 +1,105 @@
+/**
+ * Simulates a service request that needs a number of independent lookups. The lookups are run one
+ * after the other on a single connection and then fanned out through AsyncJdbc, and the number of
+ * requests per second is compared.
+ *
+ * Like ConnectionPoolBenchmark it runs against an embedded H2 database served over TCP from inside
+ * the benchmark and seeded with a transactions table, so each lookup is a real round trip but
+ * nothing needs to be set up beforehand.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.h2.tools.Server;
+
+public class AsyncJdbcBenchmark {
+
+    private static final int LOOKUPS_PER_REQUEST = 24;
+    private static final int WARMUP_REQUESTS = 50;
+    private static final int MEASURED_REQUESTS = 500;
+    // every id a request looks up
+    private static final int ROWS = WARMUP_REQUESTS + MEASURED_REQUESTS + LOOKUPS_PER_REQUEST;
+
+    private static final int H2_PORT = 9094;
+    private static final String URL = "jdbc:h2:tcp://localhost:" + H2_PORT + "/mem:async_benchmark;DB_CLOSE_DELAY=-1";
+    private static final String SQL_SELECT_TRANSACTION =
+        "select id, transaction_amount, transaction_date " +
+        "from transactions " +
+        "where id=?";
+
+    interface Request {
+        void run(int requestNumber) throws Exception;
+    }
+
+    public static void main(String[] args) throws SQLException {
+
+        RowMapper<TransactionRecord> mapper = new BeanRowMapper<>(TransactionRecord.class);
+        Server server = Server.createTcpServer("-tcpPort", String.valueOf(H2_PORT), "-ifNotExists").start();
+
+        try (ConnectionPool pool = new ConnectionPool(URL, TestDatabase.USER, TestDatabase.PASSWORD,
+                                                      DBConfig.POOL_MIN_SIZE, DBConfig.POOL_MAX_SIZE);
+             AsyncJdbc async = new AsyncJdbc(pool))
+        {
+            TestDatabase.createTransactions(pool, ROWS);
+
+            //======================================================================================
+            // One lookup after another on the calling thread
+            //======================================================================================
+            run("sequential", requestNumber -> {
+                try (Connection cxn = pool.getConnection();
+                     PreparedStatement statement = cxn.prepareStatement(SQL_SELECT_TRANSACTION))
+                {
+                    for (int i = 0; i < LOOKUPS_PER_REQUEST; ++i) {
+                        statement.setInt(1, requestNumber + i);
+                        try (ResultSet rs = statement.executeQuery()) {
+                            RowMapper<TransactionRecord> bound = mapper.bind(rs.getMetaData());
+                            while (rs.next())
+                                bound.mapRow(rs);
+                        }
+                    }
+                }
+            });
+
+            //======================================================================================
+            // All lookups in flight at once, then wait for them all
+            //======================================================================================
+            run("AsyncJdbc", requestNumber -> {
+                List<CompletableFuture<List<TransactionRecord>>> lookups = new ArrayList<>();
+                for (int i = 0; i < LOOKUPS_PER_REQUEST; ++i)
+                    lookups.add(async.query(SQL_SELECT_TRANSACTION, mapper, requestNumber + i));
+                CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).join();
+            });
+
+            System.out.println(pool.getMetrics());
+        }
+        catch (Exception ex) { ex.printStackTrace(); }
+        finally {
+            server.stop();
+        }
+
+        System.exit(0);
+    }
+
+    private static void run(String label, Request request) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; ++i)
+            request.run(i);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_REQUESTS; ++i)
+            request.run(i);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-12s %8.0f requests/s %8.0f lookups/s %n",
+                label,
+                MEASURED_REQUESTS / (elapsed / 1e9),
+                MEASURED_REQUESTS * LOOKUPS_PER_REQUEST / (elapsed / 1e9));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * BeanRowMapper against an embedded H2 database: the rows of each ResultSet are mapped by the mapper
+ * bind() returns for it, and one BeanRowMapper serves queries with different columns.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BeanRowMapperTest {
+
+    private JdbcDataSource dataSource;
+    private BeanRowMapper<TransactionRecord> mapper;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = TestDatabase.create("bean_row_mapper");
+        TestDatabase.createTransactions(dataSource, 3);
+        mapper = new BeanRowMapper<>(TransactionRecord.class);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        TestDatabase.shutdown(dataSource);
+    }
+
+    private List<TransactionRecord> query(RowMapper<TransactionRecord> mapper, String sql, boolean bind)
+            throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery(sql))
+        {
+            RowMapper<TransactionRecord> rows = bind ? mapper.bind(rs.getMetaData()) : mapper;
+            List<TransactionRecord> records = new ArrayList<>();
+            while (rs.next())
+                records.add(rows.mapRow(rs));
+            return records;
+        }
+    }
+
+    @Test
+    public void testBoundMapper() throws SQLException {
+        List<TransactionRecord> records = query(mapper, "select * from transactions order by id", true);
+
+        assertEquals(3, records.size());
+        assertEquals(new TransactionRecord(2, 3.0, TestDatabase.DATE), records.get(1));
+    }
+
+    @Test
+    public void testUnboundMapperGivesTheSameRows() throws SQLException {
+        String sql = "select * from transactions order by id";
+        assertEquals(query(mapper, sql, true), query(mapper, sql, false));
+    }
+
+    /**
+     * Columns are matched by label, so a second query with fewer, reordered columns gets its own
+     * handles from the same mapper.
+     */
+    @Test
+    public void testColumnLayouts() throws SQLException {
+        query(mapper, "select * from transactions", true);
+        List<TransactionRecord> records =
+            query(mapper, "select transaction_amount as transactionAmount, id from transactions where id = 3", true);
+
+        assertEquals(List.of(new TransactionRecord(3, 4.5, null)), records);
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * BulkLoader's multi-row INSERT path against an embedded H2 database.
+ *
+ * LOAD DATA LOCAL INFILE can't be run here: it is MySQL's own statement, H2 has nothing like it and
+ * H2's statements have no setLocalInfileInputStream() to hand the rows to. The tests only check that
+ * asking for it fails before any rows are read and that AUTO falls back to multi-row inserts. The
+ * LOAD DATA path itself needs a MySQL server, see the BulkLoader section of ResultSetDatabaseInsert.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BulkLoaderTest {
+
+    private static final String INSERT_PREFIX =
+        "insert into transactions (transaction_amount, transaction_date) values ";
+    // BulkLoader's estimate for a row of a double and a timestamp: 32 bytes a value, "(?, ?)" and ", "
+    private static final int ROW_BYTES = 32 + 32 + 6 + 2;
+    // the headroom BulkLoader leaves in every packet
+    private static final int HEADROOM_BYTES = 1024;
+
+    private JdbcDataSource dataSource;
+    private Connection cxn;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = TestDatabase.create("bulk_loader");
+        cxn = dataSource.getConnection();
+        try (Statement statement = cxn.createStatement()) {
+            statement.execute("create table transactions (" +
+                              "id int auto_increment primary key, " +
+                              "transaction_amount double, " +
+                              "transaction_date timestamp)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        cxn.close();
+        TestDatabase.shutdown(dataSource);
+    }
+
+    @Test
+    public void testLoadsEveryRow() throws SQLException {
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT).load(records(500));
+
+        assertEquals(500, stats.getRowsWritten());
+        assertEquals(1, stats.getRoundTrips());
+        assertEquals(500, TestDatabase.count(dataSource, "transactions"));
+        assertEquals(500 * 501 / 2 * 1.5, sumOfAmounts(), 0.0);
+    }
+
+    @Test
+    public void testStatementsSplitAtMaxRows() throws SQLException {
+        int rows = BulkLoader.DEFAULT_MAX_ROWS_PER_STATEMENT * 2 + 10;
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT).load(records(rows));
+
+        assertEquals(rows, stats.getRowsWritten());
+        assertEquals(3, stats.getRoundTrips());
+        assertEquals(rows, TestDatabase.count(dataSource, "transactions"));
+    }
+
+    @Test
+    public void testStatementsSplitAtPacketLimit() throws SQLException {
+        // room for exactly ten rows a statement
+        long packet = HEADROOM_BYTES + INSERT_PREFIX.length() + 10 * ROW_BYTES;
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT)
+                                     .maxPacketBytes(packet)
+                                     .load(records(95));
+
+        assertEquals(95, stats.getRowsWritten());
+        assertEquals(10, stats.getRoundTrips());
+        assertEquals(95, TestDatabase.count(dataSource, "transactions"));
+    }
+
+    @Test
+    public void testOneRowBiggerThanThePacketIsSentOnItsOwn() throws SQLException {
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT)
+                                     .maxPacketBytes(HEADROOM_BYTES + 1)
+                                     .load(records(3));
+
+        assertEquals(3, stats.getRowsWritten());
+        assertEquals(3, stats.getRoundTrips());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPacketMustLeaveRoomForHeadroom() {
+        BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT).maxPacketBytes(HEADROOM_BYTES);
+    }
+
+    @Test
+    public void testRowsPerSecond() throws SQLException {
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT).load(records(1000));
+
+        assertTrue(stats.getRowsPerSecond() > 0);
+        assertTrue(stats.getElapsedMillis() >= stats.getExecuteMillis());
+        assertTrue(stats.toString().startsWith("1000 rows in 1 round trips"));
+    }
+
+    @Test
+    public void testNothingLoaded() throws SQLException {
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.MULTI_ROW_INSERT).load(records(0));
+
+        assertEquals(0, stats.getRowsWritten());
+        assertEquals(0, stats.getRoundTrips());
+    }
+
+    /**
+     * Statements that went through before the failing one stay written, it's up to the caller to
+     * run the load in a transaction when it should be all or nothing.
+     */
+    @Test
+    public void testFailedStatement() throws SQLException {
+        try {
+            loaderWithIds().load(duplicateInSecondStatement());
+            fail("Expected the duplicate key to fail the load");
+        }
+        catch (SQLException ex) {
+            assertEquals(10, TestDatabase.count(dataSource, "transactions"));
+        }
+    }
+
+    @Test
+    public void testFailedStatementRolledBack() throws SQLException {
+        cxn.setAutoCommit(false);
+        try {
+            loaderWithIds().load(duplicateInSecondStatement());
+            fail("Expected the duplicate key to fail the load");
+        }
+        catch (SQLException ex) {
+            cxn.rollback();
+        }
+        assertEquals(0, TestDatabase.count(dataSource, "transactions"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() throws SQLException {
+        new BulkLoader<TransactionRecord>(cxn, "transactions",
+                new String[] { "transaction_amount", "transaction_date" },
+                row -> new Object[] { row.getTransactionAmount() },
+                BulkLoader.Mode.MULTI_ROW_INSERT)
+            .load(records(1));
+    }
+
+    @Test
+    public void testLoadDataNotSupported() throws SQLException {
+        Iterator<TransactionRecord> rows = records(10).iterator();
+        try {
+            BulkLoader.forTransactions(cxn, BulkLoader.Mode.LOAD_DATA).load(rows);
+            fail("Expected H2 to be unable to take the LOAD DATA stream");
+        }
+        catch (SQLFeatureNotSupportedException ex) {
+            assertTrue(rows.hasNext());
+            assertEquals(0, TestDatabase.count(dataSource, "transactions"));
+        }
+    }
+
+    @Test
+    public void testAutoFallsBackToMultiRowInsert() throws SQLException {
+        WriteStats stats = BulkLoader.forTransactions(cxn, BulkLoader.Mode.AUTO).load(records(100));
+
+        assertEquals(100, stats.getRowsWritten());
+        assertEquals(100, TestDatabase.count(dataSource, "transactions"));
+    }
+
+    /**
+     * Loads the ids too, ten rows a statement.
+     */
+    private BulkLoader<TransactionRecord> loaderWithIds() {
+        String prefix = "insert into transactions (id, transaction_amount, transaction_date) values ";
+        int rowBytes = 32 + 32 + 32 + 9 + 2;
+        return new BulkLoader<TransactionRecord>(cxn, "transactions",
+                new String[] { "id", "transaction_amount", "transaction_date" },
+                row -> new Object[] { row.getId(), row.getTransactionAmount(), row.getTransactionDate() },
+                BulkLoader.Mode.MULTI_ROW_INSERT)
+            .maxPacketBytes(HEADROOM_BYTES + prefix.length() + 10 * rowBytes);
+    }
+
+    // ids 1 to 15 and then 15 again
+    private static Stream<TransactionRecord> duplicateInSecondStatement() {
+        return Stream.concat(records(15), Stream.of(record(15)));
+    }
+
+    private static Stream<TransactionRecord> records(int count) {
+        List<TransactionRecord> rows = IntStream.rangeClosed(1, count)
+                                                .mapToObj(BulkLoaderTest::record)
+                                                .collect(Collectors.toList());
+        return rows.stream();
+    }
+
+    private static TransactionRecord record(int id) {
+        return new TransactionRecord(id, id * 1.5, TestDatabase.DATE);
+    }
+
+    private double sumOfAmounts() throws SQLException {
+        try (Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery("select sum(transaction_amount) from transactions")) {
+            rs.next();
+            return rs.getDouble(1);
+        }
+    }
+}
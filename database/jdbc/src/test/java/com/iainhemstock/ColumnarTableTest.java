@@ -0,0 +1,98 @@
+/**
+ * ColumnarTable's date and time getters on columns it keeps as objects, read from an embedded H2
+ * database.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+
+import static org.junit.Assert.*;
+
+public class ColumnarTableTest {
+
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = TestDatabase.create("columnar_table");
+        TestDatabase.createTransactions(dataSource, 3);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        TestDatabase.shutdown(dataSource);
+    }
+
+    @Test
+    public void testTimestampColumn() throws SQLException {
+        ColumnarTable.Cursor rs = query("select transaction_date from transactions").cursor();
+        rs.first();
+
+        assertEquals(TestDatabase.DATE, rs.getTimestamp(1));
+        assertEquals(new Date(TestDatabase.DATE.getTime()), rs.getDate(1));
+    }
+
+    @Test
+    public void testDateTimeStrings() throws SQLException {
+        ColumnarTable.Cursor rs = query("select '2019-12-20 10:30:00', ' 2019-12-20 '").cursor();
+        rs.first();
+
+        assertEquals(Timestamp.valueOf("2019-12-20 10:30:00"), rs.getTimestamp(1));
+        assertEquals(Timestamp.valueOf("2019-12-20 00:00:00"), rs.getTimestamp(2));
+        assertEquals(Date.valueOf("2019-12-20"), rs.getDate(2));
+    }
+
+    @Test
+    public void testTimestampWithTimeZone() throws SQLException {
+        ColumnarTable.Cursor rs =
+            query("select cast('2019-12-20 10:30:00+02:00' as timestamp with time zone)").cursor();
+        rs.first();
+
+        Timestamp expected = Timestamp.from(OffsetDateTime.parse("2019-12-20T10:30:00+02:00").toInstant());
+        assertEquals(expected, rs.getTimestamp(1));
+        assertEquals(expected.getTime(), rs.getDate(1).getTime());
+    }
+
+    @Test
+    public void testNullObject() throws SQLException {
+        ColumnarTable.Cursor rs = query("select cast(null as varchar)").cursor();
+        rs.first();
+
+        assertNull(rs.getTimestamp(1));
+        assertNull(rs.getDate(1));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testStringNotADate() throws SQLException {
+        ColumnarTable.Cursor rs = query("select 'yesterday'").cursor();
+        rs.first();
+        rs.getTimestamp(1);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testObjectNotADate() throws SQLException {
+        ColumnarTable.Cursor rs = query("select cast('ff' as binary)").cursor();
+        rs.first();
+        rs.getDate(1);
+    }
+
+    private ColumnarTable query(String sql) throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return ColumnarTable.from(rs);
+        }
+    }
+}
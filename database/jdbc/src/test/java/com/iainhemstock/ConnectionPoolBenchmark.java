@@ -0,0 +1,114 @@
+/**
+ * Compares opening a new connection with DriverManager for every query against borrowing one from
+ * a ConnectionPool. Each operation gets a connection, runs a trivial query and closes the
+ * connection, so the difference between the two is almost entirely the cost of connecting.
+ *
+ * The last run uses more threads than the pool has connections to show the borrow wait building up.
+ *
+ * It runs against an embedded H2 database served over TCP from inside the benchmark, so every
+ * DriverManager connection still pays for a socket and a login, but nothing needs to be set up
+ * beforehand and the numbers don't depend on the MySQL demo instance.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.tools.Server;
+
+public class ConnectionPoolBenchmark {
+
+    private static final int WARMUP_OPERATIONS = 200;
+    private static final int MEASURED_OPERATIONS = 2_000;
+    private static final String SQL = "select 1";
+
+    private static final int H2_PORT = 9093;
+    // DB_CLOSE_DELAY keeps the in-memory database alive between DriverManager connections
+    private static final String URL = "jdbc:h2:tcp://localhost:" + H2_PORT + "/mem:pool_benchmark;DB_CLOSE_DELAY=-1";
+    private static final String USER = "sa";
+    private static final String PASSWORD = "";
+
+    interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Server server = Server.createTcpServer("-tcpPort", String.valueOf(H2_PORT), "-ifNotExists").start();
+
+        ConnectionSource driverManager = () -> DriverManager.getConnection(URL, USER, PASSWORD);
+
+        try (ConnectionPool pool = new ConnectionPool(URL, USER, PASSWORD, DBConfig.POOL_MIN_SIZE, DBConfig.POOL_MAX_SIZE)) {
+
+            //======================================================================================
+            // Single threaded, one connection per operation
+            //======================================================================================
+            run("DriverManager, 1 thread", driverManager, 1);
+            run("ConnectionPool, 1 thread", pool::getConnection, 1);
+
+            //======================================================================================
+            // More threads than pooled connections so callers have to wait for each other
+            //======================================================================================
+            int threads = pool.getMaxSize() * 2;
+            run("DriverManager, " + threads + " threads", driverManager, threads);
+            run("ConnectionPool, " + threads + " threads", pool::getConnection, threads);
+
+            System.out.println(pool.getMetrics());
+        }
+        finally {
+            server.stop();
+        }
+
+        System.exit(0);
+    }
+
+    private static void run(String label, ConnectionSource source, int threads) throws Exception {
+        execute(source, threads, WARMUP_OPERATIONS);
+
+        long start = System.nanoTime();
+        execute(source, threads, MEASURED_OPERATIONS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-35s %8.0f ops/s %8.1f us/op %n",
+                label,
+                MEASURED_OPERATIONS / (elapsed / 1e9),
+                elapsed / 1_000.0 / MEASURED_OPERATIONS * threads);
+    }
+
+    private static void execute(ConnectionSource source, int threads, int operations) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                int share = operations / threads + (t < operations % threads ? 1 : 0);
+                tasks.add(() -> {
+                    for (int i = 0; i < share; ++i) {
+                        try (
+                            Connection cxn = source.get();
+                            Statement statement = cxn.createStatement();
+                            ResultSet rs = statement.executeQuery(SQL))
+                        {
+                            rs.next();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks))
+                future.get();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * ParallelTableScanner against an embedded H2 database, which needs a positive fetch size.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ParallelTableScannerTest {
+
+    private static final int ROWS = 1000;
+    private static final int FETCH_SIZE = 100;
+
+    private JdbcDataSource dataSource;
+    private MetaDataCache metaData;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = TestDatabase.create("parallel_scan");
+        TestDatabase.createTransactions(dataSource, ROWS);
+        metaData = new MetaDataCache(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        TestDatabase.shutdown(dataSource);
+    }
+
+    @Test
+    public void testOrderedScan() throws SQLException {
+        try (Stream<TransactionRecord> rows = scanner().ordered(true).scan()) {
+            List<Integer> ids = rows.map(TransactionRecord::getId).collect(Collectors.toList());
+
+            assertEquals(ROWS, ids.size());
+            for (int i = 0; i < ROWS; ++i)
+                assertEquals(i + 1, (int) ids.get(i));
+        }
+    }
+
+    @Test
+    public void testUnorderedScan() throws SQLException {
+        try (Stream<TransactionRecord> rows = scanner().queueCapacity(8).scan()) {
+            List<Integer> ids = rows.map(TransactionRecord::getId).sorted().collect(Collectors.toList());
+
+            assertEquals(ROWS, ids.size());
+            assertEquals(1, (int) ids.get(0));
+            assertEquals(ROWS, (int) ids.get(ROWS - 1));
+        }
+    }
+
+    @Test
+    public void testReadersFinishWithoutClose() throws Exception {
+        Stream<TransactionRecord> rows = scanner().scan();
+        assertEquals(ROWS, rows.count());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (readerThreads() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, readerThreads());
+    }
+
+    @Test(expected = UncheckedSQLException.class)
+    public void testMySqlFetchSizeRejected() throws SQLException {
+        try (Stream<TransactionRecord> rows = scanner().fetchSize(DBConfig.STREAMING_FETCH_SIZE).scan()) {
+            rows.count();
+        }
+    }
+
+    @Test
+    public void testSplit() {
+        assertRanges(ParallelTableScanner.split(1, 10, 3), 1, 4, 5, 8, 9, 10);
+        assertRanges(ParallelTableScanner.split(1, 9, 3), 1, 3, 4, 6, 7, 9);
+        assertRanges(ParallelTableScanner.split(5, 5, 4), 5, 5);
+        // never more ranges than keys
+        assertRanges(ParallelTableScanner.split(1, 3, 8), 1, 1, 2, 2, 3, 3);
+        assertRanges(ParallelTableScanner.split(-10, 9, 2), -10, -1, 0, 9);
+    }
+
+    @Test
+    public void testSplitWholeLongRange() {
+        assertRanges(ParallelTableScanner.split(Long.MIN_VALUE, Long.MAX_VALUE, 1), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertRanges(ParallelTableScanner.split(Long.MIN_VALUE, Long.MAX_VALUE, 2),
+                     Long.MIN_VALUE, -1, 0, Long.MAX_VALUE);
+        assertRanges(ParallelTableScanner.split(Long.MAX_VALUE - 2, Long.MAX_VALUE, 2),
+                     Long.MAX_VALUE - 2, Long.MAX_VALUE - 1, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        List<long[]> ranges = ParallelTableScanner.split(-1, Long.MAX_VALUE, 7);
+        assertEquals(-1, ranges.get(0)[0]);
+        assertEquals(Long.MAX_VALUE, ranges.get(ranges.size() - 1)[1]);
+        for (int i = 1; i < ranges.size(); ++i)
+            assertEquals(ranges.get(i - 1)[1] + 1, ranges.get(i)[0]);
+    }
+
+    private ParallelTableScanner<TransactionRecord> scanner() {
+        return new ParallelTableScanner<>(dataSource, metaData, "transactions",
+                                          () -> new BeanRowMapper<>(TransactionRecord.class))
+            .partitions(7)
+            .parallelism(3)
+            .fetchSize(FETCH_SIZE);
+    }
+
+    // from and to of each range, one after the other
+    private static void assertRanges(List<long[]> ranges, long... bounds) {
+        assertEquals(bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); ++i) {
+            assertEquals(bounds[2 * i], ranges.get(i)[0]);
+            assertEquals(bounds[2 * i + 1], ranges.get(i)[1]);
+        }
+    }
+
+    private static long readerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                     .filter(thread -> thread.getName().startsWith("table-scan-transactions-"))
+                     .count();
+    }
+}
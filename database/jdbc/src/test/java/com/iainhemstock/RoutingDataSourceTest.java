@@ -0,0 +1,303 @@
+/**
+ * RoutingDataSource in front of three in-memory H2 databases, a primary and two replicas. Each one
+ * has a table holding its own name so a select shows which database it went to. The databases
+ * aren't replicating, so a row written through the router only ever shows up on the primary.
+ */
+
+package com.iainhemstock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class RoutingDataSourceTest {
+
+    private static final String SQL_WHO = "select name from who";
+    private static final String SQL_INSERT = "insert into who (name) values ('written')";
+    private static final String SQL_COUNT_WRITTEN = "select count(*) from who where name = 'written'";
+    private static final long MAX_LAG_MILLIS = 1000;
+    private static final long LAG_CHECK_MILLIS = 10;
+
+    private ConnectionPool primary;
+    private List<ConnectionPool> replicas;
+    // lag reported for each replica, by name
+    private final ConcurrentHashMap<String, Long> lag = new ConcurrentHashMap<>();
+    private RoutingDataSource router;
+
+    @Before
+    public void setUp() throws SQLException {
+        primary = database("primary");
+        replicas = Arrays.asList(database("replica1"), database("replica2"));
+        router = new RoutingDataSource(primary, replicas, MAX_LAG_MILLIS, LAG_CHECK_MILLIS,
+                                       cxn -> lag.getOrDefault(queryWho(cxn), 0L));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (ConnectionPool pool : new ConnectionPool[] { primary, replicas.get(0), replicas.get(1) })
+            TestDatabase.shutdown(pool);
+        router.close();
+    }
+
+    @Test
+    public void testIsRead() {
+        assertTrue(RoutingDataSource.isRead(" SELECT * from who"));
+        assertTrue(RoutingDataSource.isRead("(select 1) union (select 2)"));
+        assertFalse(RoutingDataSource.isRead("select * from who for update"));
+        assertFalse(RoutingDataSource.isRead("select * from who lock in share mode"));
+        assertFalse(RoutingDataSource.isRead("update who set name = 'x'"));
+    }
+
+    @Test
+    public void testReadsGoToReplica() throws SQLException {
+        try (Connection cxn = router.getConnection()) {
+            String replica = queryWho(cxn);
+            assertTrue(replica.startsWith("replica"));
+
+            // the connection sticks with its replica
+            try (PreparedStatement statement = cxn.prepareStatement(SQL_WHO);
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                assertEquals(replica, rs.getString(1));
+            }
+        }
+        assertEquals(2, router.getReplicaReads());
+        assertEquals(0, router.getPrimaryReads());
+        assertEquals(0, router.getPrimaryWrites());
+    }
+
+    @Test
+    public void testWritesGoToPrimary() throws SQLException {
+        try (Connection cxn = router.getConnection()) {
+            try (Statement statement = cxn.createStatement()) {
+                assertEquals(1, statement.executeUpdate(SQL_INSERT));
+            }
+            try (PreparedStatement statement = cxn.prepareStatement(SQL_INSERT)) {
+                assertEquals(1, statement.executeUpdate());
+            }
+            // a locking read has to go to the primary too
+            try (Statement statement = cxn.createStatement();
+                 ResultSet rs = statement.executeQuery(SQL_WHO + " where name <> 'written' for update")) {
+                rs.next();
+                assertEquals("primary", rs.getString(1));
+            }
+        }
+        assertEquals(2, countWritten(primary));
+        assertEquals(0, countWritten(replicas.get(0)));
+        assertEquals(0, countWritten(replicas.get(1)));
+        assertEquals(3, router.getPrimaryWrites());
+        assertEquals(0, router.getReplicaReads());
+    }
+
+    @Test
+    public void testLeastOutstandingReplica() throws SQLException {
+        Connection first = router.getConnection();
+        Connection second = router.getConnection();
+        Connection third = router.getConnection();
+        try {
+            String firstReplica = queryWho(first);
+            // the first replica has a connection handed out and the other has none
+            String secondReplica = queryWho(second);
+            assertNotEquals(firstReplica, secondReplica);
+
+            first.close();
+            // now the first replica has none and the second has one
+            assertEquals(firstReplica, queryWho(third));
+        }
+        finally {
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test
+    public void testReadsSpreadAcrossReplicas() throws SQLException {
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 10; ++i) {
+            try (Connection cxn = router.getConnection()) {
+                used.add(queryWho(cxn));
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("replica1", "replica2")), used);
+    }
+
+    @Test
+    public void testTransactionSticksToPrimary() throws SQLException {
+        try (Connection cxn = router.getConnection()) {
+            // borrows a replica connection before the transaction starts
+            assertTrue(queryWho(cxn).startsWith("replica"));
+
+            cxn.setAutoCommit(false);
+            assertEquals("primary", queryWho(cxn));
+            try (Statement statement = cxn.createStatement()) {
+                statement.executeUpdate(SQL_INSERT);
+            }
+            // the transaction sees its own write
+            try (PreparedStatement statement = cxn.prepareStatement(SQL_COUNT_WRITTEN);
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                assertEquals(1, rs.getInt(1));
+            }
+            cxn.rollback();
+            cxn.setAutoCommit(true);
+
+            assertTrue(queryWho(cxn).startsWith("replica"));
+        }
+        assertEquals(0, countWritten(primary));
+        assertEquals(2, router.getPrimaryReads());
+    }
+
+    @Test
+    public void testCommitInTransaction() throws SQLException {
+        try (Connection cxn = router.getConnection()) {
+            cxn.setAutoCommit(false);
+            try (Statement statement = cxn.createStatement()) {
+                statement.executeUpdate(SQL_INSERT);
+            }
+            assertEquals(0, countWritten(primary));
+            cxn.commit();
+        }
+        assertEquals(1, countWritten(primary));
+    }
+
+    @Test
+    public void testSwitchingTargetClosesResultSet() throws SQLException {
+        try (Connection cxn = router.getConnection();
+             Statement statement = cxn.createStatement()) {
+            ResultSet replicaRows = statement.executeQuery(SQL_WHO);
+            assertTrue(replicaRows.next());
+            assertTrue(replicaRows.getString(1).startsWith("replica"));
+
+            statement.executeUpdate(SQL_INSERT);
+            assertTrue(replicaRows.isClosed());
+
+            // and back to the replica again
+            ResultSet primaryRows = statement.executeQuery(SQL_WHO + " for update");
+            assertTrue(primaryRows.next());
+            ResultSet rows = statement.executeQuery(SQL_WHO);
+            assertTrue(primaryRows.isClosed());
+            assertTrue(rows.next());
+            assertTrue(rows.getString(1).startsWith("replica"));
+        }
+    }
+
+    @Test
+    public void testSettingsFollowStatement() throws SQLException {
+        try (Connection cxn = router.getConnection();
+             Statement statement = cxn.createStatement()) {
+            statement.setMaxRows(1);
+            statement.executeUpdate(SQL_INSERT);
+            statement.executeUpdate(SQL_INSERT);
+            try (ResultSet rs = statement.executeQuery(SQL_WHO + " for update")) {
+                assertEquals(1, rowCount(rs));
+            }
+            try (ResultSet rs = statement.executeQuery(SQL_WHO)) {
+                assertEquals(1, statement.getMaxRows());
+                assertEquals(1, rowCount(rs));
+            }
+        }
+    }
+
+    @Test
+    public void testLaggingReplicaLeftOut() throws Exception {
+        lag.put("replica2", MAX_LAG_MILLIS + 1);
+        awaitUsableReplicas(1);
+        for (int i = 0; i < 4; ++i) {
+            try (Connection cxn = router.getConnection()) {
+                assertEquals("replica1", queryWho(cxn));
+            }
+        }
+
+        lag.put("replica1", Long.MAX_VALUE);
+        awaitUsableReplicas(0);
+        try (Connection cxn = router.getConnection()) {
+            assertEquals("primary", queryWho(cxn));
+        }
+        assertEquals(1, router.getPrimaryReads());
+
+        lag.clear();
+        awaitUsableReplicas(2);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testClosedConnection() throws SQLException {
+        Connection cxn = router.getConnection();
+        cxn.close();
+        assertTrue(cxn.isClosed());
+        cxn.createStatement();
+    }
+
+    @Test
+    public void testConnectionsReturnedOnClose() throws Exception {
+        try (Connection cxn = router.getConnection()) {
+            queryWho(cxn);
+            try (Statement statement = cxn.createStatement()) {
+                statement.executeUpdate(SQL_INSERT);
+            }
+        }
+        assertEquals(0, primary.getActiveCount());
+        // the lag checker borrows a replica connection now and then
+        for (ConnectionPool replica : replicas) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (replica.getActiveCount() > 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(1);
+            assertEquals(0, replica.getActiveCount());
+        }
+    }
+
+    private static ConnectionPool database(String name) throws SQLException {
+        ConnectionPool pool = new ConnectionPool(TestDatabase.url("routing_" + name), TestDatabase.USER,
+                                                 TestDatabase.PASSWORD, 1, 4);
+        try (Connection cxn = pool.getConnection();
+             Statement statement = cxn.createStatement()) {
+            statement.execute("create table who (name varchar(20))");
+            statement.execute("insert into who (name) values ('" + name + "')");
+        }
+        return pool;
+    }
+
+    private static String queryWho(Connection cxn) throws SQLException {
+        try (Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery(SQL_WHO + " where name <> 'written'")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static int countWritten(ConnectionPool pool) throws SQLException {
+        try (Connection cxn = pool.getConnection();
+             Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery(SQL_COUNT_WRITTEN)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static int rowCount(ResultSet rs) throws SQLException {
+        int rows = 0;
+        while (rs.next())
+            ++rows;
+        return rows;
+    }
+
+    private void awaitUsableReplicas(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (router.getUsableReplicaCount() != count && System.currentTimeMillis() < deadline)
+            Thread.sleep(LAG_CHECK_MILLIS);
+        assertEquals(count, router.getUsableReplicaCount());
+    }
+}
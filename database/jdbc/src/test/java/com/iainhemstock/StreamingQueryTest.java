@@ -0,0 +1,69 @@
+/**
+ * StreamingQuery against an embedded H2 database. H2 follows the JDBC spec and rejects MySQL's
+ * Integer.MIN_VALUE fetch size, so the tests pass a positive one.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class StreamingQueryTest {
+
+    private static final int ROWS = 250;
+    private static final int FETCH_SIZE = 50;
+
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = TestDatabase.create("streaming_query");
+        TestDatabase.createTransactions(dataSource, ROWS);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        TestDatabase.shutdown(dataSource);
+    }
+
+    @Test
+    public void testStreamFromDataSource() throws SQLException {
+        try (Stream<TransactionRecord> rows = StreamingQuery.stream(dataSource,
+                "select * from transactions where id > ? order by id", FETCH_SIZE,
+                new BeanRowMapper<>(TransactionRecord.class), 200)) {
+            List<TransactionRecord> records = rows.collect(Collectors.toList());
+
+            assertEquals(50, records.size());
+            assertEquals(new TransactionRecord(201, 301.5, TestDatabase.DATE), records.get(0));
+            assertEquals(250, records.get(49).getId());
+        }
+    }
+
+    @Test
+    public void testStreamFromConnection() throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             Stream<Integer> ids = StreamingQuery.stream(cxn, "select id from transactions", FETCH_SIZE,
+                                                         rs -> rs.getInt(1))) {
+            assertEquals(ROWS, ids.count());
+            assertFalse(cxn.isClosed());
+        }
+    }
+
+    /**
+     * The default fetch size is MySQL's and only works with MySQL Connector/J.
+     */
+    @Test(expected = SQLException.class)
+    public void testMySqlFetchSizeRejected() throws SQLException {
+        StreamingQuery.stream(dataSource, "select id from transactions", rs -> rs.getInt(1)).close();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * In-memory H2 databases for the tests, each with its own name so tests don't see each other's
+ * rows. DB_CLOSE_DELAY keeps a database alive between connections until shutdown() is called.
+ */
+
+package com.iainhemstock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+final class TestDatabase {
+
+    static final String USER = "sa";
+    static final String PASSWORD = "";
+
+    // the date every seeded transaction has
+    static final Timestamp DATE = Timestamp.valueOf("2019-12-20 00:00:00");
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private TestDatabase() {}
+
+    static String url(String name) {
+        return "jdbc:h2:mem:" + name + "_" + COUNT.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+    }
+
+    static JdbcDataSource create(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url(name));
+        dataSource.setUser(USER);
+        dataSource.setPassword(PASSWORD);
+        return dataSource;
+    }
+
+    /**
+     * Creates the transactions table with ids 1 to rows, each with an amount of id * 1.5.
+     */
+    static void createTransactions(DataSource dataSource, int rows) throws SQLException {
+        try (Connection cxn = dataSource.getConnection()) {
+            try (Statement statement = cxn.createStatement()) {
+                statement.execute("create table transactions (" +
+                                  "id int primary key, " +
+                                  "transaction_amount double, " +
+                                  "transaction_date timestamp)");
+            }
+            try (PreparedStatement insert = cxn.prepareStatement(
+                    "insert into transactions (id, transaction_amount, transaction_date) values (?, ?, ?)")) {
+                for (int id = 1; id <= rows; ++id) {
+                    insert.setInt(1, id);
+                    insert.setDouble(2, id * 1.5);
+                    insert.setTimestamp(3, DATE);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    static int count(DataSource dataSource, String table) throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             Statement statement = cxn.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    static void shutdown(DataSource dataSource) throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             Statement statement = cxn.createStatement()) {
+            statement.execute("shutdown");
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * WriteBehindUpdater against an embedded H2 database. The DataSource can be told to fail the next
+ * few connections to make a flush fail.
+ */
+
+package com.iainhemstock;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindUpdaterTest {
+
+    // long enough that only the tests flush
+    private static final long NO_BACKGROUND_FLUSH = 60_000;
+    private static final Timestamp LATER = Timestamp.valueOf("2020-01-01 00:00:00");
+
+    private final AtomicInteger connectionFailures = new AtomicInteger();
+    private JdbcDataSource h2;
+    private JdbcDataSource dataSource;
+    private WriteBehindUpdater updater;
+
+    @Before
+    public void setUp() throws SQLException {
+        h2 = TestDatabase.create("write_behind");
+        dataSource = new JdbcDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (connectionFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+                    throw new SQLException("Database unavailable");
+                return h2.getConnection();
+            }
+        };
+        dataSource.setURL(h2.getURL());
+        TestDatabase.createTransactions(h2, 10);
+        updater = new WriteBehindUpdater(dataSource, "transactions", "id");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        updater.close();
+        TestDatabase.shutdown(h2);
+    }
+
+    @Test
+    public void testChangesMerged() throws SQLException {
+        updater.flushIntervalMillis(NO_BACKGROUND_FLUSH);
+        updater.update(1, "transaction_amount", 10.0);
+        updater.update(1, "transaction_amount", 20.0);
+        updater.update(1, "transaction_date", LATER);
+        updater.update(2, "transaction_amount", 30.0);
+        assertEquals(2, updater.getPendingRows());
+
+        updater.flush();
+
+        assertEquals(0, updater.getPendingRows());
+        assertEquals(4, updater.getUpdates());
+        assertEquals(2, updater.getCoalesced());
+        assertEquals(2, updater.getRowsWritten());
+        assertEquals(1, updater.getFlushes());
+        assertEquals(20.0, amount(1), 0.0);
+        assertEquals(LATER, date(1));
+        assertEquals(30.0, amount(2), 0.0);
+        assertEquals(TestDatabase.DATE, date(2));
+    }
+
+    @Test
+    public void testCloseWritesWhatIsLeft() throws SQLException {
+        updater.flushIntervalMillis(NO_BACKGROUND_FLUSH);
+        updater.update(3, "transaction_amount", 99.0);
+        updater.close();
+
+        assertEquals(99.0, amount(3), 0.0);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUpdateAfterClose() throws SQLException {
+        updater.close();
+        updater.update(3, "transaction_amount", 99.0);
+    }
+
+    @Test
+    public void testFailedFlushDropped() throws SQLException {
+        updater.flushIntervalMillis(NO_BACKGROUND_FLUSH)
+               .listener(new WriteBehindUpdater.Listener() {
+                   @Override
+                   public boolean failed(Map<Object, Map<String, Object>> rows, SQLException ex) {
+                       return false;
+                   }
+               });
+        updater.update(1, "transaction_amount", 10.0);
+        connectionFailures.set(1);
+        updater.flush();
+
+        assertEquals(0, updater.getPendingRows());
+        assertEquals(1, updater.getFailedRows());
+        assertEquals(1.5, amount(1), 0.0);
+    }
+
+    /**
+     * A change made while the failed flush was being written is newer than the failed one, so it
+     * is kept when the failed rows are queued again.
+     */
+    @Test
+    public void testFailedFlushRetried() throws SQLException {
+        updater.flushIntervalMillis(NO_BACKGROUND_FLUSH)
+               .listener(new WriteBehindUpdater.Listener() {
+                   @Override
+                   public boolean failed(Map<Object, Map<String, Object>> rows, SQLException ex) {
+                       try {
+                           updater.update(1, "transaction_amount", 20.0);
+                       }
+                       catch (SQLException exc) {
+                           throw new IllegalStateException(exc);
+                       }
+                       return true;
+                   }
+               });
+        Map<String, Object> changes = new TreeMap<>();
+        changes.put("transaction_amount", 10.0);
+        changes.put("transaction_date", LATER);
+        updater.update(1, changes);
+        updater.update(2, "transaction_amount", 30.0);
+
+        connectionFailures.set(1);
+        updater.flush();
+        assertEquals(2, updater.getPendingRows());
+        assertEquals(2, updater.getFailedRows());
+
+        updater.flush();
+        assertEquals(0, updater.getPendingRows());
+        assertEquals(2, updater.getRowsWritten());
+        assertEquals(20.0, amount(1), 0.0);
+        assertEquals(LATER, date(1));
+        assertEquals(30.0, amount(2), 0.0);
+    }
+
+    @Test
+    public void testRetryDoesNotWaitForRoom() throws SQLException {
+        updater.flushIntervalMillis(NO_BACKGROUND_FLUSH)
+               .enqueueTimeoutMillis(0)
+               .listener(new WriteBehindUpdater.Listener() {
+                   @Override
+                   public boolean failed(Map<Object, Map<String, Object>> rows, SQLException ex) {
+                       return true;
+                   }
+               });
+        updater.update(1, "transaction_amount", 10.0);
+        updater.update(2, "transaction_amount", 20.0);
+        // the failed rows alone are more than the queue can now hold
+        updater.maxPendingRows(1);
+        connectionFailures.set(1);
+        updater.flush();
+        assertEquals(2, updater.getPendingRows());
+
+        updater.flush();
+        assertEquals(20.0, amount(2), 0.0);
+    }
+
+    @Test
+    public void testFlusherSurvivesListenerFailure() throws Exception {
+        AtomicInteger flushed = new AtomicInteger();
+        updater.flushIntervalMillis(5)
+               .listener(new WriteBehindUpdater.Listener() {
+                   @Override
+                   public void flushed(Map<Object, Map<String, Object>> rows) {
+                       if (flushed.incrementAndGet() == 1)
+                           throw new IllegalStateException("Listener failed (expected by the test)");
+                   }
+               });
+        updater.update(1, "transaction_amount", 10.0);
+        awaitFlushes(flushed, 1);
+
+        updater.update(2, "transaction_amount", 20.0);
+        awaitFlushes(flushed, 2);
+        assertEquals(20.0, amount(2), 0.0);
+    }
+
+    private static void awaitFlushes(AtomicInteger flushed, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flushed.get() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(count, flushed.get());
+    }
+
+    private double amount(int id) throws SQLException {
+        return (Double) column(id, "transaction_amount");
+    }
+
+    private Timestamp date(int id) throws SQLException {
+        return (Timestamp) column(id, "transaction_date");
+    }
+
+    private Object column(int id, String column) throws SQLException {
+        try (Connection cxn = dataSource.getConnection();
+             PreparedStatement statement =
+                 cxn.prepareStatement("select " + column + " from transactions where id = ?")) {
+            statement.setInt(1, id);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getObject(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.iainhemstock;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks for a JsonSerializer and a JsonDeserializer to be generated for the class when it is
+ * compiled, instead of jackson working out how to map it by reflection at runtime:
+ *
+ *      @GenerateJsonCodec
+ *      @NoArgsConstructor @AllArgsConstructor @Getter
+ *      public class Mountain { ... }
+ *
+ *      ObjectMapper mapper = new ObjectMapper().registerModule(new GeneratedJsonCodecs());
+ *
+ * processor.JsonCodecProcessor generates MountainJsonSerializer and MountainJsonDeserializer next
+ * to the class, and a GeneratedJsonCodecs module that registers them. The module is only used by
+ * the mappers it is registered with, and only for a mapper that names, orders and includes
+ * properties the default way. See JsonCodecProcessor for which classes it can generate codecs for.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateJsonCodec {
+}
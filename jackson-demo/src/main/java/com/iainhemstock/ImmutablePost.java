@@ -6,6 +6,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
+@GenerateJsonCodec
 @Getter
 @EqualsAndHashCode
 @ToString
@@ -0,0 +1,88 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the elements of a json array one at a time instead of mapping the whole array into a List
+ * first:
+ *
+ *      try (Stream<Todo> todos = JsonArrayStream.stream(mapper, input, Todo.class)) {
+ *          todos.filter(Todo::isCompleted).forEach(...);
+ *      }
+ *
+ * A JsonParser is moved onto the array and ObjectMapper.readValues() then maps one element each
+ * time the iterator is asked for the next, reading only as much of the input as that element
+ * needs. Only the element being mapped and the parser's buffer are held in memory, so an array of
+ * several gigabytes is read with the same heap as one of two elements. The elements that have been
+ * handed out can be garbage collected as soon as the caller is done with them.
+ *
+ * Closing the stream (or the iterator) closes the parser and the input with it.
+ */
+public final class JsonArrayStream {
+
+    private JsonArrayStream() {}
+
+    public static <T> Stream<T> stream(ObjectMapper mapper, InputStream input, Class<T> type) throws IOException {
+        return streamClosingOnFailure(mapper, mapper.getFactory().createParser(input), type);
+    }
+
+    public static <T> Stream<T> stream(ObjectMapper mapper, Reader input, Class<T> type) throws IOException {
+        return streamClosingOnFailure(mapper, mapper.getFactory().createParser(input), type);
+    }
+
+    private static <T> Stream<T> streamClosingOnFailure(ObjectMapper mapper, JsonParser parser, Class<T> type)
+            throws IOException {
+        try {
+            return stream(mapper, parser, type);
+        }
+        catch (IOException | RuntimeException ex) {
+            parser.close();
+            throw ex;
+        }
+    }
+
+    public static <T> Stream<T> stream(ObjectMapper mapper, JsonParser parser, Class<T> type) throws IOException {
+        MappingIterator<T> elements = iterator(mapper, parser, type);
+        return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(elements, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        elements.close();
+                        parser.close();
+                    }
+                    catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    /**
+     * The parser can be a new one, or one that has been moved to an array somewhere inside a larger
+     * document, in which case it is left on the array's END_ARRAY once the elements have been read
+     * and the rest of the document can still be parsed.
+     */
+    public static <T> MappingIterator<T> iterator(ObjectMapper mapper, JsonParser parser, Class<T> type)
+            throws IOException {
+        JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if (token != JsonToken.START_ARRAY)
+            throw MismatchedInputException.from(parser, type,
+                    String.format("Expected the start of an array of %s but found %s", type.getSimpleName(), token));
+
+        // readValues() starts from the next token, which is the first element or the end of the array
+        parser.clearCurrentToken();
+        return mapper.readValues(parser, type);
+    }
+}
@@ -0,0 +1,171 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out ObjectReaders and ObjectWriters for a type and a set of features, building each one the
+ * first time it is asked for and the same instance every time after that:
+ *
+ *      Mountain mountain = JsonCodecs.shared().reader(Mountain.class).readValue(json);
+ *      ObjectReader lenient = JsonCodecs.shared().reader(Mountain.class,
+ *                                  EnumSet.noneOf(DeserializationFeature.class),
+ *                                  EnumSet.of(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+ *
+ * A new ObjectMapper has to find out how to map a class (its properties, creators and annotations)
+ * and build a serializer or deserializer for it the first time it sees the class, which costs many
+ * times more than mapping one small object. An ObjectReader or ObjectWriter made for one type looks
+ * up its (de)serializer when it is created and keeps hold of it, and is immutable, so it can be
+ * shared by every thread and used for every call.
+ *
+ * The mapper is copied when the registry is created, so configuring the original mapper afterwards
+ * doesn't change what the registry hands out. warmUp() builds the readers and writers for a list
+ * of types up front so the first real call doesn't pay for it. The shared() registries, one per
+ * WireFormat, warm up the types in this module when they are first used, and register the codecs
+ * generated for its @GenerateJsonCodec classes.
+ */
+public final class JsonCodecs {
+
+    private static final class Holder {
+        static final Map<WireFormat, JsonCodecs> SHARED = new EnumMap<>(WireFormat.class);
+
+        static {
+            for (WireFormat format : WireFormat.values())
+                SHARED.put(format, new JsonCodecs(format.newMapper().registerModule(new GeneratedJsonCodecs()))
+                        .warmUp(Todo.class, Mountain.class, ImmutablePost.class, Transaction.class, User.class));
+        }
+    }
+
+    /**
+     * A type with the features switched on and off compared to the mapper's configuration.
+     */
+    private static final class Key {
+        final JavaType type;
+        final Set<?> enabled;
+        final Set<?> disabled;
+
+        Key(JavaType type, Set<?> enabled, Set<?> disabled) {
+            this.type = type;
+            this.enabled = enabled;
+            this.disabled = disabled;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return type.equals(key.type) && enabled.equals(key.enabled) && disabled.equals(key.disabled);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, enabled, disabled);
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final Map<Key, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Key, ObjectWriter> writers = new ConcurrentHashMap<>();
+    // the mapper's own features, by far the most asked for, found without building a Key
+    private final Map<Class<?>, ObjectReader> defaultReaders = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> defaultWriters = new ConcurrentHashMap<>();
+
+    public JsonCodecs(ObjectMapper mapper) {
+        this.mapper = mapper.copy();
+    }
+
+    public static JsonCodecs shared() {
+        return shared(WireFormat.JSON);
+    }
+
+    /**
+     * The same readers and writers for a binary format, see WireFormat.
+     */
+    public static JsonCodecs shared(WireFormat format) {
+        return Holder.SHARED.get(format);
+    }
+
+    public JsonCodecs warmUp(Class<?>... types) {
+        for (Class<?> type : types) {
+            reader(type);
+            writer(type);
+        }
+        return this;
+    }
+
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = defaultReaders.get(type);
+        if (reader == null) {
+            reader = reader(mapper.constructType(type), Collections.emptySet(), Collections.emptySet());
+            defaultReaders.put(type, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * For generic types, e.g. new TypeReference<List<Todo>>() {}
+     */
+    public ObjectReader reader(TypeReference<?> type) {
+        return reader(mapper.getTypeFactory().constructType(type), Collections.emptySet(), Collections.emptySet());
+    }
+
+    public ObjectReader reader(Class<?> type, Set<DeserializationFeature> enabled, Set<DeserializationFeature> disabled) {
+        return reader(mapper.constructType(type), enabled, disabled);
+    }
+
+    private ObjectReader reader(JavaType type, Set<DeserializationFeature> enabled, Set<DeserializationFeature> disabled) {
+        return readers.computeIfAbsent(new Key(type, copyOf(enabled), copyOf(disabled)), key -> {
+            ObjectReader reader = mapper.readerFor(type);
+            for (DeserializationFeature feature : enabled)
+                reader = reader.with(feature);
+            for (DeserializationFeature feature : disabled)
+                reader = reader.without(feature);
+            return reader;
+        });
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = defaultWriters.get(type);
+        if (writer == null) {
+            writer = writer(type, Collections.emptySet(), Collections.emptySet());
+            defaultWriters.put(type, writer);
+        }
+        return writer;
+    }
+
+    public ObjectWriter writer(Class<?> type, Set<SerializationFeature> enabled, Set<SerializationFeature> disabled) {
+        JavaType javaType = mapper.constructType(type);
+        return writers.computeIfAbsent(new Key(javaType, copyOf(enabled), copyOf(disabled)), key -> {
+            ObjectWriter writer = mapper.writerFor(javaType);
+            for (SerializationFeature feature : enabled)
+                writer = writer.with(feature);
+            for (SerializationFeature feature : disabled)
+                writer = writer.without(feature);
+            return writer;
+        });
+    }
+
+    // EnumSets compare equal to any other set with the same features, and can't be changed by the
+    // caller afterwards
+    private static <E extends Enum<E>> Set<E> copyOf(Set<E> features) {
+        return features.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(features));
+    }
+
+    public int size() {
+        return readers.size() + writers.size();
+    }
+}
@@ -0,0 +1,280 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the values at a fixed set of JSON Pointers out of a document without building a tree of
+ * the rest of it:
+ *
+ *      JsonProjection projection = new JsonProjection(mapper, "/address/geo/lat", "/company/name");
+ *      JsonProjection.Result result = projection.extract(input);
+ *      String lat = result.get("/address/geo/lat").asText();
+ *
+ * The pointers are compiled once into a tree of the field names and array indexes on the way to
+ * each of them. extract() walks the document's tokens with a JsonParser alongside that tree: a
+ * field or element that isn't on the way to a pointer is stepped over with skipChildren(), without
+ * creating anything for it, and a value at a pointer is read into a JsonNode. Once every pointer
+ * has its value extract() returns, without reading the rest of a byte array, stream or reader.
+ *
+ * A pointer whose value isn't in the document, or is below a value of the wrong kind, gives null.
+ * A pointer to an object or array gives the whole subtree, and pointers below it are then taken
+ * from that subtree with at().
+ *
+ * A JsonProjection is immutable and can be shared between threads.
+ */
+public final class JsonProjection {
+
+    private final ObjectMapper mapper;
+    private final Map<String, Integer> slotOfPointer = new LinkedHashMap<>();
+    private final Step root = new Step();
+
+    public JsonProjection(ObjectMapper mapper, String... pointers) {
+        if (pointers.length == 0)
+            throw new IllegalArgumentException("No pointers to project");
+        this.mapper = mapper;
+        for (String pointer : pointers) {
+            if (slotOfPointer.containsKey(pointer))
+                continue;
+            int slot = slotOfPointer.size();
+            slotOfPointer.put(pointer, slot);
+            root.add(JsonPointer.compile(pointer), slot);
+        }
+        root.collect(JsonPointer.compile(""), new ArrayList<>(), new ArrayList<>());
+    }
+
+    public List<String> getPointers() {
+        return new ArrayList<>(slotOfPointer.keySet());
+    }
+
+    public Result extract(byte[] json) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            return extract(parser, false);
+        }
+    }
+
+    public Result extract(InputStream input) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            return extract(parser, false);
+        }
+    }
+
+    public Result extract(Reader input) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            return extract(parser, false);
+        }
+    }
+
+    /**
+     * Reads the next value from the parser, leaving it on the last token of the value so that the
+     * parser can go on to the next one, as with a sequence of root level values.
+     */
+    public Result extract(JsonParser parser) throws IOException {
+        return extract(parser, true);
+    }
+
+    private Result extract(JsonParser parser, boolean toEndOfValue) throws IOException {
+        Extraction extraction = new Extraction(new JsonNode[slotOfPointer.size()]);
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != null) {
+            JsonStreamContext outside = token.isStructStart()
+                                        ? parser.getParsingContext().getParent()
+                                        : parser.getParsingContext();
+            extraction.read(parser, root);
+            // skip what was left unread when every value was found early
+            while (toEndOfValue && parser.getParsingContext() != outside && parser.nextToken() != null)
+                parser.skipChildren();
+        }
+        return new Result(extraction.values);
+    }
+
+    /**
+     * The values of one extract(), in the order the pointers were given.
+     */
+    public final class Result {
+        private final JsonNode[] values;
+
+        private Result(JsonNode[] values) {
+            this.values = values;
+        }
+
+        /**
+         * The value at the pointer, or null when it isn't in the document.
+         */
+        public JsonNode get(String pointer) {
+            Integer slot = slotOfPointer.get(pointer);
+            if (slot == null)
+                throw new IllegalArgumentException("Not in the projection: " + pointer);
+            return values[slot];
+        }
+
+        public JsonNode get(int index) {
+            return values[index];
+        }
+
+        public boolean has(String pointer) {
+            return get(pointer) != null;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("{");
+            for (Map.Entry<String, Integer> entry : slotOfPointer.entrySet()) {
+                if (builder.length() > 1)
+                    builder.append(", ");
+                builder.append(entry.getKey()).append('=').append(values[entry.getValue()]);
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    /**
+     * A position in the projection tree: the fields and elements below it that lead to a pointer,
+     * and the slot of the pointer that ends here, if one does.
+     */
+    private static final class Step {
+        private Map<String, Step> fields;
+        private Step[] elements;
+        private int slot = -1;
+        private int[] descendantSlots;                  // pointers below, when this one is read whole
+        private JsonPointer[] descendantPointers;
+
+        void add(JsonPointer pointer, int slot) {
+            if (pointer.matches()) {
+                this.slot = slot;
+                return;
+            }
+            if (fields == null)
+                fields = new HashMap<>();
+            Step next = fields.computeIfAbsent(pointer.getMatchingProperty(), name -> new Step());
+            int index = pointer.getMatchingIndex();
+            if (index >= 0) {
+                if (elements == null || elements.length <= index)
+                    elements = Arrays.copyOf(elements == null ? new Step[0] : elements, index + 1);
+                elements[index] = next;
+            }
+            next.add(pointer.tail(), slot);
+        }
+
+        // adds the slots at and below this step, and their pointers, to the lists; a step with a
+        // slot of its own also keeps the ones below it relative to itself
+        void collect(JsonPointer here, List<Integer> slots, List<JsonPointer> pointers) {
+            int first = slots.size();
+            if (fields != null) {
+                for (Map.Entry<String, Step> field : fields.entrySet()) {
+                    JsonPointer child = JsonPointer.compile(here + "/" + escape(field.getKey()));
+                    field.getValue().collect(child, slots, pointers);
+                }
+            }
+            if (slot >= 0 && slots.size() > first) {
+                int depth = depth(here);
+                descendantSlots = new int[slots.size() - first];
+                descendantPointers = new JsonPointer[slots.size() - first];
+                for (int i = first; i < slots.size(); ++i) {
+                    descendantSlots[i - first] = slots.get(i);
+                    descendantPointers[i - first] = relativeTo(pointers.get(i), depth);
+                }
+            }
+            if (slot >= 0) {
+                slots.add(slot);
+                pointers.add(here);
+            }
+        }
+
+        private static String escape(String name) {
+            return name.replace("~", "~0").replace("/", "~1");
+        }
+
+        private static int depth(JsonPointer pointer) {
+            int depth = 0;
+            for (JsonPointer p = pointer; !p.matches(); p = p.tail())
+                ++depth;
+            return depth;
+        }
+
+        private static JsonPointer relativeTo(JsonPointer pointer, int depth) {
+            for (int i = 0; i < depth; ++i)
+                pointer = pointer.tail();
+            return pointer;
+        }
+    }
+
+    /**
+     * The state of one extract().
+     */
+    private final class Extraction {
+        final JsonNode[] values;
+        private int remaining;
+
+        Extraction(JsonNode[] values) {
+            this.values = values;
+            this.remaining = values.length;
+        }
+
+        // the parser is on the first token of the value, and is left on its last
+        void read(JsonParser parser, Step step) throws IOException {
+            if (step.slot >= 0) {
+                JsonNode value = mapper.readTree(parser);
+                found(step.slot, value);
+                if (step.descendantSlots != null) {
+                    for (int i = 0; i < step.descendantSlots.length; ++i) {
+                        JsonNode descendant = value.at(step.descendantPointers[i]);
+                        found(step.descendantSlots[i], descendant.isMissingNode() ? null : descendant);
+                    }
+                }
+                return;
+            }
+
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.START_OBJECT && step.fields != null) {
+                while (remaining > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Step next = step.fields.get(parser.getCurrentName());
+                    parser.nextToken();
+                    if (next == null)
+                        parser.skipChildren();
+                    else
+                        read(parser, next);
+                }
+            }
+            else if (token == JsonToken.START_ARRAY && step.elements != null) {
+                int index = 0;
+                while (remaining > 0 && index < step.elements.length && parser.nextToken() != JsonToken.END_ARRAY) {
+                    Step next = step.elements[index++];
+                    if (next == null)
+                        parser.skipChildren();
+                    else
+                        read(parser, next);
+                }
+                if (remaining > 0 && index == step.elements.length)
+                    while (parser.nextToken() != JsonToken.END_ARRAY)
+                        parser.skipChildren();
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+
+        private void found(int slot, JsonNode value) {
+            values[slot] = value;
+            --remaining;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only json document that only parses the parts of the input that are asked for:
+ *
+ *      LazyJsonDocument document = LazyJsonDocument.parse(mapper, input);
+ *      String city = document.root().get("address").get("city").asText();
+ *      String lat = document.root().findValue("lat").asText();
+ *
+ * readTree() turns every value in the document into a JsonNode before returning, which is a waste
+ * when two fields out of thousands are wanted. Here the input is kept as bytes and a Node is only a
+ * position in them. The first get() on an object scans its fields with a JsonParser, stepping over
+ * nested objects and arrays with skipChildren(), and remembers where each value starts. The scan
+ * stops at the field being looked for and carries on from there next time, so a field near the
+ * start of a wide object is found without reading the rest of it. Nodes are created for the values
+ * that are asked for and nothing else, and a value is only converted (asText(), asInt(), ... or
+ * toJsonNode() for the whole subtree as ordinary JsonNodes) when it is read.
+ *
+ * findValue() works like JsonNode.findValue(): the first value with the field name anywhere in or
+ * below the node, in document order. The first findValue() on a node scans that node's value once,
+ * and nothing outside it, recording where the first value of each field name starts instead of
+ * building JsonNodes, so every findValue() on the node after that is a map lookup.
+ *
+ * The document is not thread safe.
+ */
+public final class LazyJsonDocument {
+
+    private final ObjectMapper mapper;
+    private final byte[] json;
+    private final Node root;
+
+    private LazyJsonDocument(ObjectMapper mapper, byte[] json) throws IOException {
+        this.mapper = mapper;
+        this.json = json;
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == null)
+                throw new IOException("No json content");
+            root = new Node((int) parser.getTokenLocation().getByteOffset(), json.length, token);
+        }
+    }
+
+    public static LazyJsonDocument parse(ObjectMapper mapper, byte[] json) throws IOException {
+        return new LazyJsonDocument(mapper, json);
+    }
+
+    public static LazyJsonDocument parse(ObjectMapper mapper, String json) throws IOException {
+        return new LazyJsonDocument(mapper, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LazyJsonDocument parse(ObjectMapper mapper, InputStream input) throws IOException {
+        return new LazyJsonDocument(mapper, input.readAllBytes());
+    }
+
+    public Node root() {
+        return root;
+    }
+
+    /**
+     * A value in the document. Objects and arrays index their children the first time they are
+     * asked for one.
+     */
+    public final class Node {
+        private final int start;
+        private final int limit;           // how far a parser reading this value may read
+        private final JsonToken token;
+
+        // objects and arrays only, filled in as far as the children have been scanned
+        private List<String> names;
+        private Map<String, Integer> indexOfName;
+        private int[] childStarts;
+        private int[] childLimits;
+        private JsonToken[] childTokens;
+        private Node[] children;
+        private int childCount;
+        private Cursor cursor;             // where the scan stopped, null once fully scanned
+
+        // containers only, the first value of each field name in or below this one, once looked for
+        private Map<String, Found> firstValues;
+
+        private JsonNode value;            // the converted value once read
+
+        Node(int start, int limit, JsonToken token) {
+            this.start = start;
+            this.limit = limit;
+            this.token = token;
+        }
+
+        public boolean isObject() { return token == JsonToken.START_OBJECT; }
+        public boolean isArray() { return token == JsonToken.START_ARRAY; }
+        public boolean isContainerNode() { return isObject() || isArray(); }
+        public boolean isValueNode() { return !isContainerNode(); }
+        public boolean isNull() { return token == JsonToken.VALUE_NULL; }
+        public boolean isTextual() { return token == JsonToken.VALUE_STRING; }
+        public boolean isNumber() { return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT; }
+
+        /**
+         * The value of the field, or null when this isn't an object or has no such field.
+         */
+        public Node get(String fieldName) {
+            if (!isObject())
+                return null;
+            Integer index = indexOfName == null ? null : indexOfName.get(fieldName);
+            while (index == null && scanNext())
+                if (names.get(childCount - 1).equals(fieldName))
+                    index = childCount - 1;
+            return index == null ? null : child(index);
+        }
+
+        /**
+         * The element at the index, or null when this isn't an array or is too short.
+         */
+        public Node get(int index) {
+            if (!isArray() || index < 0)
+                return null;
+            while (childCount <= index && scanNext())
+                ;
+            return index < childCount ? child(index) : null;
+        }
+
+        public boolean has(String fieldName) {
+            return get(fieldName) != null;
+        }
+
+        public int size() {
+            if (!isContainerNode())
+                return 0;
+            scanAll();
+            return childCount;
+        }
+
+        public Iterator<String> fieldNames() {
+            if (!isObject())
+                return Collections.emptyIterator();
+            scanAll();
+            return names.iterator();
+        }
+
+        public Node findValue(String fieldName) {
+            if (!isContainerNode())
+                return null;
+            if (firstValues == null)
+                firstValues = indexFirstValues();
+            Found found = firstValues.get(fieldName);
+            if (found == null)
+                return null;
+            if (found.node == null)
+                found.node = new Node(found.start, found.limit, found.token);
+            return found.node;
+        }
+
+        public String asText() { return toJsonNode().asText(); }
+        public int asInt() { return toJsonNode().asInt(); }
+        public long asLong() { return toJsonNode().asLong(); }
+        public double asDouble() { return toJsonNode().asDouble(); }
+        public boolean asBoolean() { return toJsonNode().asBoolean(); }
+
+        /**
+         * This value, and everything below it, as ordinary JsonNodes.
+         */
+        public JsonNode toJsonNode() {
+            if (value == null) {
+                try (Cursor cursor = new Cursor(start, limit)) {
+                    value = mapper.readTree(cursor.parser);
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return toJsonNode().toString();
+        }
+
+        private Node child(int index) {
+            if (children[index] == null)
+                children[index] = new Node(childStarts[index], childLimits[index], childTokens[index]);
+            return children[index];
+        }
+
+        private void scanAll() {
+            while (scanNext())
+                ;
+        }
+
+        // reads one more child, false once they have all been read
+        private boolean scanNext() {
+            try {
+                if (names == null && childStarts == null)
+                    startScan();
+                if (cursor == null)
+                    return false;
+
+                JsonParser parser = cursor.parser;
+                JsonToken next = parser.nextToken();
+                if (next == JsonToken.END_OBJECT || next == JsonToken.END_ARRAY) {
+                    cursor.close();
+                    cursor = null;
+                    return false;
+                }
+                if (next == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    indexOfName.putIfAbsent(name, childCount);
+                    names.add(name);
+                    next = parser.nextToken();
+                }
+                add(cursor.offset(parser.getTokenLocation().getByteOffset()), cursor.limit(next), next);
+                parser.skipChildren();
+                return true;
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        // one scan of this value up to its closing } or ]: where the first value of every field name starts
+        private Map<String, Found> indexFirstValues() {
+            Map<String, Found> index = new HashMap<>();
+            try (Cursor cursor = new Cursor(start, limit)) {
+                JsonParser parser = cursor.parser;
+                int depth = 1;
+                while (depth > 0) {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        token = parser.nextToken();
+                        if (!index.containsKey(name))
+                            index.put(name, new Found(cursor.offset(parser.getTokenLocation().getByteOffset()),
+                                                      cursor.limit(token), token));
+                    }
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+                        ++depth;
+                    else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY)
+                        --depth;
+                }
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return index;
+        }
+
+        private void startScan() throws IOException {
+            if (isObject()) {
+                names = new ArrayList<>();
+                indexOfName = new HashMap<>();
+            }
+            childStarts = new int[8];
+            childLimits = new int[8];
+            childTokens = new JsonToken[8];
+            children = new Node[8];
+            cursor = new Cursor(start, limit);
+        }
+
+        private void add(int childStart, int childLimit, JsonToken childToken) {
+            if (childCount == childStarts.length) {
+                childStarts = Arrays.copyOf(childStarts, childCount * 2);
+                childLimits = Arrays.copyOf(childLimits, childCount * 2);
+                childTokens = Arrays.copyOf(childTokens, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            childStarts[childCount] = childStart;
+            childLimits[childCount] = childLimit;
+            childTokens[childCount] = childToken;
+            childCount++;
+        }
+    }
+
+    /**
+     * A parser started at a position in the document and moved onto the token there. Older
+     * versions of jackson-core report byte offsets from the start of the array and newer ones from
+     * where the parser started, so offsets are worked out from the first token, which is known to
+     * be at the position the parser was started at.
+     *
+     * A parser started part way through the document takes the value there for a root level value,
+     * and insists that a number at the root is followed by white space rather than a comma. So the
+     * end of each number is recorded when it is scanned and a parser reading it stops there.
+     */
+    private final class Cursor implements AutoCloseable {
+        final JsonParser parser;
+        private final long shift;
+
+        Cursor(int offset, int limit) throws IOException {
+            parser = mapper.getFactory().createParser(json, offset, limit - offset);
+            parser.nextToken();
+            shift = offset - parser.getTokenLocation().getByteOffset();
+        }
+
+        int offset(long reported) {
+            return (int) (reported + shift);
+        }
+
+        // the limit for the value the parser has just moved onto
+        int limit(JsonToken token) {
+            return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                   ? offset(parser.getCurrentLocation().getByteOffset())
+                   : json.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    /**
+     * Where the first value of a field name is, and its Node once one has been asked for.
+     */
+    private final class Found {
+        final int start;
+        final int limit;
+        final JsonToken token;
+        Node node;
+
+        Found(int start, int limit, JsonToken token) {
+            this.start = start;
+            this.limit = limit;
+            this.token = token;
+        }
+    }
+}
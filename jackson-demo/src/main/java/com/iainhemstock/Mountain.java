@@ -2,6 +2,7 @@ package com.iainhemstock;
 
 import lombok.*;
 
+@GenerateJsonCodec
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
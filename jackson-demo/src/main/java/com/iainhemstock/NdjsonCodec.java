@@ -0,0 +1,266 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads and writes newline delimited json (NDJSON), one json object per line:
+ *
+ *      {"userId":1,"id":1,"title":"delectus aut autem","completed":false}
+ *      {"userId":1,"id":2,"title":"quis ut nam facilis","completed":false}
+ *
+ * The ObjectReader and ObjectWriter for the type are created once by the codec and used for every
+ * line, so nothing is looked up or built per line. Reading hands back the objects one at a time as
+ * the input is parsed (see JsonArrayStream). Writing puts each object on its own line through a
+ * single JsonGenerator and only flushes when asked to or when closed.
+ *
+ * readParallel() reads the input in chunks of about chunkBytes, cuts each chunk at its last newline
+ * so no line is split between two chunks, and decodes the chunks on several threads. The decoded
+ * chunks are handed over in the order they were read, so the objects come out in the order of the
+ * lines. At most two chunks per thread are read ahead of the consumer, which keeps memory use
+ * bounded however large the input is. Line numbers in the errors of a parallel read count from the
+ * start of the chunk. The decoding threads finish once the last chunk has been decoded, closing the
+ * stream stops them sooner.
+ */
+public class NdjsonCodec<T> {
+
+    public static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private int chunkBytes = DEFAULT_CHUNK_BYTES;
+
+    public NdjsonCodec(ObjectMapper mapper, Class<T> type) {
+        this.reader = mapper.readerFor(type);
+        // one line per object, and no flushing after every line
+        this.writer = mapper.writerFor(type)
+                            .without(SerializationFeature.INDENT_OUTPUT)
+                            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public NdjsonCodec<T> chunkBytes(int chunkBytes) {
+        if (chunkBytes < 1)
+            throw new IllegalArgumentException("Chunk size must be at least 1 byte: " + chunkBytes);
+        this.chunkBytes = chunkBytes;
+        return this;
+    }
+
+    /**
+     * Blank lines are skipped. Closing the iterator closes the input.
+     */
+    public MappingIterator<T> iterator(InputStream input) throws IOException {
+        return reader.readValues(input);
+    }
+
+    public Stream<T> read(InputStream input) throws IOException {
+        MappingIterator<T> lines = iterator(input);
+        return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(lines, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> close(lines));
+    }
+
+    public Stream<T> readParallel(InputStream input, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1: " + threads);
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ndjson-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ChunkIterator chunks = new ChunkIterator(input, decoders, threads * 2);
+        return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    decoders.shutdownNow();
+                    close(input);
+                });
+    }
+
+    public LineWriter open(OutputStream output) throws IOException {
+        return new LineWriter(output);
+    }
+
+    /**
+     * Writes every value, one per line, and flushes the output. The output is left open.
+     */
+    public void write(OutputStream output, Iterable<? extends T> values) throws IOException {
+        LineWriter lines = new LineWriter(output);
+        for (T value : values)
+            lines.write(value);
+        lines.flush();
+    }
+
+    /**
+     * Writes objects to the output one per line. Closing the LineWriter closes the output.
+     */
+    public class LineWriter implements Flushable, Closeable {
+        private final JsonGenerator generator;
+
+        LineWriter(OutputStream output) throws IOException {
+            generator = writer.getFactory().createGenerator(output);
+            generator.setRootValueSeparator(null); // lines are ended by write(), not separated by a space
+        }
+
+        public void write(T value) throws IOException {
+            writer.writeValue(generator, value);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+
+    private List<T> decode(byte[] chunk, int length) throws IOException {
+        try (MappingIterator<T> lines = reader.readValues(chunk, 0, length)) {
+            return lines.readAll();
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads the input a chunk at a time, sends each chunk off to be decoded and hands over the
+     * decoded objects chunk by chunk in the order the chunks were read.
+     */
+    private final class ChunkIterator implements Iterator<T> {
+        private final InputStream input;
+        private final ExecutorService decoders;
+        private final int maxInFlight;
+        private final Deque<Future<List<T>>> inFlight = new ArrayDeque<>();
+        private Iterator<T> current = Collections.emptyIterator();
+        // the start of a line that didn't fit in the previous chunk
+        private byte[] carry = new byte[0];
+        private boolean endOfInput;
+
+        ChunkIterator(InputStream input, ExecutorService decoders, int maxInFlight) {
+            this.input = input;
+            this.decoders = decoders;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                readAhead();
+                if (inFlight.isEmpty())
+                    return false;
+                current = take(inFlight.removeFirst()).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return current.next();
+        }
+
+        private void readAhead() {
+            try {
+                while (inFlight.size() < maxInFlight && !endOfInput) {
+                    byte[] chunk = nextChunk();
+                    int length = chunk.length;
+                    if (length > 0)
+                        inFlight.addLast(decoders.submit(() -> decode(chunk, length)));
+                }
+                // nothing more to decode, the threads exit after the chunks in flight even if the
+                // stream is never closed
+                if (endOfInput)
+                    decoders.shutdown();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        // whole lines only, unless it is the end of the input
+        private byte[] nextChunk() throws IOException {
+            byte[] buffer = Arrays.copyOf(carry, Math.max(chunkBytes, carry.length * 2));
+            int length = carry.length;
+            while (true) {
+                int read = input.readNBytes(buffer, length, buffer.length - length);
+                length += read;
+                if (length < buffer.length) {
+                    // readNBytes only comes back short at the end of the input
+                    endOfInput = true;
+                    carry = new byte[0];
+                    return Arrays.copyOf(buffer, length);
+                }
+
+                int end = lastNewline(buffer, carry.length, length);
+                if (end >= 0) {
+                    carry = Arrays.copyOfRange(buffer, end + 1, length);
+                    return end + 1 == length ? buffer : Arrays.copyOf(buffer, end + 1);
+                }
+                // a line longer than the buffer, keep reading until it ends
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        private int lastNewline(byte[] buffer, int from, int to) {
+            for (int i = to - 1; i >= from; --i)
+                if (buffer[i] == '\n')
+                    return i;
+            return -1;
+        }
+
+        private List<T> take(Future<List<T>> chunk) {
+            try {
+                return chunk.get();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a chunk to be decoded", ex);
+            }
+            catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException)
+                    throw new UncheckedIOException((IOException) cause);
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A json array of numbers kept in an int[], long[] or double[] instead of one IntNode, LongNode or
+ * DoubleNode per element:
+ *
+ *      NumericArrayNode readings = new NumericArrayNode(1_000_000);
+ *      for (...)
+ *          readings.add(sensor.read());
+ *      objectNode.set("readings", readings);
+ *
+ *      mapper.registerModule(NumericArrayNode.module());
+ *      NumericArrayNode readings = mapper.readValue(json, NumericArrayNode.class);
+ *      double first = readings.getDouble(0);
+ *
+ * An ArrayNode holds a reference to a node object for each number, so a million doubles in an
+ * ArrayNode take about 29 MB of heap against 8 MB as a double[], and every add() allocates. Here
+ * add() grows the array like an ArrayList does, serialize() writes it with JsonGenerator.writeArray()
+ * and the deserializer reads the numbers straight into it. The deserializer has to be registered
+ * with module(), because jackson picks the deserializer of a JsonNode type itself and doesn't look
+ * for a @JsonDeserialize annotation on it.
+ *
+ * The array starts out holding ints and is widened when a number doesn't fit: to longs for a long,
+ * to doubles for a fraction. Longs beyond 2^53 lose precision once the array holds doubles.
+ *
+ * It reads like any other array node: isArray(), size(), get(index), path(index), at(pointer) and
+ * elements() work as they do on an ArrayNode, with get() creating the node for an element when it's
+ * asked for. getInt(), getLong() and getDouble() read an element without one. It can't hold anything
+ * other than numbers, so there's no set() or insert(); toArrayNode() makes an ordinary ArrayNode for
+ * that, and for comparing with one, since a NumericArrayNode is only equal to another
+ * NumericArrayNode.
+ */
+public final class NumericArrayNode extends BaseJsonNode {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private JsonParser.NumberType elementType = JsonParser.NumberType.INT;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private int size;
+
+    public NumericArrayNode() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NumericArrayNode(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity can't be negative: " + capacity);
+        ints = new int[capacity];
+    }
+
+    public static NumericArrayNode of(int... values) {
+        NumericArrayNode node = new NumericArrayNode(0);
+        node.ints = values.clone();
+        node.size = values.length;
+        return node;
+    }
+
+    public static NumericArrayNode of(long... values) {
+        NumericArrayNode node = new NumericArrayNode(0);
+        node.elementType = JsonParser.NumberType.LONG;
+        node.ints = null;
+        node.longs = values.clone();
+        node.size = values.length;
+        return node;
+    }
+
+    public static NumericArrayNode of(double... values) {
+        NumericArrayNode node = new NumericArrayNode(0);
+        node.elementType = JsonParser.NumberType.DOUBLE;
+        node.ints = null;
+        node.doubles = values.clone();
+        node.size = values.length;
+        return node;
+    }
+
+    /**
+     * INT, LONG or DOUBLE.
+     */
+    public JsonParser.NumberType getElementType() {
+        return elementType;
+    }
+
+    //==============================================================================================
+    // Adding values.
+    //==============================================================================================
+    public NumericArrayNode add(int value) {
+        switch (elementType) {
+            case INT:
+                if (size == ints.length)
+                    ints = Arrays.copyOf(ints, grow(size));
+                ints[size++] = value;
+                return this;
+            case LONG:
+                return add((long) value);
+            default:
+                return add((double) value);
+        }
+    }
+
+    public NumericArrayNode add(long value) {
+        if (elementType == JsonParser.NumberType.INT) {
+            if (value == (int) value)
+                return add((int) value);
+            widenToLongs();
+        }
+        if (elementType == JsonParser.NumberType.DOUBLE)
+            return add((double) value);
+        if (size == longs.length)
+            longs = Arrays.copyOf(longs, grow(size));
+        longs[size++] = value;
+        return this;
+    }
+
+    public NumericArrayNode add(double value) {
+        if (elementType != JsonParser.NumberType.DOUBLE)
+            widenToDoubles();
+        if (size == doubles.length)
+            doubles = Arrays.copyOf(doubles, grow(size));
+        doubles[size++] = value;
+        return this;
+    }
+
+    private static int grow(int size) {
+        return Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+    }
+
+    private void widenToLongs() {
+        longs = new long[Math.max(ints.length, DEFAULT_CAPACITY)];
+        for (int i = 0; i < size; ++i)
+            longs[i] = ints[i];
+        ints = null;
+        elementType = JsonParser.NumberType.LONG;
+    }
+
+    private void widenToDoubles() {
+        int capacity = Math.max(elementType == JsonParser.NumberType.INT ? ints.length : longs.length, DEFAULT_CAPACITY);
+        doubles = new double[capacity];
+        for (int i = 0; i < size; ++i)
+            doubles[i] = elementType == JsonParser.NumberType.INT ? ints[i] : longs[i];
+        ints = null;
+        longs = null;
+        elementType = JsonParser.NumberType.DOUBLE;
+    }
+
+    /**
+     * Shrinks the array to the number of values in it, which add() leaves up to half as big again.
+     */
+    public NumericArrayNode trimToSize() {
+        switch (elementType) {
+            case INT: ints = Arrays.copyOf(ints, size); break;
+            case LONG: longs = Arrays.copyOf(longs, size); break;
+            default: doubles = Arrays.copyOf(doubles, size); break;
+        }
+        return this;
+    }
+
+    public NumericArrayNode removeAll() {
+        size = 0;
+        return this;
+    }
+
+    //==============================================================================================
+    // Reading values.
+    //==============================================================================================
+    public int getInt(int index) {
+        checkIndex(index);
+        switch (elementType) {
+            case INT: return ints[index];
+            case LONG: return (int) longs[index];
+            default: return (int) doubles[index];
+        }
+    }
+
+    public long getLong(int index) {
+        checkIndex(index);
+        switch (elementType) {
+            case INT: return ints[index];
+            case LONG: return longs[index];
+            default: return (long) doubles[index];
+        }
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        switch (elementType) {
+            case INT: return ints[index];
+            case LONG: return longs[index];
+            default: return doubles[index];
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+    }
+
+    public double[] toDoubleArray() {
+        double[] values = new double[size];
+        for (int i = 0; i < size; ++i)
+            values[i] = getDouble(i);
+        return values;
+    }
+
+    public ArrayNode toArrayNode() {
+        ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode(size);
+        for (int i = 0; i < size; ++i)
+            arrayNode.add(get(i));
+        return arrayNode;
+    }
+
+    //==============================================================================================
+    // JsonNode.
+    //==============================================================================================
+    @Override
+    public JsonNodeType getNodeType() {
+        return JsonNodeType.ARRAY;
+    }
+
+    @Override
+    public boolean isArray() {
+        return true;
+    }
+
+    @Override
+    public JsonToken asToken() {
+        return JsonToken.START_ARRAY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public JsonNode get(int index) {
+        if (index < 0 || index >= size)
+            return null;
+        switch (elementType) {
+            case INT: return IntNode.valueOf(ints[index]);
+            case LONG: return LongNode.valueOf(longs[index]);
+            default: return DoubleNode.valueOf(doubles[index]);
+        }
+    }
+
+    @Override
+    public JsonNode get(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public JsonNode path(int index) {
+        JsonNode node = get(index);
+        return node == null ? MissingNode.getInstance() : node;
+    }
+
+    @Override
+    public JsonNode path(String fieldName) {
+        return MissingNode.getInstance();
+    }
+
+    @Override
+    protected JsonNode _at(JsonPointer pointer) {
+        return get(pointer.getMatchingIndex());
+    }
+
+    @Override
+    public Iterator<JsonNode> elements() {
+        return new Iterator<JsonNode>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public JsonNode next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    @Override
+    public String asText() {
+        return "";
+    }
+
+    // no objects inside, so nothing to find
+    @Override
+    public JsonNode findValue(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public JsonNode findParent(String fieldName) {
+        return null;
+    }
+
+    @Override
+    public List<JsonNode> findValues(String fieldName, List<JsonNode> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    public List<String> findValuesAsText(String fieldName, List<String> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    public List<JsonNode> findParents(String fieldName, List<JsonNode> foundSoFar) {
+        return foundSoFar;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public NumericArrayNode deepCopy() {
+        switch (elementType) {
+            case INT: return of(Arrays.copyOf(ints, size));
+            case LONG: return of(Arrays.copyOf(longs, size));
+            default: return of(Arrays.copyOf(doubles, size));
+        }
+    }
+
+    //==============================================================================================
+    // Serialization.
+    //==============================================================================================
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        switch (elementType) {
+            case INT: generator.writeArray(ints, 0, size); break;
+            case LONG: generator.writeArray(longs, 0, size); break;
+            default: generator.writeArray(doubles, 0, size); break;
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        WritableTypeId typeId = typeSerializer.writeTypePrefix(generator,
+                typeSerializer.typeId(this, JsonToken.START_ARRAY));
+        for (int i = 0; i < size; ++i) {
+            switch (elementType) {
+                case INT: generator.writeNumber(ints[i]); break;
+                case LONG: generator.writeNumber(longs[i]); break;
+                default: generator.writeNumber(doubles[i]); break;
+            }
+        }
+        typeSerializer.writeTypeSuffix(generator, typeId);
+    }
+
+    /**
+     * A module with the Deserializer, for ObjectMapper.registerModule().
+     */
+    public static SimpleModule module() {
+        return new SimpleModule(NumericArrayNode.class.getSimpleName())
+                .addDeserializer(NumericArrayNode.class, new Deserializer());
+    }
+
+    /**
+     * Reads a json array of numbers into a NumericArrayNode without creating a node for each one.
+     */
+    public static class Deserializer extends StdDeserializer<NumericArrayNode> {
+
+        public Deserializer() {
+            super(NumericArrayNode.class);
+        }
+
+        @Override
+        public NumericArrayNode deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.isExpectedStartArrayToken())
+                return (NumericArrayNode) context.handleUnexpectedToken(NumericArrayNode.class, parser);
+
+            NumericArrayNode node = new NumericArrayNode();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    switch (parser.getNumberType()) {
+                        case INT: node.add(parser.getIntValue()); break;
+                        case LONG: node.add(parser.getLongValue()); break;
+                        default: node.add(parser.getDoubleValue()); break;
+                    }
+                }
+                else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    node.add(parser.getDoubleValue());
+                }
+                else {
+                    return (NumericArrayNode) context.handleUnexpectedToken(NumericArrayNode.class, token, parser,
+                            "Expected a number in a NumericArrayNode");
+                }
+            }
+            return node.trimToSize();
+        }
+    }
+
+    //==============================================================================================
+    // Object.
+    //==============================================================================================
+
+    /**
+     * Equal to a NumericArrayNode with the same elements of the same type, as ArrayNodes of IntNodes
+     * and of LongNodes aren't equal. Use toArrayNode() to compare with an ArrayNode, which is only
+     * ever equal to another ArrayNode.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof NumericArrayNode))
+            return false;
+        NumericArrayNode other = (NumericArrayNode) o;
+        if (other.size != size)
+            return false;
+        if (other.elementType != elementType)
+            return size == 0;
+        switch (elementType) {
+            case INT: return Arrays.equals(ints, 0, size, other.ints, 0, size);
+            case LONG: return Arrays.equals(longs, 0, size, other.longs, 0, size);
+            default: return Arrays.equals(doubles, 0, size, other.doubles, 0, size);
+        }
+    }
+
+    // the same as the hash code of a list of the element nodes
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; ++i) {
+            switch (elementType) {
+                case INT: hash = 31 * hash + ints[i]; break;
+                case LONG: hash = 31 * hash + Long.hashCode(longs[i]); break;
+                default: hash = 31 * hash + Double.hashCode(doubles[i]); break;
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(size * 4 + 2).append('[');
+        for (int i = 0; i < size; ++i) {
+            if (i > 0)
+                builder.append(',');
+            switch (elementType) {
+                case INT: builder.append(ints[i]); break;
+                case LONG: builder.append(longs[i]); break;
+                default: builder.append(doubles[i]); break;
+            }
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,213 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Serializes values with an ObjectWriter into buffers that are reused from one call to the next
+ * instead of a new byte[] or String each time:
+ *
+ *      PooledJsonWriter writer = new PooledJsonWriter(JsonCodecs.shared().writer(User.class));
+ *
+ *      ByteBuffer json = writer.write(user);           // this thread's buffer, until its next write
+ *      writer.write(user, responseBuffer);              // into the caller's ByteBuffer or byte[]
+ *      writer.write(user, socketChannel);               // straight to a blocking channel
+ *
+ * writeValueAsString() creates a JsonGenerator, a buffer to write into that grows as it fills, and
+ * then a String and its array for the result, all of which are garbage as soon as the response is
+ * sent. Here each thread gets a JsonGenerator and a buffer the first time it writes and keeps them:
+ * the generator is left open between values, with no separator written between them, and the
+ * buffer is reset instead of being thrown away. A value written into the caller's heap ByteBuffer
+ * or byte[] goes straight into it. What is left per call is the SerializerProvider that ObjectWriter
+ * creates for every value it writes, under a hundred bytes whatever the size of the value, against
+ * about a kilobyte for writeValueAsString() of a User.
+ *
+ * A thread's buffer grows to fit the largest value it has written and is dropped back to
+ * DEFAULT_INITIAL_CAPACITY when it grows beyond maxRetainedBytes, so one huge response doesn't
+ * leave every thread holding that much memory. If a write fails part way through, the thread's
+ * generator is thrown away, because it would still be in the middle of the value.
+ *
+ * Create one PooledJsonWriter per type and keep it, like the ObjectWriter it wraps; it can be
+ * shared by every thread. It only writes json: the binary formats carry state from one value to
+ * the next in the generator.
+ */
+public final class PooledJsonWriter {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 8 * 1024;
+    public static final int DEFAULT_MAX_RETAINED_BYTES = 1024 * 1024;
+
+    private final ObjectWriter writer;
+    private final ThreadLocal<Sink> sinks = new ThreadLocal<>();
+    private volatile int maxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES;
+
+    public PooledJsonWriter(ObjectWriter writer) {
+        // a Smile generator writes its header once and refers back to names in earlier values
+        if (!JsonFactory.FORMAT_NAME_JSON.equals(writer.getFactory().getFormatName()))
+            throw new IllegalArgumentException("Only json can be written with a reused generator, not "
+                                               + writer.getFactory().getFormatName());
+        this.writer = writer;
+    }
+
+    public PooledJsonWriter maxRetainedBytes(int maxRetainedBytes) {
+        if (maxRetainedBytes < DEFAULT_INITIAL_CAPACITY)
+            throw new IllegalArgumentException(
+                    "Max retained bytes must be at least " + DEFAULT_INITIAL_CAPACITY + ": " + maxRetainedBytes);
+        this.maxRetainedBytes = maxRetainedBytes;
+        return this;
+    }
+
+    /**
+     * Writes the value into this thread's buffer. The ByteBuffer returned is positioned at the
+     * start of the json and limited to its end, and is only valid until this thread writes again.
+     */
+    public ByteBuffer write(Object value) throws IOException {
+        Sink sink = sink();
+        sink.target(null, 0, 0);
+        serialize(sink, value);
+        return sink.view();
+    }
+
+    /**
+     * Writes the value into the array from offset, and returns how many bytes were written.
+     * Throws BufferOverflowException when it doesn't fit in the rest of the array.
+     */
+    public int write(Object value, byte[] target, int offset) throws IOException {
+        if (offset < 0 || offset > target.length)
+            throw new IndexOutOfBoundsException("Offset " + offset + " out of bounds for length " + target.length);
+        Sink sink = sink();
+        sink.target(target, offset, target.length);
+        serialize(sink, value);
+        return sink.count - offset;
+    }
+
+    /**
+     * Writes the value into the buffer from its position, moving the position past it. Throws
+     * BufferOverflowException when it doesn't fit in the buffer's remaining bytes, leaving the
+     * position where it was.
+     */
+    public int write(Object value, ByteBuffer target) throws IOException {
+        if (target.isReadOnly())
+            throw new IllegalArgumentException("Read only buffer");
+        if (target.hasArray()) {
+            int start = target.arrayOffset() + target.position();
+            Sink sink = sink();
+            sink.target(target.array(), start, target.arrayOffset() + target.limit());
+            serialize(sink, value);
+            int length = sink.count - start;
+            target.position(target.position() + length);
+            return length;
+        }
+        ByteBuffer json = write(value);
+        int length = json.remaining();
+        target.put(json);
+        return length;
+    }
+
+    /**
+     * Writes the value to the channel, and returns how many bytes were written. The channel has to
+     * be in blocking mode, a non-blocking one throws IllegalBlockingModeException rather than being
+     * spun on until it takes everything. For those use write(value) and write the buffer it returns
+     * as the channel becomes ready, before this thread writes again.
+     */
+    public int write(Object value, WritableByteChannel channel) throws IOException {
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking())
+            throw new IllegalBlockingModeException();
+        ByteBuffer json = write(value);
+        int length = json.remaining();
+        while (json.hasRemaining())
+            channel.write(json);
+        return length;
+    }
+
+    private Sink sink() throws IOException {
+        Sink sink = sinks.get();
+        if (sink == null || sink.buffer.length > maxRetainedBytes) {
+            sink = new Sink();
+            sinks.set(sink);
+        }
+        return sink;
+    }
+
+    private void serialize(Sink sink, Object value) throws IOException {
+        try {
+            writer.writeValue(sink.generator, value);
+            sink.generator.flush();
+        }
+        catch (IOException | RuntimeException ex) {
+            sinks.remove();
+            throw ex;
+        }
+        finally {
+            sink.target = null;
+        }
+    }
+
+    /**
+     * A thread's generator and the bytes it writes to: the thread's own buffer, which grows, or a
+     * caller's array, which doesn't.
+     */
+    private final class Sink extends OutputStream {
+        final JsonGenerator generator;
+        byte[] buffer = new byte[DEFAULT_INITIAL_CAPACITY];
+        private ByteBuffer view = ByteBuffer.wrap(buffer);
+
+        byte[] target;
+        int count;
+        private int limit;
+
+        Sink() throws IOException {
+            generator = writer.getFactory().createGenerator(this, JsonEncoding.UTF8);
+            generator.setRootValueSeparator(null);
+        }
+
+        // a null target means this thread's own buffer
+        void target(byte[] target, int start, int limit) {
+            this.target = target;
+            this.count = target == null ? 0 : start;
+            this.limit = target == null ? buffer.length : limit;
+        }
+
+        ByteBuffer view() {
+            view.limit(count).position(0);
+            return view;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureRoom(1);
+            array()[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureRoom(length);
+            System.arraycopy(bytes, offset, array(), count, length);
+            count += length;
+        }
+
+        private byte[] array() {
+            return target == null ? buffer : target;
+        }
+
+        private void ensureRoom(int length) {
+            if (limit - count >= length)
+                return;
+            if (target != null)
+                throw new BufferOverflowException();
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+            view = ByteBuffer.wrap(buffer);
+            limit = buffer.length;
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package com.iainhemstock;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.util.Date;
 
+@GenerateJsonCodec
 @Getter
+@EqualsAndHashCode
 public class Transaction {
     private Date date;
 
-    public Transaction(Date date) {
+    @JsonCreator
+    public Transaction(@JsonProperty("date") Date date) {
         this.date = date;
     }
 }
@@ -0,0 +1,73 @@
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The formats an object can be written in. Smile and CBOR are binary encodings of the same data
+ * model as json: objects, arrays, strings, numbers, booleans and null. So the same pojos, annotations,
+ * ObjectMapper, ObjectReader and ObjectWriter work for all three. Only the JsonFactory that creates
+ * the parsers and generators is different:
+ *
+ *      byte[] bytes = JsonCodecs.shared(WireFormat.SMILE).writer(Todo.class).writeValueAsBytes(todo);
+ *      Todo todo = JsonCodecs.shared(WireFormat.SMILE).reader(Todo.class).readValue(bytes);
+ *
+ * The binary formats write numbers in binary rather than as digits and strings with their length in
+ * front instead of quoted and escaped, so they are smaller and faster to read and write. Smile also
+ * writes each field name once per document and refers back to it after that, which helps most with
+ * arrays of the same kind of object. Neither is readable by a person or by a client that only
+ * understands json, so they are meant for traffic between services that both know the format, which
+ * can be told apart by getContentType().
+ */
+public enum WireFormat {
+
+    JSON("application/json") {
+        @Override
+        public JsonFactory newFactory() {
+            return new JsonFactory();
+        }
+    },
+
+    SMILE("application/x-jackson-smile") {
+        @Override
+        public JsonFactory newFactory() {
+            return new SmileFactory();
+        }
+    },
+
+    CBOR("application/cbor") {
+        @Override
+        public JsonFactory newFactory() {
+            return new CBORFactory();
+        }
+    };
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public abstract JsonFactory newFactory();
+
+    public ObjectMapper newMapper() {
+        return new ObjectMapper(newFactory());
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    public static WireFormat forContentType(String contentType) {
+        for (WireFormat format : values())
+            if (format.contentType.equalsIgnoreCase(contentType))
+                return format;
+        throw new IllegalArgumentException("Unsupported content type: " + contentType);
+    }
+}
@@ -0,0 +1,781 @@
+package com.iainhemstock.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a JsonSerializer and a JsonDeserializer for each class annotated with
+ * com.iainhemstock.GenerateJsonCodec, and a GeneratedJsonCodecs module in each package that has
+ * them which registers them all. The module has to be registered with a mapper explicitly, it isn't
+ * listed in META-INF/services, so findAndRegisterModules() doesn't slip it into mappers that were
+ * set up for jackson's reflective mapping.
+ *
+ * The generated code does what jackson does by reflection for a simple class, written out for that
+ * class: no introspection when a mapper first meets the class, and no reflective calls or property
+ * lookups for each object afterwards.
+ *
+ *  - A property is written for each field that has a getter, in the order of the fields. Its name
+ *    is the one jackson takes from the getter, or the field's @JsonProperty. Fields that are
+ *    static, transient or @JsonIgnore are left out.
+ *  - A class is read through its @JsonCreator constructor, whose parameters all need @JsonProperty
+ *    names. Without one it is read with setters when every field has one, and otherwise with a
+ *    constructor taking every field in order.
+ *  - A @JsonCreator constructor taking every field in order is taken to set those fields, so the
+ *    names the fields are written with are read as well as the parameters' names.
+ *  - int, long, double, boolean and String are written and read directly. Anything else goes
+ *    through the serializer and deserializer jackson has for its type, so Dates, enums, nested
+ *    pojos and collections follow the mapper's configuration as they always do.
+ *  - Unknown properties are reported through DeserializationContext.handleUnknownProperty(), so
+ *    FAIL_ON_UNKNOWN_PROPERTIES applies, unless the class has @JsonIgnoreProperties(ignoreUnknown = true).
+ *  - Any other jackson annotation on the class or its members, such as @JsonInclude or
+ *    @JsonPropertyOrder, is a compile error rather than being quietly ignored.
+ *  - The module only hands its codecs to a mapper that writes and reads properties the default
+ *    way. A mapper with a PropertyNamingStrategy, SORT_PROPERTIES_ALPHABETICALLY,
+ *    ACCEPT_CASE_INSENSITIVE_PROPERTIES, an inclusion other than ALWAYS, a mix-in for the class or
+ *    default typing that covers it gets jackson's own serializer and deserializer for it instead.
+ *
+ * Getters, setters and constructors can be written out or come from lombok's @Getter, @Setter,
+ * @Data, @Value, @NoArgsConstructor and @AllArgsConstructor. A class that can't be handled this way
+ * gets a compile error pointing at it. The processor has to be compiled before the classes that use
+ * it, which the pom does with an extra execution of the compiler plugin.
+ */
+@SupportedAnnotationTypes(JsonCodecProcessor.GENERATE_JSON_CODEC)
+public class JsonCodecProcessor extends AbstractProcessor {
+
+    static final String GENERATE_JSON_CODEC = "com.iainhemstock.GenerateJsonCodec";
+    static final String MODULE_SIMPLE_NAME = "GeneratedJsonCodecs";
+
+    private static final String JSON_CREATOR = "com.fasterxml.jackson.annotation.JsonCreator";
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+    private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+    private static final String JSON_IGNORE_PROPERTIES = "com.fasterxml.jackson.annotation.JsonIgnoreProperties";
+
+    // the jackson annotations the generated code follows, and the attributes of them it follows
+    private static final Map<String, Set<String>> UNDERSTOOD_ANNOTATIONS = Map.of(
+            JSON_CREATOR, Set.of(),
+            JSON_PROPERTY, Set.of("value"),
+            JSON_IGNORE, Set.of(),
+            JSON_IGNORE_PROPERTIES, Set.of("ignoreUnknown"));
+
+    private final Set<String> modules = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        if (round.processingOver())
+            return false;
+
+        Map<PackageElement, List<TypeElement>> typesByPackage = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                try {
+                    Bean bean = new Bean((TypeElement) element);
+                    write(bean.qualifiedName("JsonSerializer"), bean.serializerSource(), element);
+                    write(bean.qualifiedName("JsonDeserializer"), bean.deserializerSource(), element);
+                    typesByPackage.computeIfAbsent(bean.packageElement, key -> new ArrayList<>()).add(bean.type);
+                }
+                catch (UnsupportedClassException ex) {
+                    messager().printMessage(Diagnostic.Kind.ERROR, ex.getMessage(), ex.element);
+                }
+            }
+        }
+        for (Map.Entry<PackageElement, List<TypeElement>> entry : typesByPackage.entrySet())
+            writeModule(entry.getKey(), entry.getValue());
+        return true;
+    }
+
+    private Messager messager() {
+        return processingEnv.getMessager();
+    }
+
+    private void write(String qualifiedName, String source, Element origin) {
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, origin).openWriter()) {
+            writer.write(source);
+        }
+        catch (IOException ex) {
+            messager().printMessage(Diagnostic.Kind.ERROR, "Can't write " + qualifiedName + ": " + ex, origin);
+        }
+    }
+
+    private void writeModule(PackageElement packageElement, List<TypeElement> types) {
+        String packageName = packageElement.getQualifiedName().toString();
+        String qualifiedName = packageName.isEmpty() ? MODULE_SIMPLE_NAME : packageName + "." + MODULE_SIMPLE_NAME;
+        if (!modules.add(qualifiedName)) {
+            messager().printMessage(Diagnostic.Kind.ERROR,
+                    "Classes in " + packageName + " were annotated in more than one round", types.get(0));
+            return;
+        }
+
+        Source source = new Source(packageName);
+        source.line("import com.fasterxml.jackson.annotation.JsonInclude;");
+        source.line("import com.fasterxml.jackson.databind.BeanDescription;");
+        source.line("import com.fasterxml.jackson.databind.DeserializationConfig;");
+        source.line("import com.fasterxml.jackson.databind.JavaType;");
+        source.line("import com.fasterxml.jackson.databind.JsonDeserializer;");
+        source.line("import com.fasterxml.jackson.databind.JsonMappingException;");
+        source.line("import com.fasterxml.jackson.databind.JsonSerializer;");
+        source.line("import com.fasterxml.jackson.databind.MapperFeature;");
+        source.line("import com.fasterxml.jackson.databind.SerializationConfig;");
+        source.line("import com.fasterxml.jackson.databind.cfg.MapperConfig;");
+        source.line("import com.fasterxml.jackson.databind.module.SimpleDeserializers;");
+        source.line("import com.fasterxml.jackson.databind.module.SimpleModule;");
+        source.line("import com.fasterxml.jackson.databind.module.SimpleSerializers;");
+        source.line("");
+        source.generatedClass("public final class " + MODULE_SIMPLE_NAME + " extends SimpleModule {");
+        source.line("");
+        source.line("    public " + MODULE_SIMPLE_NAME + "() {");
+        source.line("        super(" + MODULE_SIMPLE_NAME + ".class.getName());");
+        source.line("        setSerializers(new DefaultPropertiesSerializers());");
+        source.line("        setDeserializers(new DefaultPropertiesDeserializers());");
+        for (TypeElement type : types) {
+            String name = type.getSimpleName().toString();
+            source.line("        addSerializer(" + name + ".class, new " + name + "JsonSerializer());");
+            source.line("        addDeserializer(" + name + ".class, new " + name + "JsonDeserializer());");
+        }
+        source.line("    }");
+        source.line("");
+        source.line("    // the generated codecs name, order and include properties the default way and write no type");
+        source.line("    // ids, any other configuration is left to jackson's own serializers and deserializers");
+        source.line("    private static boolean defaultProperties(MapperConfig<?> config, JavaType type) {");
+        source.line("        JsonInclude.Include inclusion = config.getDefaultPropertyInclusion(type.getRawClass()).getValueInclusion();");
+        source.line("        return config.getPropertyNamingStrategy() == null");
+        source.line("            && config.getDefaultTyper(type) == null");
+        source.line("            && !config.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)");
+        source.line("            && !config.isEnabled(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES)");
+        source.line("            && config.findMixInClassFor(type.getRawClass()) == null");
+        source.line("            && (inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS);");
+        source.line("    }");
+        source.line("");
+        source.line("    private static final class DefaultPropertiesSerializers extends SimpleSerializers {");
+        source.line("        @Override");
+        source.line("        public JsonSerializer<?> findSerializer(SerializationConfig config, JavaType type, BeanDescription beanDesc) {");
+        source.line("            return defaultProperties(config, type) ? super.findSerializer(config, type, beanDesc) : null;");
+        source.line("        }");
+        source.line("    }");
+        source.line("");
+        source.line("    private static final class DefaultPropertiesDeserializers extends SimpleDeserializers {");
+        source.line("        @Override");
+        source.line("        public JsonDeserializer<?> findBeanDeserializer(JavaType type, DeserializationConfig config,");
+        source.line("                                                        BeanDescription beanDesc) throws JsonMappingException {");
+        source.line("            return defaultProperties(config, type) ? super.findBeanDeserializer(type, config, beanDesc) : null;");
+        source.line("        }");
+        source.line("    }");
+        source.line("}");
+        write(qualifiedName, source.toString(), types.get(0));
+    }
+
+    //==============================================================================================
+    // The model of an annotated class.
+    //==============================================================================================
+
+    /**
+     * How a field is written and read.
+     */
+    private static final class Property {
+        final VariableElement field;
+        final String jsonName;
+        final List<String> readNames = new ArrayList<>();
+        String getter;
+        String setter;
+
+        Property(VariableElement field, String jsonName) {
+            this.field = field;
+            this.jsonName = jsonName;
+        }
+
+        String fieldName() {
+            return field.getSimpleName().toString();
+        }
+
+        TypeMirror type() {
+            return field.asType();
+        }
+    }
+
+    /**
+     * A value read from the json into a local and then passed to a constructor.
+     */
+    private static final class Argument {
+        final String local;
+        final TypeMirror type;
+        final List<String> names = new ArrayList<>();
+
+        Argument(String local, TypeMirror type) {
+            this.local = local;
+            this.type = type;
+        }
+    }
+
+    private static final class UnsupportedClassException extends Exception {
+        final Element element;
+
+        UnsupportedClassException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    private final class Bean {
+        final TypeElement type;
+        final PackageElement packageElement;
+        final String simpleName;
+        final List<Property> properties = new ArrayList<>();
+        final boolean ignoreUnknown;
+
+        // how it's read: either with setters on a new instance, or with the arguments of a constructor
+        final boolean withSetters;
+        final List<Argument> arguments = new ArrayList<>();
+
+        Bean(TypeElement type) throws UnsupportedClassException {
+            this.type = type;
+            this.packageElement = processingEnv.getElementUtils().getPackageOf(type);
+            this.simpleName = type.getSimpleName().toString();
+            if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT))
+                throw new UnsupportedClassException(type, "@GenerateJsonCodec needs a concrete class");
+            if (type.getNestingKind().isNested() || !type.getTypeParameters().isEmpty())
+                throw new UnsupportedClassException(type, "@GenerateJsonCodec needs a top level class without type parameters");
+            ignoreUnknown = Boolean.TRUE.equals(annotationValue(type, JSON_IGNORE_PROPERTIES, "ignoreUnknown"));
+            checkAnnotations(type);
+            for (Element member : type.getEnclosedElements()) {
+                checkAnnotations(member);
+                if (member instanceof ExecutableElement)
+                    for (VariableElement parameter : ((ExecutableElement) member).getParameters())
+                        checkAnnotations(parameter);
+            }
+
+            List<VariableElement> fields = new ArrayList<>();
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+                if (!field.getModifiers().contains(Modifier.STATIC))
+                    fields.add(field);
+
+            for (VariableElement field : fields) {
+                if (field.getModifiers().contains(Modifier.TRANSIENT) || annotation(field, JSON_IGNORE) != null)
+                    continue;
+                checkSupported(field);
+                String getter = accessor(field, getterName(field), 0, "Getter") ? getterName(field) : null;
+                Object explicitName = annotationValue(field, JSON_PROPERTY, "value");
+                String jsonName = explicitName != null && !explicitName.toString().isEmpty()
+                                  ? explicitName.toString()
+                                  : getter != null ? mangle(getter) : field.getSimpleName().toString();
+                Property property = new Property(field, jsonName);
+                property.getter = getter;
+                property.setter = accessor(field, setterName(field), 1, "Setter") ? setterName(field) : null;
+                property.readNames.add(jsonName);
+                properties.add(property);
+            }
+
+            ExecutableElement creator = creator();
+            if (creator != null) {
+                withSetters = false;
+                boolean canonical = takesEveryField(creator, fields);
+                for (int i = 0; i < creator.getParameters().size(); ++i) {
+                    VariableElement parameter = creator.getParameters().get(i);
+                    Object name = annotationValue(parameter, JSON_PROPERTY, "value");
+                    if (name == null || name.toString().isEmpty())
+                        throw new UnsupportedClassException(parameter, "@JsonCreator parameters need a @JsonProperty name");
+                    checkSupported(parameter);
+                    Argument argument = new Argument(parameter.getSimpleName() + "Value", parameter.asType());
+                    argument.names.add(name.toString());
+                    if (canonical) {
+                        Property property = propertyOf(fields.get(i));
+                        if (property != null && !argument.names.contains(property.jsonName))
+                            argument.names.add(property.jsonName);
+                    }
+                    arguments.add(argument);
+                }
+            }
+            else if (hasNoArgsConstructor() && properties.stream().allMatch(property -> property.setter != null)) {
+                withSetters = true;
+            }
+            else if (hasAllArgsConstructor(fields)) {
+                withSetters = false;
+                for (VariableElement field : fields) {
+                    Argument argument = new Argument(field.getSimpleName() + "Value", field.asType());
+                    Property property = propertyOf(field);
+                    if (property != null)
+                        argument.names.addAll(property.readNames);
+                    arguments.add(argument);
+                }
+            }
+            else {
+                throw new UnsupportedClassException(type, "@GenerateJsonCodec can't see how to create a " + simpleName
+                        + ": it needs a @JsonCreator constructor, setters for every property, or a constructor taking every field");
+            }
+        }
+
+        String qualifiedName(String suffix) {
+            String packageName = packageElement.getQualifiedName().toString();
+            return (packageName.isEmpty() ? "" : packageName + ".") + simpleName + suffix;
+        }
+
+        private Property propertyOf(VariableElement field) {
+            for (Property property : properties)
+                if (property.field.equals(field))
+                    return property;
+            return null;
+        }
+
+        // a jackson annotation the generated code would ignore would have it write or read something
+        // different from jackson
+        private void checkAnnotations(Element element) throws UnsupportedClassException {
+            for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+                String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+                if (!name.startsWith("com.fasterxml.jackson."))
+                    continue;
+                Set<String> attributes = UNDERSTOOD_ANNOTATIONS.get(name);
+                boolean understood = attributes != null;
+                for (ExecutableElement attribute : mirror.getElementValues().keySet())
+                    understood = understood && attributes.contains(attribute.getSimpleName().toString());
+                if (!understood)
+                    throw new UnsupportedClassException(element, "@GenerateJsonCodec doesn't support " + mirror);
+            }
+        }
+
+        private void checkSupported(VariableElement variable) throws UnsupportedClassException {
+            TypeKind kind = variable.asType().getKind();
+            if (kind.isPrimitive() && kind != TypeKind.INT && kind != TypeKind.LONG
+                    && kind != TypeKind.DOUBLE && kind != TypeKind.BOOLEAN)
+                throw new UnsupportedClassException(variable, "@GenerateJsonCodec supports int, long, double and boolean primitives, not " + kind);
+            if (kind == TypeKind.TYPEVAR)
+                throw new UnsupportedClassException(variable, "@GenerateJsonCodec doesn't support type variables");
+        }
+
+        //------------------------------------------------------------------------------------------
+        // Getters, setters and constructors, written out or from lombok.
+        //------------------------------------------------------------------------------------------
+        private boolean accessor(VariableElement field, String name, int parameters, String lombokAnnotation) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements()))
+                if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters)
+                    return !method.getModifiers().contains(Modifier.PRIVATE);
+            boolean mutable = !field.getModifiers().contains(Modifier.FINAL);
+            if (lombok(field, lombokAnnotation) || lombok(type, lombokAnnotation))
+                return parameters == 0 || mutable;
+            if (lombok(type, "Data"))
+                return parameters == 0 || mutable;
+            return parameters == 0 && lombok(type, "Value");
+        }
+
+        private ExecutableElement creator() throws UnsupportedClassException {
+            ExecutableElement creator = null;
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                if (annotation(constructor, JSON_CREATOR) == null)
+                    continue;
+                if (creator != null)
+                    throw new UnsupportedClassException(constructor, "More than one @JsonCreator constructor");
+                if (constructor.getModifiers().contains(Modifier.PRIVATE))
+                    throw new UnsupportedClassException(constructor, "@JsonCreator constructor can't be private for @GenerateJsonCodec");
+                creator = constructor;
+            }
+            return creator;
+        }
+
+        private boolean hasNoArgsConstructor() {
+            List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+            for (ExecutableElement constructor : constructors)
+                if (constructor.getParameters().isEmpty())
+                    return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            if (lombok(type, "NoArgsConstructor"))
+                return true;
+            boolean lombokConstructors = lombok(type, "AllArgsConstructor") || lombok(type, "RequiredArgsConstructor")
+                                         || lombok(type, "Data") || lombok(type, "Value");
+            return constructors.isEmpty() && !lombokConstructors;
+        }
+
+        private boolean hasAllArgsConstructor(List<VariableElement> fields) {
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+                if (takesEveryField(constructor, fields))
+                    return !constructor.getModifiers().contains(Modifier.PRIVATE);
+            return lombok(type, "AllArgsConstructor") || lombok(type, "Value");
+        }
+
+        private boolean takesEveryField(ExecutableElement constructor, List<VariableElement> fields) {
+            Types types = processingEnv.getTypeUtils();
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (parameters.size() != fields.size())
+                return false;
+            for (int i = 0; i < parameters.size(); ++i)
+                if (!types.isSameType(parameters.get(i).asType(), fields.get(i).asType()))
+                    return false;
+            return true;
+        }
+
+        //------------------------------------------------------------------------------------------
+        // The serializer.
+        //------------------------------------------------------------------------------------------
+        String serializerSource() {
+            Source source = new Source(packageElement.getQualifiedName().toString());
+            source.line("import com.fasterxml.jackson.core.JsonGenerator;");
+            source.line("import com.fasterxml.jackson.core.io.SerializedString;");
+            source.line("import com.fasterxml.jackson.databind.SerializerProvider;");
+            source.line("import com.fasterxml.jackson.databind.ser.std.StdSerializer;");
+            source.line("");
+            source.line("import java.io.IOException;");
+            source.line("");
+            source.generatedClass("public final class " + simpleName + "JsonSerializer extends StdSerializer<" + simpleName + "> {");
+            source.line("");
+            List<Property> written = new ArrayList<>();
+            for (Property property : properties) {
+                if (property.getter == null)
+                    continue;
+                written.add(property);
+                source.line("    private static final SerializedString " + constant(property) + " = new SerializedString("
+                            + literal(property.jsonName) + ");");
+            }
+            source.line("");
+            source.line("    public " + simpleName + "JsonSerializer() {");
+            source.line("        super(" + simpleName + ".class);");
+            source.line("    }");
+            source.line("");
+            source.line("    @Override");
+            source.line("    public void serialize(" + simpleName + " value, JsonGenerator generator, SerializerProvider provider) throws IOException {");
+            source.line("        generator.writeStartObject(value);");
+            for (Property property : written) {
+                String get = "value." + property.getter + "()";
+                source.line("        generator.writeFieldName(" + constant(property) + ");");
+                switch (kind(property.type())) {
+                    case NUMBER:
+                        source.line("        generator.writeNumber(" + get + ");");
+                        break;
+                    case BOOLEAN:
+                        source.line("        generator.writeBoolean(" + get + ");");
+                        break;
+                    case STRING:
+                        source.line("        generator.writeString(" + get + ");");
+                        break;
+                    default:
+                        source.line("        provider.defaultSerializeValue(" + get + ", generator);");
+                        break;
+                }
+            }
+            source.line("        generator.writeEndObject();");
+            source.line("    }");
+            source.line("}");
+            return source.toString();
+        }
+
+        //------------------------------------------------------------------------------------------
+        // The deserializer.
+        //------------------------------------------------------------------------------------------
+        String deserializerSource() {
+            String className = simpleName + "JsonDeserializer";
+            Map<String, TypeMirror> delegates = new LinkedHashMap<>();
+            if (withSetters) {
+                for (Property property : properties)
+                    if (kind(property.type()) == Kind.OBJECT)
+                        delegates.put(property.fieldName() + "Deserializer", property.type());
+            }
+            else {
+                for (Argument argument : arguments)
+                    if (kind(argument.type) == Kind.OBJECT)
+                        delegates.put(argument.local + "Deserializer", argument.type);
+            }
+
+            Source source = new Source(packageElement.getQualifiedName().toString());
+            source.line("import com.fasterxml.jackson.core.JsonParser;");
+            source.line("import com.fasterxml.jackson.core.JsonToken;");
+            if (!delegates.isEmpty())
+                source.line("import com.fasterxml.jackson.databind.BeanProperty;");
+            source.line("import com.fasterxml.jackson.databind.DeserializationContext;");
+            if (!delegates.isEmpty()) {
+                source.line("import com.fasterxml.jackson.databind.JsonDeserializer;");
+                source.line("import com.fasterxml.jackson.databind.JsonMappingException;");
+                source.line("import com.fasterxml.jackson.databind.deser.ContextualDeserializer;");
+            }
+            source.line("import com.fasterxml.jackson.databind.deser.std.StdDeserializer;");
+            source.line("");
+            source.line("import java.io.IOException;");
+            source.line("");
+            source.generatedClass("public final class " + className + " extends StdDeserializer<" + simpleName + ">"
+                                  + (delegates.isEmpty() ? "" : " implements ContextualDeserializer") + " {");
+            source.line("");
+
+            // the deserializers for the properties jackson reads, found once per mapper
+            if (!delegates.isEmpty()) {
+                for (String delegate : delegates.keySet())
+                    source.line("    private final JsonDeserializer<Object> " + delegate + ";");
+                source.line("");
+                source.line("    public " + className + "() {");
+                source.line("        this(" + String.join(", ", java.util.Collections.nCopies(delegates.size(), "null")) + ");");
+                source.line("    }");
+                source.line("");
+                List<String> parameters = new ArrayList<>();
+                for (String delegate : delegates.keySet())
+                    parameters.add("JsonDeserializer<Object> " + delegate);
+                source.line("    private " + className + "(" + String.join(", ", parameters) + ") {");
+                source.line("        super(" + simpleName + ".class);");
+                for (String delegate : delegates.keySet())
+                    source.line("        this." + delegate + " = " + delegate + ";");
+                source.line("    }");
+                source.line("");
+                source.line("    @Override");
+                source.line("    public JsonDeserializer<?> createContextual(DeserializationContext context, BeanProperty property)");
+                source.line("            throws JsonMappingException {");
+                source.line("        return new " + className + "(");
+                int i = 0;
+                for (TypeMirror delegateType : delegates.values())
+                    source.line("                context.findContextualValueDeserializer(" + javaType(delegateType) + ", null)"
+                                + (++i < delegates.size() ? "," : ");"));
+                source.line("    }");
+            }
+            else {
+                source.line("    public " + className + "() {");
+                source.line("        super(" + simpleName + ".class);");
+                source.line("    }");
+            }
+            source.line("");
+
+            source.line("    @Override");
+            source.line("    public " + simpleName + " deserialize(JsonParser parser, DeserializationContext context) throws IOException {");
+            source.line("        JsonToken token = parser.currentToken();");
+            source.line("        if (token == JsonToken.START_OBJECT)");
+            source.line("            token = parser.nextToken();");
+            source.line("        else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT)");
+            source.line("            return (" + simpleName + ") context.handleUnexpectedToken(" + simpleName + ".class, parser);");
+            String target;
+            if (withSetters) {
+                source.line("        " + simpleName + " value = new " + simpleName + "();");
+                target = "value";
+            }
+            else {
+                for (Argument argument : arguments)
+                    source.line("        " + argument.type + " " + argument.local + " = " + defaultValue(argument.type) + ";");
+                target = simpleName + ".class";
+            }
+            source.line("        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {");
+            source.line("            String name = parser.getCurrentName();");
+            source.line("            parser.nextToken();");
+            source.line("            switch (name) {");
+            if (withSetters) {
+                for (Property property : properties) {
+                    for (String name : property.readNames)
+                        source.line("                case " + literal(name) + ":");
+                    source.line("                    value." + property.setter + "("
+                                + read(property.type(), property.fieldName() + "Deserializer") + ");");
+                    source.line("                    break;");
+                }
+            }
+            else {
+                for (Argument argument : arguments) {
+                    if (argument.names.isEmpty())
+                        continue;
+                    for (String name : argument.names)
+                        source.line("                case " + literal(name) + ":");
+                    source.line("                    " + argument.local + " = " + read(argument.type, argument.local + "Deserializer") + ";");
+                    source.line("                    break;");
+                }
+            }
+            source.line("                default:");
+            source.line(ignoreUnknown
+                        ? "                    parser.skipChildren();"
+                        : "                    handleUnknownProperty(parser, context, " + target + ", name);");
+            source.line("            }");
+            source.line("        }");
+            if (withSetters) {
+                source.line("        return value;");
+            }
+            else {
+                List<String> locals = new ArrayList<>();
+                for (Argument argument : arguments)
+                    locals.add(argument.local);
+                source.line("        return new " + simpleName + "(" + String.join(", ", locals) + ");");
+            }
+            source.line("    }");
+            source.line("}");
+            return source.toString();
+        }
+
+        // an expression reading the value the parser is on
+        private String read(TypeMirror type, String delegate) {
+            switch (type.getKind()) {
+                case INT:
+                    return "parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : _parseIntPrimitive(parser, context)";
+                case LONG:
+                    return "parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : _parseLongPrimitive(parser, context)";
+                case DOUBLE:
+                    return "parser.currentToken().isNumeric() ? parser.getDoubleValue() : _parseDoublePrimitive(parser, context)";
+                case BOOLEAN:
+                    return "parser.currentToken() == JsonToken.VALUE_TRUE"
+                           + " || (parser.currentToken() != JsonToken.VALUE_FALSE && _parseBooleanPrimitive(parser, context))";
+                default:
+                    if (kind(type) == Kind.STRING)
+                        return "parser.currentToken() == JsonToken.VALUE_STRING ? parser.getText()"
+                               + " : parser.currentToken() == JsonToken.VALUE_NULL ? null : _parseString(parser, context)";
+                    return "parser.currentToken() == JsonToken.VALUE_NULL ? null : (" + type + ") " + delegate + ".deserialize(parser, context)";
+            }
+        }
+    }
+
+    //==============================================================================================
+    // Helpers.
+    //==============================================================================================
+    private enum Kind { NUMBER, BOOLEAN, STRING, OBJECT }
+
+    private static Kind kind(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+                return Kind.NUMBER;
+            case BOOLEAN:
+                return Kind.BOOLEAN;
+            default:
+                return type.toString().equals("java.lang.String") ? Kind.STRING : Kind.OBJECT;
+        }
+    }
+
+    private static String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+                return "0";
+            case DOUBLE:
+                return "0.0";
+            case BOOLEAN:
+                return "false";
+            default:
+                return "null";
+        }
+    }
+
+    // the JavaType of a property's declared type, generic types through a TypeReference
+    private static String javaType(TypeMirror type) {
+        boolean generic = type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty();
+        return generic
+               ? "context.getTypeFactory().constructType(new com.fasterxml.jackson.core.type.TypeReference<" + type + ">() {})"
+               : "context.constructType(" + erasure(type) + ".class)";
+    }
+
+    private static String erasure(TypeMirror type) {
+        String name = type.toString();
+        int generic = name.indexOf('<');
+        return generic < 0 ? name : name.substring(0, generic);
+    }
+
+    private static String getterName(VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if (field.asType().getKind() == TypeKind.BOOLEAN)
+            return startsWithIs(name) ? name : "is" + capitalize(name);
+        return "get" + capitalize(name);
+    }
+
+    private static String setterName(VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if (field.asType().getKind() == TypeKind.BOOLEAN && startsWithIs(name))
+            return "set" + name.substring(2);
+        return "set" + capitalize(name);
+    }
+
+    // lombok names the accessors of a boolean field isActive as isActive() and setActive()
+    private static boolean startsWithIs(String name) {
+        return name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2));
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    // the property name jackson takes from a getter: getUserId is userId, getURL is url
+    private static String mangle(String getter) {
+        String name = getter.substring(getter.startsWith("is") ? 2 : 3);
+        StringBuilder mangled = new StringBuilder(name);
+        for (int i = 0; i < mangled.length() && Character.isUpperCase(mangled.charAt(i)); ++i)
+            mangled.setCharAt(i, Character.toLowerCase(mangled.charAt(i)));
+        return mangled.toString();
+    }
+
+    private static String constant(Property property) {
+        return property.fieldName().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                literal.append('\\').append(c);
+            else if (c < ' ' || c > '~')
+                literal.append(String.format("\\u%04x", (int) c));
+            else
+                literal.append(c);
+        }
+        return literal.append('"').toString();
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors())
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType))
+                return mirror;
+        return null;
+    }
+
+    private static Object annotationValue(Element element, String annotationType, String name) {
+        AnnotationMirror mirror = annotation(element, annotationType);
+        if (mirror == null)
+            return null;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet())
+            if (entry.getKey().getSimpleName().contentEquals(name))
+                return entry.getValue().getValue();
+        return null;
+    }
+
+    private static boolean lombok(Element element, String annotation) {
+        return annotation(element, "lombok." + annotation) != null;
+    }
+
+    /**
+     * A generated source file.
+     */
+    private static final class Source {
+        private final StringBuilder text = new StringBuilder();
+
+        Source(String packageName) {
+            if (!packageName.isEmpty())
+                line("package " + packageName + ";").line("");
+            line("import javax.annotation.processing.Generated;");
+        }
+
+        Source line(String line) {
+            text.append(line).append('\n');
+            return this;
+        }
+
+        void generatedClass(String declaration) {
+            line("@Generated(\"" + JsonCodecProcessor.class.getName() + "\")");
+            line(declaration);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
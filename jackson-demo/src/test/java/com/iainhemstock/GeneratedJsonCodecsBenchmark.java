@@ -0,0 +1,103 @@
+/**
+ * Jackson's reflective (de)serializers against the ones generated for the @GenerateJsonCodec
+ * classes (see JsonCodecProcessor):
+ *
+ *      coldStart       a new ObjectMapper writing and reading each of Todo, Mountain, Transaction
+ *                      and ImmutablePost once, as the first request after starting up does
+ *      held            one ObjectReader/ObjectWriter kept in a field, the steady state
+ *
+ * coldStartGenerated includes registering the generated module, which every mapper that uses the
+ * codecs has to do.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratedJsonCodecsBenchmark {
+
+    private static final List<Object> VALUES = Arrays.asList(new Todo(1, 1, "delectus aut autem", false),
+                                                             new Mountain("Catbells", 451),
+                                                             new Transaction(new Date(1576800000000L)),
+                                                             new ImmutablePost(7));
+    private static final Todo TODO = (Todo) VALUES.get(0);
+
+    private byte[] json;
+    private ObjectReader reflectiveReader;
+    private ObjectWriter reflectiveWriter;
+    private ObjectReader generatedReader;
+    private ObjectWriter generatedWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper reflective = new ObjectMapper();
+        ObjectMapper generated = new ObjectMapper().registerModule(new GeneratedJsonCodecs());
+        json = reflective.writeValueAsBytes(TODO);
+        reflectiveReader = reflective.readerFor(Todo.class);
+        reflectiveWriter = reflective.writerFor(Todo.class);
+        generatedReader = generated.readerFor(Todo.class);
+        generatedWriter = generated.writerFor(Todo.class);
+    }
+
+    private static Object firstUse(ObjectMapper mapper) throws IOException {
+        Object last = null;
+        for (Object value : VALUES)
+            last = mapper.readValue(mapper.writeValueAsBytes(value), value.getClass());
+        return last;
+    }
+
+    @Benchmark
+    public Object coldStartReflective() throws IOException {
+        return firstUse(new ObjectMapper());
+    }
+
+    @Benchmark
+    public Object coldStartGenerated() throws IOException {
+        return firstUse(new ObjectMapper().registerModule(new GeneratedJsonCodecs()));
+    }
+
+    @Benchmark
+    public Todo readHeldReflective() throws IOException {
+        return reflectiveReader.readValue(json);
+    }
+
+    @Benchmark
+    public Todo readHeldGenerated() throws IOException {
+        return generatedReader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] writeHeldReflective() throws IOException {
+        return reflectiveWriter.writeValueAsBytes(TODO);
+    }
+
+    @Benchmark
+    public byte[] writeHeldGenerated() throws IOException {
+        return generatedWriter.writeValueAsBytes(TODO);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GeneratedJsonCodecsBenchmark.class.getSimpleName())
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * The codecs generated for the @GenerateJsonCodec classes (see JsonCodecProcessor) write the same
+ * json as jackson does by reflection, and read it back the same way. A mapper configured to name,
+ * order or leave out properties differently, or to write type ids, gets jackson's own
+ * (de)serializers instead.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeneratedJsonCodecsTest {
+
+    private ObjectMapper reflective;
+    private ObjectMapper generated;
+    private List<Object> values;
+
+    @Before
+    public void setUp() {
+        reflective = new ObjectMapper();
+        generated = new ObjectMapper().registerModule(new GeneratedJsonCodecs());
+        values = Arrays.asList(new Todo(1, 2, "delectus aut autem", true),
+                               new Todo(3, 4, null, false),
+                               new Mountain("Catbells", 451),
+                               new Transaction(new Date(1576800000000L)),
+                               new Transaction(null),
+                               new ImmutablePost(7));
+    }
+
+    @Test
+    public void testModuleIsUsed() throws Exception {
+        JsonSerializer<Object> serializer = generated.getSerializerProviderInstance().findValueSerializer(Todo.class);
+        assertEquals(TodoJsonSerializer.class, serializer.getClass());
+    }
+
+    /**
+     * The module isn't listed in META-INF/services, a mapper only gets it by registering it.
+     */
+    @Test
+    public void testModuleIsNotFoundOnClasspath() {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        assertFalse(mapper.getRegisteredModuleIds().contains(GeneratedJsonCodecs.class.getName()));
+    }
+
+    @Test
+    public void testNonNullInclusionFallsBack() throws Exception {
+        ObjectMapper nonNull = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        ObjectMapper generatedNonNull = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                                                          .registerModule(new GeneratedJsonCodecs());
+        for (Object value : values)
+            assertEquals(nonNull.writeValueAsString(value), generatedNonNull.writeValueAsString(value));
+        assertFalse(generatedNonNull.writeValueAsString(new Todo(3, 4, null, false)).contains("title"));
+    }
+
+    @Test
+    public void testNamingStrategyFallsBack() throws Exception {
+        ObjectMapper snakeCase = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE);
+        ObjectMapper generatedSnakeCase = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategy.SNAKE_CASE)
+                                                            .registerModule(new GeneratedJsonCodecs());
+        for (Object value : values) {
+            String json = generatedSnakeCase.writeValueAsString(value);
+            assertEquals(snakeCase.writeValueAsString(value), json);
+            assertEquals(value, generatedSnakeCase.readValue(json, value.getClass()));
+        }
+    }
+
+    @Test
+    public void testSortedPropertiesFallBack() throws Exception {
+        ObjectMapper sorted = new ObjectMapper().configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        ObjectMapper generatedSorted = new ObjectMapper().configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+                                                         .registerModule(new GeneratedJsonCodecs());
+        for (Object value : values)
+            assertEquals(sorted.writeValueAsString(value), generatedSorted.writeValueAsString(value));
+    }
+
+    @Test
+    public void testDefaultTypingFallsBack() throws Exception {
+        PolymorphicTypeValidator ours = BasicPolymorphicTypeValidator.builder()
+                                                                     .allowIfSubType("com.iainhemstock.")
+                                                                     .allowIfSubType(Date.class)
+                                                                     .build();
+        ObjectMapper typed = new ObjectMapper().activateDefaultTyping(ours, ObjectMapper.DefaultTyping.NON_FINAL);
+        ObjectMapper generatedTyped = new ObjectMapper().activateDefaultTyping(ours, ObjectMapper.DefaultTyping.NON_FINAL)
+                                                        .registerModule(new GeneratedJsonCodecs());
+        for (Object value : values) {
+            String json = generatedTyped.writeValueAsString(value);
+            assertEquals(typed.writeValueAsString(value), json);
+            assertEquals(value, generatedTyped.readValue(json, value.getClass()));
+        }
+        assertTrue(generatedTyped.writeValueAsString(values.get(0)).contains(Todo.class.getName()));
+    }
+
+    @Test
+    public void testWritesSameJson() throws Exception {
+        for (Object value : values)
+            assertEquals(reflective.writeValueAsString(value), generated.writeValueAsString(value));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (Object value : values)
+            assertEquals(value, generated.readValue(generated.writeValueAsBytes(value), value.getClass()));
+    }
+
+    @Test
+    public void testReadsSameAsReflection() throws Exception {
+        String json = "{\"completed\":true,\"title\":\"et porro tempora\",\"id\":4,\"userId\":\"1\"}";
+        assertEquals(reflective.readValue(json, Todo.class), generated.readValue(json, Todo.class));
+    }
+
+    @Test
+    public void testWritesSameJsonInList() throws Exception {
+        assertEquals(reflective.writeValueAsString(values), generated.writeValueAsString(values));
+    }
+
+    /**
+     * ImmutablePost writes its field's name, theId, and its creator reads id. Both are read.
+     */
+    @Test
+    public void testReadsCreatorAndFieldNames() throws Exception {
+        assertEquals(new ImmutablePost(7), generated.readValue("{\"id\":7}", ImmutablePost.class));
+        assertEquals(new ImmutablePost(7), generated.readValue("{\"theId\":7}", ImmutablePost.class));
+    }
+
+    @Test
+    public void testMissingPropertiesAreDefaults() throws Exception {
+        assertEquals(new Mountain(null, 0), generated.readValue("{}", Mountain.class));
+        assertEquals(new Transaction(null), generated.readValue("{\"date\":null}", Transaction.class));
+    }
+
+    @Test
+    public void testNullPrimitive() throws Exception {
+        assertEquals(new Mountain("Skiddaw", 0), generated.readValue("{\"mountainName\":\"Skiddaw\",\"height\":null}", Mountain.class));
+        try {
+            generated.readerFor(Mountain.class)
+                     .with(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES)
+                     .readValue("{\"height\":null}");
+            fail("expected MismatchedInputException");
+        }
+        catch (MismatchedInputException ex) {
+            // expected
+        }
+    }
+
+    @Test(expected = UnrecognizedPropertyException.class)
+    public void testUnknownProperty() throws Exception {
+        generated.readValue("{\"mountainName\":\"Skiddaw\",\"elevation\":931}", Mountain.class);
+    }
+
+    @Test
+    public void testUnknownPropertyIgnored() throws Exception {
+        Mountain mountain = generated.readerFor(Mountain.class)
+                                     .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                                     .readValue("{\"mountainName\":\"Skiddaw\",\"elevation\":{\"metres\":931},\"height\":931}");
+        assertEquals(new Mountain("Skiddaw", 931), mountain);
+    }
+
+    @Test(expected = MismatchedInputException.class)
+    public void testNotAnObject() throws Exception {
+        generated.readValue("[1,2]", Todo.class);
+    }
+
+    @Test
+    public void testBinaryFormats() throws Exception {
+        for (WireFormat format : Arrays.asList(WireFormat.SMILE, WireFormat.CBOR)) {
+            ObjectMapper mapper = format.newMapper().registerModule(new GeneratedJsonCodecs());
+            for (Object value : values)
+                assertEquals(value, mapper.readValue(mapper.writeValueAsBytes(value), value.getClass()));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Reads a large json array of todos three ways and adds up their ids:
+ *
+ *      list      ObjectMapper.readValue() into a List<Todo>
+ *      tree      ObjectMapper.readTree() and get("id") on each element
+ *      stream    JsonArrayStream, one Todo at a time
+ *
+ * The gc profiler shows how much each allocates per read. The bigger difference is in how much has
+ * to be held at once: list and tree keep every element until the last one has been read while the
+ * stream keeps one. Running with a small heap, for example -Xmx64m and 1000000 todos, the list and
+ * tree reads fail with an OutOfMemoryError and the stream read doesn't notice.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonArrayStreamBenchmark {
+
+    @Param({ "100000" })
+    private int todos;
+
+    private ObjectMapper mapper;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        file = File.createTempFile("todos", ".json");
+        file.deleteOnExit();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < todos; ++i)
+                mapper.writeValue(generator, new Todo(i % 10, i, "todo number " + i, i % 3 == 0));
+            generator.writeEndArray();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long list() throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            List<Todo> list = mapper.readValue(input, new TypeReference<List<Todo>>() {});
+            long sum = 0;
+            for (Todo todo : list)
+                sum += todo.getId();
+            return sum;
+        }
+    }
+
+    @Benchmark
+    public long tree() throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            long sum = 0;
+            for (JsonNode todo : mapper.readTree(input))
+                sum += todo.get("id").asInt();
+            return sum;
+        }
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        try (Stream<Todo> stream = JsonArrayStream.stream(mapper, new FileInputStream(file), Todo.class)) {
+            return stream.mapToLong(Todo::getId).sum();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonArrayStreamBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Mapping a json array to a List (see ObjectMapperDeserializationTest) reads the whole array into
+ * memory before the first element can be used. JsonArrayStream hands the elements over one at a
+ * time as the input is parsed, so the size of the array doesn't matter.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class JsonArrayStreamTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper();
+    }
+
+    @Test
+    public void testStreamObjectsFromJsonArray() throws IOException {
+        Reader reader = new FileReader(getClass().getResource("/array_of_mountains.json").getFile());
+        try (Stream<Mountain> mountains = JsonArrayStream.stream(mapper, reader, Mountain.class)) {
+            List<Mountain> list = mountains.collect(Collectors.toList());
+
+            assertEquals(2, list.size());
+            assertEquals(new Mountain("Catbells", 451), list.get(0));
+            assertEquals(new Mountain("Castle Crag", 290), list.get(1));
+        }
+    }
+
+    /**
+     * Elements are only parsed when they are asked for, so a stream that stops early never reads
+     * the rest of the array.
+     */
+    @Test
+    public void testStreamOnlyParsesWhatIsConsumed() throws IOException {
+        String json = "[ {`userId`:1, `id`:1, `title`:`first`, `completed`:true}, { this is not json"
+                        .replace("`", "\"");
+        try (Stream<Todo> todos = JsonArrayStream.stream(mapper, new StringReader(json), Todo.class)) {
+            assertEquals(new Todo(1, 1, "first", true), todos.findFirst().get());
+        }
+    }
+
+    @Test
+    public void testStreamEmptyArray() throws IOException {
+        try (Stream<Todo> todos = JsonArrayStream.stream(mapper, new StringReader("[]"), Todo.class)) {
+            assertEquals(0, todos.count());
+        }
+    }
+
+    /**
+     * The parser can be moved to an array inside a larger document first. It is left at the end of
+     * the array so the rest of the document can still be read.
+     */
+    @Test
+    public void testIterateArrayInsideDocument() throws IOException {
+        String json = "{ `mountains` : [ {`mountainName`:`Catbells`, `height`:451} ], `count` : 1 }"
+                        .replace("`", "\"");
+        JsonParser parser = mapper.getFactory().createParser(json);
+        while (parser.nextToken() != JsonToken.START_ARRAY)
+            ;
+
+        MappingIterator<Mountain> mountains = JsonArrayStream.iterator(mapper, parser, Mountain.class);
+        assertEquals(new Mountain("Catbells", 451), mountains.next());
+        assertFalse(mountains.hasNext());
+
+        assertEquals(JsonToken.END_ARRAY, parser.currentToken());
+        assertEquals("count", parser.nextFieldName());
+    }
+
+    @Test(expected = MismatchedInputException.class)
+    public void testStreamFailsWhenNotAnArray() throws IOException {
+        String json = "{`mountainName`:`Catbells`, `height`:451}".replace("`", "\"");
+        JsonArrayStream.stream(mapper, new StringReader(json), Mountain.class);
+    }
+}
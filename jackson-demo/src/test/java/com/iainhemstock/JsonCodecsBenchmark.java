@@ -0,0 +1,97 @@
+/**
+ * The cost of reading and writing one small object depending on what is reused between calls:
+ *
+ *      newMapper       a new ObjectMapper for every call, as the tests' setUp() does
+ *      sharedMapper    one ObjectMapper, the type is looked up in its caches on every call
+ *      registry        JsonCodecs.reader()/writer() on every call
+ *      heldReader      one ObjectReader/ObjectWriter kept in a field
+ *
+ * newMapper pays for introspecting the class and building its (de)serializer on every call and is
+ * orders of magnitude slower than the others. The registry costs a map lookup more than holding on
+ * to the reader yourself.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonCodecsBenchmark {
+
+    private static final String JSON = "{\"mountainName\":\"Catbells\",\"height\":451}";
+    private static final Mountain MOUNTAIN = new Mountain("Catbells", 451);
+
+    private ObjectMapper mapper;
+    private JsonCodecs codecs;
+    private ObjectReader reader;
+    private ObjectWriter writer;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        codecs = new JsonCodecs(mapper).warmUp(Mountain.class);
+        reader = codecs.reader(Mountain.class);
+        writer = codecs.writer(Mountain.class);
+    }
+
+    @Benchmark
+    public Mountain readNewMapper() throws IOException {
+        return new ObjectMapper().readValue(JSON, Mountain.class);
+    }
+
+    @Benchmark
+    public Mountain readSharedMapper() throws IOException {
+        return mapper.readValue(JSON, Mountain.class);
+    }
+
+    @Benchmark
+    public Mountain readRegistry() throws IOException {
+        return codecs.reader(Mountain.class).readValue(JSON);
+    }
+
+    @Benchmark
+    public Mountain readHeldReader() throws IOException {
+        return reader.readValue(JSON);
+    }
+
+    @Benchmark
+    public String writeNewMapper() throws IOException {
+        return new ObjectMapper().writeValueAsString(MOUNTAIN);
+    }
+
+    @Benchmark
+    public String writeSharedMapper() throws IOException {
+        return mapper.writeValueAsString(MOUNTAIN);
+    }
+
+    @Benchmark
+    public String writeRegistry() throws IOException {
+        return codecs.writer(Mountain.class).writeValueAsString(MOUNTAIN);
+    }
+
+    @Benchmark
+    public String writeHeldWriter() throws IOException {
+        return writer.writeValueAsString(MOUNTAIN);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonCodecsBenchmark.class.getSimpleName())
+                .build())
+            .run();
+    }
+}
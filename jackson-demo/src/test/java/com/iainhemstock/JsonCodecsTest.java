@@ -0,0 +1,110 @@
+/**
+ * Creating an ObjectMapper and mapping a class with it for the first time means working out how to
+ * map the class and building a deserializer for it. JsonCodecs does that once per type and set of
+ * features and hands out the same immutable ObjectReader or ObjectWriter from then on.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecsTest {
+
+    private static final Mountain EXPECTED_MOUNTAIN = new Mountain("Catbells", 451);
+
+    private ObjectMapper mapper;
+    private JsonCodecs codecs;
+
+    @Before
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper();
+        codecs = new JsonCodecs(mapper);
+    }
+
+    @Test
+    public void testSameReaderForSameType() {
+        assertSame(codecs.reader(Mountain.class), codecs.reader(Mountain.class));
+        assertSame(codecs.writer(Mountain.class), codecs.writer(Mountain.class));
+        assertNotSame(codecs.reader(Mountain.class), codecs.reader(Todo.class));
+    }
+
+    /**
+     * The same features, whatever set they are passed in, give the same reader.
+     */
+    @Test
+    public void testSameReaderForSameFeatures() {
+        ObjectReader lenient = codecs.reader(Mountain.class,
+                EnumSet.noneOf(DeserializationFeature.class),
+                EnumSet.of(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+
+        assertSame(lenient, codecs.reader(Mountain.class,
+                EnumSet.noneOf(DeserializationFeature.class),
+                EnumSet.of(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)));
+        assertNotSame(lenient, codecs.reader(Mountain.class));
+    }
+
+    @Test
+    public void testReaderWithoutFailOnUnknownProperties() throws IOException {
+        ObjectReader lenient = codecs.reader(Mountain.class,
+                EnumSet.noneOf(DeserializationFeature.class),
+                EnumSet.of(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+
+        Reader reader = new FileReader(getClass().getResource("/mountain_with_extra_fields.json").getFile());
+        assertEquals(EXPECTED_MOUNTAIN, lenient.readValue(reader));
+    }
+
+    @Test(expected = UnrecognizedPropertyException.class)
+    public void testDefaultReaderFailsOnUnknownProperties() throws IOException {
+        Reader reader = new FileReader(getClass().getResource("/mountain_with_extra_fields.json").getFile());
+        codecs.reader(Mountain.class).readValue(reader);
+    }
+
+    @Test
+    public void testReaderForGenericType() throws IOException {
+        Reader reader = new FileReader(getClass().getResource("/array_of_mountains.json").getFile());
+        List<Mountain> mountains = codecs.reader(new TypeReference<List<Mountain>>() {}).readValue(reader);
+
+        assertEquals(2, mountains.size());
+        assertEquals(EXPECTED_MOUNTAIN, mountains.get(0));
+    }
+
+    @Test
+    public void testWriterWithFeature() throws IOException {
+        String json = codecs.writer(Mountain.class, EnumSet.of(SerializationFeature.WRAP_ROOT_VALUE),
+                                    EnumSet.noneOf(SerializationFeature.class))
+                            .writeValueAsString(EXPECTED_MOUNTAIN);
+
+        assertEquals("{`Mountain`:{`mountainName`:`Catbells`,`height`:451}}".replace("`", "\""), json);
+    }
+
+    /**
+     * The registry works on a copy of the mapper so changing the mapper afterwards changes nothing.
+     */
+    @Test
+    public void testMapperChangesDoNotAffectRegistry() throws IOException {
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        assertTrue(codecs.reader(Mountain.class).isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    @Test
+    public void testSharedRegistryIsWarmedUp() {
+        assertTrue(JsonCodecs.shared().size() >= 8);
+        assertSame(JsonCodecs.shared().reader(Todo.class), JsonCodecs.shared().reader(Todo.class));
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Reads three values, from the start, the middle and the end of a wide document (the one from
+ * LazyJsonDocumentBenchmark, an object with 10,000 users):
+ *
+ *      treeAt          readTree() and then at() for each pointer
+ *      lazyDocument    LazyJsonDocument and get() down to each value
+ *      projection      JsonProjection, which never builds a node for the users that aren't asked for
+ *
+ * and the first two values only, which a projection finds without reading the rest of the document:
+ *
+ *      treeAtNearStart / projectionNearStart
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonProjectionBenchmark {
+
+    private static final String[] POINTERS = { "/count", "/Bret5000/company/name", "/last/geo/lat" };
+    private static final String[] NEAR_START = { "/count", "/source" };
+
+    private ObjectMapper mapper;
+    private byte[] json;
+    private JsonProjection projection;
+    private JsonProjection nearStart;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        json = LazyJsonDocumentBenchmark.wideDocument(mapper);
+        projection = new JsonProjection(mapper, POINTERS);
+        nearStart = new JsonProjection(mapper, NEAR_START);
+    }
+
+    @Benchmark
+    public void treeAt(Blackhole blackhole) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        for (String pointer : POINTERS)
+            blackhole.consume(root.at(pointer));
+    }
+
+    @Benchmark
+    public void lazyDocument(Blackhole blackhole) throws IOException {
+        LazyJsonDocument.Node root = LazyJsonDocument.parse(mapper, json).root();
+        blackhole.consume(root.get("count"));
+        blackhole.consume(root.get("Bret5000").get("company").get("name"));
+        blackhole.consume(root.get("last").get("geo").get("lat"));
+    }
+
+    @Benchmark
+    public JsonProjection.Result projection() throws IOException {
+        return projection.extract(json);
+    }
+
+    @Benchmark
+    public void treeAtNearStart(Blackhole blackhole) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        for (String pointer : NEAR_START)
+            blackhole.consume(root.at(pointer));
+    }
+
+    @Benchmark
+    public JsonProjection.Result projectionNearStart() throws IOException {
+        return nearStart.extract(json);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonProjectionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * A JsonProjection reads the same values as readTree() followed by at() (see ObjectNodeTest) but
+ * steps over everything that isn't asked for.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JsonProjectionTest {
+
+    private ObjectMapper mapper;
+    private JsonNode tree;
+
+    @Before
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper();
+        tree = mapper.readTree(getClass().getResource("/user.json"));
+    }
+
+    private JsonProjection.Result extract(String... pointers) throws IOException {
+        try (Reader reader = new FileReader(getClass().getResource("/user.json").getFile())) {
+            return new JsonProjection(mapper, pointers).extract(reader);
+        }
+    }
+
+    @Test
+    public void testValuesMatchAt() throws IOException {
+        String[] pointers = { "/id", "/address/geo/lat", "/company/catchPhrase", "/aliases/2", "/address" };
+        JsonProjection.Result result = extract(pointers);
+
+        assertEquals(pointers.length, result.size());
+        for (String pointer : pointers)
+            assertEquals(pointer, tree.at(pointer), result.get(pointer));
+    }
+
+    @Test
+    public void testValuesInOrderOfPointers() throws IOException {
+        JsonProjection.Result result = extract("/company/name", "/name");
+
+        assertEquals("Romaguera-Crona", result.get(0).asText());
+        assertEquals("Leanne Graham", result.get(1).asText());
+    }
+
+    @Test
+    public void testMissingValueIsNull() throws IOException {
+        JsonProjection.Result result = extract("/nonexistent", "/name/first", "/aliases/3", "/address/0");
+
+        assertFalse(result.has("/nonexistent"));
+        assertNull(result.get("/name/first"));
+        assertNull(result.get("/aliases/3"));
+        assertNull(result.get("/address/0"));
+    }
+
+    /**
+     * A pointer below another pointer is taken from the subtree read for the one above it.
+     */
+    @Test
+    public void testPointerBelowAnotherPointer() throws IOException {
+        JsonProjection.Result result = extract("/address/geo/lng", "/address", "/address/nonexistent");
+
+        assertEquals(tree.get("address"), result.get("/address"));
+        assertEquals("81.1496", result.get("/address/geo/lng").asText());
+        assertNull(result.get("/address/nonexistent"));
+    }
+
+    @Test
+    public void testWholeDocument() throws IOException {
+        assertEquals(tree, extract("").get(""));
+    }
+
+    /**
+     * Once every pointer has a value the rest of the input isn't read, even when it isn't valid json.
+     */
+    @Test
+    public void testStopsOnceEveryValueIsFound() throws IOException {
+        JsonProjection projection = new JsonProjection(mapper, "/first", "/second/0");
+
+        JsonProjection.Result result = projection.extract("{ \"first\" : 1, \"second\" : [ 2, this is not json".getBytes());
+
+        assertEquals(1, result.get("/first").asInt());
+        assertEquals(2, result.get("/second/0").asInt());
+    }
+
+    /**
+     * A projection is compiled once and used for every document, one after another on the same
+     * parser here.
+     */
+    @Test
+    public void testReuseForManyDocuments() throws IOException {
+        JsonProjection projection = new JsonProjection(mapper, "/title", "/completed");
+
+        try (JsonParser parser = mapper.getFactory().createParser(getClass().getResource("/todos.ndjson"))) {
+            int count = 0;
+            while (parser.nextToken() != null) {
+                JsonProjection.Result result = projection.extract(parser);
+                assertNotNull(result.get("/title"));
+                assertTrue(result.get("/completed").isBoolean());
+                ++count;
+            }
+            assertEquals(3, count);
+        }
+    }
+
+    @Test
+    public void testPointers() {
+        assertEquals(Arrays.asList("/a", "/b"), new JsonProjection(mapper, "/a", "/b", "/a").getPointers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPointer() {
+        new JsonProjection(mapper, "address");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPointerNotInProjection() throws IOException {
+        extract("/name").get("/email");
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Reads two fields from a wide document, an object with 10,000 users, with readTree() and with a
+ * LazyJsonDocument:
+ *
+ *      treeGet / lazyGet               parse and read two fields near the start of the document
+ *      treeFindValue / lazyFindValue   a field nested in the last user, in a document parsed once
+ *                                      in setUp()
+ *      lazyFirstFindValue              the same field in a document that hasn't been searched yet,
+ *                                      the document is parsed outside the measured time
+ *
+ * lazyGet only scans as far as the fields it wants. The first findValue() on a node scans just that
+ * node's value, recording offsets instead of building JsonNodes, and later ones look the offsets up.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LazyJsonDocumentBenchmark {
+
+    private static final int USERS = 10_000;
+
+    private ObjectMapper mapper;
+    private byte[] json;
+    private JsonNode tree;
+    private LazyJsonDocument document;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        json = wideDocument(mapper);
+        tree = mapper.readTree(json);
+        document = LazyJsonDocument.parse(mapper, json);
+    }
+
+    /**
+     * A new document for every call of lazyFirstFindValue.
+     */
+    @State(Scope.Thread)
+    public static class Unsearched {
+        LazyJsonDocument document;
+
+        @Setup(Level.Invocation)
+        public void setUp(LazyJsonDocumentBenchmark benchmark) throws IOException {
+            document = LazyJsonDocument.parse(benchmark.mapper, benchmark.json);
+        }
+    }
+
+    // { "count" : 10000, "source" : ..., "Bret0" : { user }, ..., "Bret9999" : { user }, "last" : { address } }
+    static byte[] wideDocument(ObjectMapper mapper) throws IOException {
+        List<User> users = WireFormatBenchmark.users(USERS);
+        Map<String, Object> byName = new LinkedHashMap<>();
+        byName.put("count", USERS);
+        byName.put("source", "jsonplaceholder");
+        for (User user : users)
+            byName.put(user.getUsername(), user);
+        byName.put("last", users.get(USERS - 1).getAddress());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mapper.writeValue(output, byName);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public void treeGet(Blackhole blackhole) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        blackhole.consume(root.get("count").asInt());
+        blackhole.consume(root.get("source").asText());
+    }
+
+    @Benchmark
+    public void lazyGet(Blackhole blackhole) throws IOException {
+        LazyJsonDocument.Node root = LazyJsonDocument.parse(mapper, json).root();
+        blackhole.consume(root.get("count").asInt());
+        blackhole.consume(root.get("source").asText());
+    }
+
+    @Benchmark
+    public String treeFindValue() {
+        return tree.get("last").findValue("lat").asText();
+    }
+
+    @Benchmark
+    public String lazyFindValue() {
+        return document.root().get("last").findValue("lat").asText();
+    }
+
+    @Benchmark
+    public String lazyFirstFindValue(Unsearched unsearched) {
+        return unsearched.document.root().get("last").findValue("lat").asText();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LazyJsonDocumentBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * A LazyJsonDocument answers the same questions as the JsonNode tree from readTree() (see
+ * JsonNodeReadTest) but only parses the parts of the json that are asked for.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LazyJsonDocumentTest {
+
+    private ObjectMapper mapper;
+    private LazyJsonDocument document;
+    private JsonNode tree;
+
+    @Before
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper();
+        try (InputStream input = new FileInputStream(getClass().getResource("/user.json").getFile())) {
+            document = LazyJsonDocument.parse(mapper, input);
+        }
+        tree = mapper.readTree(getClass().getResource("/user.json"));
+    }
+
+    @Test
+    public void testGetValue() {
+        assertEquals("Leanne Graham", document.root().get("name").asText());
+        assertEquals(1, document.root().get("id").asInt());
+    }
+
+    @Test
+    public void testGetValueFromChildObject() {
+        LazyJsonDocument.Node geo = document.root().get("address").get("geo");
+
+        assertTrue(geo.isObject());
+        assertEquals("-37.3159", geo.get("lat").asText());
+    }
+
+    @Test
+    public void testGetArrayElement() {
+        LazyJsonDocument.Node aliases = document.root().get("aliases");
+
+        assertTrue(aliases.isArray());
+        assertEquals(3, aliases.size());
+        assertEquals("Samantha", aliases.get(1).asText());
+        assertNull(aliases.get(3));
+    }
+
+    @Test
+    public void testMissingFieldIsNull() {
+        assertNull(document.root().get("nonexistent"));
+        assertNull(document.root().get("name").get("first"));
+        assertNull(document.root().findValue("nonexistent"));
+    }
+
+    @Test
+    public void testFieldNamesInDocumentOrder() {
+        List<String> names = new ArrayList<>();
+        document.root().fieldNames().forEachRemaining(names::add);
+
+        List<String> expected = new ArrayList<>();
+        tree.fieldNames().forEachRemaining(expected::add);
+        assertEquals(expected, names);
+        assertEquals(tree.size(), document.root().size());
+    }
+
+    /**
+     * Like JsonNode.findValue(), the first match in document order anywhere below the node.
+     */
+    @Test
+    public void testFindValue() {
+        assertEquals(tree.findValue("lng").asText(), document.root().findValue("lng").asText());
+        assertEquals(tree.findValue("name").asText(), document.root().findValue("name").asText());
+    }
+
+    /**
+     * findValue() on a child only looks inside the child.
+     */
+    @Test
+    public void testFindValueInChild() {
+        LazyJsonDocument.Node company = document.root().get("company");
+
+        assertEquals("Romaguera-Crona", company.findValue("name").asText());
+        assertNull(company.findValue("street"));
+    }
+
+    @Test
+    public void testToJsonNode() {
+        assertEquals(tree.get("address"), document.root().get("address").toJsonNode());
+        assertEquals(tree, document.root().toJsonNode());
+    }
+
+    /**
+     * A field near the start of a wide object is found without reading the rest, even when the rest
+     * isn't valid json.
+     */
+    @Test
+    public void testOnlyScansAsFarAsNeeded() throws IOException {
+        LazyJsonDocument wide = LazyJsonDocument.parse(mapper, "{ \"first\" : 1, \"second\" : [ this is not json");
+
+        assertEquals(1, wide.root().get("first").asInt());
+    }
+
+    @Test
+    public void testEveryFieldMatchesTree() {
+        assertSameTree(tree, document.root());
+    }
+
+    private void assertSameTree(JsonNode expected, LazyJsonDocument.Node actual) {
+        if (expected.isObject()) {
+            for (Iterator<String> names = expected.fieldNames(); names.hasNext(); ) {
+                String name = names.next();
+                assertSameTree(expected.get(name), actual.get(name));
+            }
+        }
+        else if (expected.isArray()) {
+            for (int i = 0; i < expected.size(); ++i)
+                assertSameTree(expected.get(i), actual.get(i));
+        }
+        else {
+            assertEquals(expected.asText(), actual.asText());
+        }
+    }
+}
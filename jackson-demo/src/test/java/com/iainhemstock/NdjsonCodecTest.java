@@ -0,0 +1,143 @@
+/**
+ * Newline delimited json holds one json object per line instead of a single json document, which
+ * makes it easy to append to and to read a line at a time. NdjsonCodec reads and writes it with one
+ * ObjectReader and ObjectWriter for all of the lines, and can decode large inputs on several threads
+ * while keeping the objects in the order of the lines.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class NdjsonCodecTest {
+
+    private NdjsonCodec<Todo> codec;
+
+    @Before
+    public void setUp() throws Exception {
+        codec = new NdjsonCodec<>(new ObjectMapper(), Todo.class);
+    }
+
+    /**
+     * Each line is read as a Todo. The blank line is skipped.
+     */
+    @Test
+    public void testReadLines() throws IOException {
+        InputStream input = new FileInputStream(getClass().getResource("/todos.ndjson").getFile());
+        try (Stream<Todo> todos = codec.read(input)) {
+            List<Todo> list = todos.collect(Collectors.toList());
+
+            assertEquals(3, list.size());
+            assertEquals(new Todo(1, 1, "delectus aut autem", false), list.get(0));
+            assertEquals(3, list.get(2).getId());
+        }
+    }
+
+    @Test
+    public void testWriteLines() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.write(output, Arrays.asList(new Todo(1, 1, "one", false), new Todo(1, 2, "two", true)));
+
+        assertEquals(
+                "{`userId`:1,`id`:1,`title`:`one`,`completed`:false}\n{`userId`:1,`id`:2,`title`:`two`,`completed`:true}\n"
+                        .replace("`", "\""),
+                output.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A LineWriter can be kept open and written to as objects turn up.
+     */
+    @Test
+    public void testWriteThenReadBack() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (NdjsonCodec<Todo>.LineWriter lines = codec.open(output)) {
+            for (int i = 0; i < 100; ++i)
+                lines.write(new Todo(i % 5, i, "todo " + i, i % 2 == 0));
+        }
+
+        try (Stream<Todo> todos = codec.read(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(100, todos.count());
+        }
+    }
+
+    /**
+     * Chunks much smaller than the input are decoded on several threads, and the objects still come
+     * out in the order of the lines.
+     */
+    @Test
+    public void testReadParallelKeepsOrder() throws IOException {
+        List<Todo> written = new ArrayList<>();
+        for (int i = 0; i < 10_000; ++i)
+            written.add(new Todo(i % 5, i, "todo " + i, i % 2 == 0));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.write(output, written);
+
+        codec.chunkBytes(4 * 1024);
+        try (Stream<Todo> todos = codec.readParallel(new ByteArrayInputStream(output.toByteArray()), 4)) {
+            assertEquals(written, todos.collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * A line longer than a chunk is not split, the chunk grows until the line ends.
+     */
+    @Test
+    public void testReadParallelLineLongerThanChunk() throws IOException {
+        String title = "x".repeat(1000);
+        List<Todo> written = Arrays.asList(new Todo(1, 1, title, false), new Todo(1, 2, "short", true));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.write(output, written);
+
+        codec.chunkBytes(64);
+        try (Stream<Todo> todos = codec.readParallel(new ByteArrayInputStream(output.toByteArray()), 2)) {
+            assertEquals(written, todos.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testReadParallelEmptyInput() {
+        try (Stream<Todo> todos = codec.readParallel(new ByteArrayInputStream(new byte[0]), 2)) {
+            assertEquals(0, todos.count());
+        }
+    }
+
+    /**
+     * The decoding threads finish once the input has been read, even if the stream isn't closed.
+     */
+    @Test
+    public void testReadParallelThreadsFinish() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.write(output, Arrays.asList(new Todo(1, 1, "one", false), new Todo(1, 2, "two", true)));
+
+        codec.chunkBytes(16);
+        Stream<Todo> todos = codec.readParallel(new ByteArrayInputStream(output.toByteArray()), 4);
+        assertEquals(2, todos.count());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (decoderThreads() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, decoderThreads());
+    }
+
+    private static long decoderThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                     .filter(thread -> thread.getName().equals("ndjson-decoder"))
+                     .count();
+    }
+}
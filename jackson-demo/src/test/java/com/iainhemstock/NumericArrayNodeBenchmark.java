@@ -0,0 +1,99 @@
+/**
+ * Reads and writes an array of a million doubles, like a telemetry payload, as an ArrayNode and as
+ * a NumericArrayNode. With the GC profiler the gc.alloc.rate.norm lines show the bytes allocated
+ * by each call.
+ *
+ * main() also prints how much heap the array takes once read, before running the benchmarks.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NumericArrayNodeBenchmark {
+
+    private static final int READINGS = 1_000_000;
+
+    private ObjectMapper mapper;
+    private byte[] json;
+    private JsonNode arrayNode;
+    private NumericArrayNode numericArrayNode;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ObjectMapper();
+        mapper.registerModule(NumericArrayNode.module());
+        json = mapper.writeValueAsBytes(readings(READINGS));
+        arrayNode = mapper.readTree(json);
+        numericArrayNode = mapper.readValue(json, NumericArrayNode.class);
+    }
+
+    static NumericArrayNode readings(int count) {
+        NumericArrayNode readings = new NumericArrayNode(count);
+        for (int i = 0; i < count; ++i)
+            readings.add(20 + Math.sin(i / 100.0) * 5);
+        return readings;
+    }
+
+    @Benchmark
+    public JsonNode readArrayNode() throws IOException {
+        return mapper.readTree(json);
+    }
+
+    @Benchmark
+    public NumericArrayNode readNumericArrayNode() throws IOException {
+        return mapper.readValue(json, NumericArrayNode.class);
+    }
+
+    @Benchmark
+    public byte[] writeArrayNode() throws IOException {
+        return mapper.writeValueAsBytes(arrayNode);
+    }
+
+    @Benchmark
+    public byte[] writeNumericArrayNode() throws IOException {
+        return mapper.writeValueAsBytes(numericArrayNode);
+    }
+
+    public static void main(String[] args) throws Exception {
+        NumericArrayNodeBenchmark benchmark = new NumericArrayNodeBenchmark();
+        benchmark.setUp();
+        System.out.printf("ArrayNode          %6.1f MB%n", retained(benchmark::readArrayNode) / 1e6);
+        System.out.printf("NumericArrayNode   %6.1f MB%n", retained(benchmark::readNumericArrayNode) / 1e6);
+
+        new Runner(new OptionsBuilder()
+                .include(NumericArrayNodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+
+    // roughly how much heap the value read by the call holds on to
+    private static long retained(Callable<Object> read) throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Object value = read.call();
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        Reference.reachabilityFence(value);
+        return after - before;
+    }
+}
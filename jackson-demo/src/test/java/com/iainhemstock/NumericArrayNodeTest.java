@@ -0,0 +1,167 @@
+/**
+ * A NumericArrayNode is an array node of numbers kept in a primitive array. It is written and read
+ * like the ArrayNodes in ArrayNodeTest, and read through the same JsonNode methods.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NumericArrayNodeTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setUp() throws Exception {
+        mapper = new ObjectMapper();
+        mapper.registerModule(NumericArrayNode.module());
+    }
+
+    //==============================================================================================
+    // Adding values.
+    //==============================================================================================
+    @Test
+    public void testAddGrowsArray() {
+        NumericArrayNode node = new NumericArrayNode(2);
+        for (int i = 0; i < 100; ++i)
+            node.add(i);
+
+        assertEquals(100, node.size());
+        assertEquals(JsonParser.NumberType.INT, node.getElementType());
+        assertEquals(99, node.getInt(99));
+    }
+
+    /**
+     * A long that doesn't fit an int widens the array to longs, a fraction to doubles.
+     */
+    @Test
+    public void testAddWidensArray() {
+        NumericArrayNode node = new NumericArrayNode().add(1).add(2L);
+        assertEquals(JsonParser.NumberType.INT, node.getElementType());
+
+        node.add(3_000_000_000L);
+        assertEquals(JsonParser.NumberType.LONG, node.getElementType());
+        assertEquals(3_000_000_000L, node.getLong(2));
+
+        node.add(0.5);
+        assertEquals(JsonParser.NumberType.DOUBLE, node.getElementType());
+        assertEquals(1.0, node.getDouble(0), 0.0);
+        assertEquals(3_000_000_000.0, node.getDouble(2), 0.0);
+        assertEquals(0.5, node.getDouble(3), 0.0);
+    }
+
+    //==============================================================================================
+    // Serialization and deserialization.
+    //==============================================================================================
+    @Test
+    public void testSerialize() throws IOException {
+        assertEquals("[1,2,3]", mapper.writeValueAsString(NumericArrayNode.of(1, 2, 3)));
+        assertEquals("[1,5000000000]", mapper.writeValueAsString(NumericArrayNode.of(1L, 5_000_000_000L)));
+        assertEquals("[1.5,-2.0]", mapper.writeValueAsString(NumericArrayNode.of(1.5, -2.0)));
+        assertEquals("[]", mapper.writeValueAsString(new NumericArrayNode()));
+    }
+
+    @Test
+    public void testSerializeInsideObjectNode() throws IOException {
+        ObjectNode objectNode = mapper.createObjectNode();
+        objectNode.put("sensor", "t1");
+        objectNode.set("readings", NumericArrayNode.of(20.5, 21.0));
+
+        assertEquals("{\"sensor\":\"t1\",\"readings\":[20.5,21.0]}", mapper.writeValueAsString(objectNode));
+    }
+
+    @Test
+    public void testDeserialize() throws IOException {
+        NumericArrayNode node = mapper.readValue("[1, 2, 3000000000, 4.5]", NumericArrayNode.class);
+
+        assertEquals(JsonParser.NumberType.DOUBLE, node.getElementType());
+        assertArrayEquals(new double[] { 1, 2, 3_000_000_000.0, 4.5 }, node.toDoubleArray(), 0.0);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        NumericArrayNode node = new NumericArrayNode();
+        for (int i = 0; i < 1000; ++i)
+            node.add(i * 1.25);
+
+        assertEquals(node, mapper.readValue(mapper.writeValueAsBytes(node), NumericArrayNode.class));
+    }
+
+    @Test(expected = MismatchedInputException.class)
+    public void testDeserializeNonNumber() throws IOException {
+        mapper.readValue("[1, \"two\", 3]", NumericArrayNode.class);
+    }
+
+    //==============================================================================================
+    // Reading values as JsonNodes.
+    //==============================================================================================
+    @Test
+    public void testReadLikeArrayNode() throws IOException {
+        NumericArrayNode node = NumericArrayNode.of(4, 5, 6);
+        ArrayNode arrayNode = mapper.createArrayNode().add(4).add(5).add(6);
+
+        assertTrue(node.isArray());
+        assertTrue(node.isContainerNode());
+        assertEquals(arrayNode.size(), node.size());
+        assertEquals(arrayNode.get(1), node.get(1));
+        assertNull(node.get(3));
+        assertTrue(node.path(3).isMissingNode());
+        assertNull(node.get("fieldName"));
+        assertEquals(arrayNode.at("/2"), node.at("/2"));
+        assertEquals(arrayNode, node.toArrayNode());
+        assertFalse(node.equals(arrayNode));
+        assertFalse(arrayNode.equals(node));
+        assertEquals(arrayNode.hashCode(), node.hashCode());
+    }
+
+    @Test
+    public void testElements() {
+        List<Integer> values = new ArrayList<>();
+        for (JsonNode element : NumericArrayNode.of(1, 2, 3))
+            values.add(element.intValue());
+
+        assertEquals(List.of(1, 2, 3), values);
+    }
+
+    /**
+     * A NumericArrayNode can be read with the tree model, through treeToValue().
+     */
+    @Test
+    public void testTreeToValue() throws IOException {
+        assertArrayEquals(new long[] { 1, 2, 3 }, mapper.treeToValue(NumericArrayNode.of(1, 2, 3), long[].class));
+    }
+
+    @Test
+    public void testDeepCopy() {
+        NumericArrayNode node = NumericArrayNode.of(1, 2, 3);
+        NumericArrayNode copy = node.deepCopy();
+        node.removeAll();
+
+        assertEquals(0, node.size());
+        assertEquals(NumericArrayNode.of(1, 2, 3), copy);
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("[1,2,3]", NumericArrayNode.of(1, 2, 3).toString());
+        assertEquals("[0.5]", NumericArrayNode.of(0.5).toString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetIntOutOfBounds() {
+        NumericArrayNode.of(1, 2, 3).getInt(3);
+    }
+}
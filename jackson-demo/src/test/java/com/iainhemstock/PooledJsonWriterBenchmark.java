@@ -0,0 +1,93 @@
+/**
+ * Serializes a user, like one response of a service, with writeValueAsString() and writeValueAsBytes()
+ * and with a PooledJsonWriter into its own buffer, into the caller's ByteBuffer and to a channel.
+ * With the GC profiler the gc.alloc.rate.norm lines show the bytes allocated by each call.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PooledJsonWriterBenchmark {
+
+    private User user;
+    private ObjectWriter objectWriter;
+    private PooledJsonWriter writer;
+    private ByteBuffer response;
+    private WritableByteChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        user = WireFormatBenchmark.users(1).get(0);
+        objectWriter = JsonCodecs.shared().writer(User.class);
+        writer = new PooledJsonWriter(objectWriter);
+        response = ByteBuffer.allocateDirect(4096);
+        channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int length = source.remaining();
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Benchmark
+    public String writeValueAsString() throws IOException {
+        return objectWriter.writeValueAsString(user);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws IOException {
+        return objectWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public ByteBuffer pooled() throws IOException {
+        return writer.write(user);
+    }
+
+    @Benchmark
+    public int pooledIntoByteBuffer() throws IOException {
+        response.clear();
+        return writer.write(user, response);
+    }
+
+    @Benchmark
+    public int pooledToChannel() throws IOException {
+        return writer.write(user, channel);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PooledJsonWriterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * A PooledJsonWriter writes the same json as writeValueAsBytes() (see ObjectMapperSerializationTest)
+ * into buffers that are reused, or into the caller's buffers and channels.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PooledJsonWriterTest {
+
+    private ObjectWriter objectWriter;
+    private PooledJsonWriter writer;
+    private Mountain mountain;
+    private byte[] expected;
+
+    @Before
+    public void setUp() throws Exception {
+        objectWriter = new ObjectMapper().writerFor(Mountain.class);
+        writer = new PooledJsonWriter(objectWriter);
+        mountain = new Mountain("Catbells", 451);
+        expected = objectWriter.writeValueAsBytes(mountain);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        assertArrayEquals(expected, bytes(writer.write(mountain)));
+    }
+
+    /**
+     * Every write on a thread reuses its buffer, and the values don't run into each other.
+     */
+    @Test
+    public void testWriteReusesBuffer() throws IOException {
+        ByteBuffer first = writer.write(new Mountain("Skiddaw", 931));
+        ByteBuffer second = writer.write(mountain);
+
+        assertSame(first, second);
+        assertArrayEquals(expected, bytes(second));
+    }
+
+    @Test
+    public void testWriteIntoArray() throws IOException {
+        byte[] target = new byte[100];
+
+        int length = writer.write(mountain, target, 10);
+
+        assertEquals(expected.length, length);
+        assertArrayEquals(expected, Arrays.copyOfRange(target, 10, 10 + length));
+    }
+
+    @Test
+    public void testWriteIntoByteBuffer() throws IOException {
+        for (ByteBuffer target : Arrays.asList(ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100))) {
+            target.put((byte) '[');
+
+            int length = writer.write(mountain, target);
+
+            assertEquals(1 + length, target.position());
+            target.flip().get();
+            assertArrayEquals(expected, bytes(target));
+        }
+    }
+
+    /**
+     * A value that doesn't fit leaves the buffer's position where it was, and the next write works.
+     */
+    @Test
+    public void testWriteIntoBufferTooSmall() throws IOException {
+        ByteBuffer target = ByteBuffer.allocate(expected.length - 1);
+        try {
+            writer.write(mountain, target);
+            fail("expected BufferOverflowException");
+        }
+        catch (BufferOverflowException ex) {
+            assertEquals(0, target.position());
+        }
+
+        assertArrayEquals(expected, bytes(writer.write(mountain)));
+    }
+
+    @Test
+    public void testWriteToChannel() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        writer.write(mountain, Channels.newChannel(output));
+        writer.write(mountain, Channels.newChannel(output));
+
+        byte[] twice = Arrays.copyOf(expected, expected.length * 2);
+        System.arraycopy(expected, 0, twice, expected.length, expected.length);
+        assertArrayEquals(twice, output.toByteArray());
+    }
+
+    /**
+     * A non-blocking channel might only take part of the value, so it isn't written to at all.
+     */
+    @Test(expected = IllegalBlockingModeException.class)
+    public void testWriteToNonBlockingChannel() throws IOException {
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+            sink.configureBlocking(false);
+            writer.write(mountain, sink);
+        }
+    }
+
+    /**
+     * A value bigger than the initial buffer grows it, and the buffer is dropped once it's bigger
+     * than maxRetainedBytes.
+     */
+    @Test
+    public void testLargeValue() throws IOException {
+        PooledJsonWriter listWriter = new PooledJsonWriter(new ObjectMapper().writer())
+                                              .maxRetainedBytes(PooledJsonWriter.DEFAULT_INITIAL_CAPACITY);
+        List<Mountain> mountains = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i)
+            mountains.add(new Mountain("Mountain " + i, i));
+
+        ByteBuffer large = listWriter.write(mountains);
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(mountains), bytes(large));
+
+        ByteBuffer small = listWriter.write(mountain);
+        assertNotSame(large, small);
+        assertEquals(PooledJsonWriter.DEFAULT_INITIAL_CAPACITY, small.capacity());
+    }
+
+    /**
+     * Each thread writes into a buffer of its own.
+     */
+    @Test
+    public void testBufferPerThread() throws Exception {
+        ByteBuffer mine = writer.write(mountain);
+        AtomicReference<ByteBuffer> theirs = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                theirs.set(writer.write(new Mountain("Skiddaw", 931)));
+            }
+            catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertNotSame(mine, theirs.get());
+        assertArrayEquals(expected, bytes(mine));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOnlyJson() {
+        new PooledJsonWriter(WireFormat.SMILE.newMapper().writer());
+    }
+}
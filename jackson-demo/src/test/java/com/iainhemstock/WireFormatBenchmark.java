@@ -0,0 +1,122 @@
+/**
+ * Encodes and decodes the same object graphs as json, Smile and CBOR:
+ *
+ *      users     100 users with nested address, geo and company objects and a list of aliases
+ *      todos     1000 todos, many small objects with the same fields
+ *
+ * main() prints the size of each payload in each format before running the benchmarks.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final TypeReference<List<User>> USER_LIST = new TypeReference<List<User>>() {};
+    private static final TypeReference<List<Todo>> TODO_LIST = new TypeReference<List<Todo>>() {};
+
+    @Param({ "JSON", "SMILE", "CBOR" })
+    private WireFormat format;
+
+    private List<User> users;
+    private List<Todo> todos;
+    private ObjectWriter writer;
+    private ObjectReader usersReader;
+    private ObjectReader todosReader;
+    private byte[] usersBytes;
+    private byte[] todosBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        users = users(100);
+        todos = todos(1000);
+
+        JsonCodecs codecs = JsonCodecs.shared(format);
+        writer = codecs.writer(List.class);
+        usersReader = codecs.reader(USER_LIST);
+        todosReader = codecs.reader(TODO_LIST);
+        usersBytes = writer.writeValueAsBytes(users);
+        todosBytes = writer.writeValueAsBytes(todos);
+    }
+
+    static List<User> users(int count) throws IOException {
+        User template;
+        try (InputStream input = WireFormatBenchmark.class.getResourceAsStream("/user.json")) {
+            template = new ObjectMapper().readValue(input, User.class);
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            User.Address address = template.getAddress();
+            users.add(new User(i, template.getName() + " " + i, template.getUsername() + i, i + template.getEmail(),
+                    new User.Address(address.getStreet(), "Apt. " + i, address.getCity(), address.getZipcode(),
+                                     new User.Geo(String.valueOf(-37.3159 + i / 100.0), address.getGeo().getLng())),
+                    template.getPhone(), template.getWebsite(), template.getCompany(),
+                    Arrays.asList("alias" + i, "alias" + (i + 1))));
+        }
+        return users;
+    }
+
+    static List<Todo> todos(int count) {
+        List<Todo> todos = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+            todos.add(new Todo(i / 20, i, "todo number " + i, i % 3 == 0));
+        return todos;
+    }
+
+    @Benchmark
+    public byte[] encodeUsers() throws IOException {
+        return writer.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public List<User> decodeUsers() throws IOException {
+        return usersReader.readValue(usersBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeTodos() throws IOException {
+        return writer.writeValueAsBytes(todos);
+    }
+
+    @Benchmark
+    public List<Todo> decodeTodos() throws IOException {
+        return todosReader.readValue(todosBytes);
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        List<User> users = users(100);
+        List<Todo> todos = todos(1000);
+        System.out.printf("%-8s %12s %12s %n", "format", "users", "todos");
+        for (WireFormat format : WireFormat.values()) {
+            ObjectWriter writer = JsonCodecs.shared(format).writer(List.class);
+            System.out.printf("%-8s %10d B %10d B %n", format,
+                    writer.writeValueAsBytes(users).length, writer.writeValueAsBytes(todos).length);
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(WireFormatBenchmark.class.getSimpleName())
+                .build())
+            .run();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Smile and CBOR are binary formats with the same data model as json. An ObjectMapper created with
+ * a SmileFactory or CBORFactory reads and writes them with the same pojos and the same API as json,
+ * WireFormat picks the factory.
+ */
+
+package com.iainhemstock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class WireFormatTest {
+
+    private User user;
+
+    @Before
+    public void setUp() throws Exception {
+        user = new ObjectMapper().readValue(
+                new FileReader(getClass().getResource("/user.json").getFile()), User.class);
+    }
+
+    /**
+     * Every pojo comes back the same from every format.
+     */
+    @Test
+    public void testRoundTripInEveryFormat() throws IOException {
+        for (WireFormat format : WireFormat.values()) {
+            JsonCodecs codecs = JsonCodecs.shared(format);
+            for (Object value : Arrays.asList(new Mountain("Catbells", 451),
+                                              new Todo(1, 1, "delectus aut autem", false),
+                                              new Transaction(new Date(1_577_836_800_000L)),
+                                              new ImmutablePost(7),
+                                              user)) {
+                byte[] bytes = codecs.writer(value.getClass()).writeValueAsBytes(value);
+
+                assertEquals(format + " " + value.getClass().getSimpleName(),
+                             value, codecs.reader(value.getClass()).readValue(bytes));
+            }
+        }
+    }
+
+    /**
+     * A Smile document starts with the header ":)\n".
+     */
+    @Test
+    public void testSmileHeader() throws IOException {
+        byte[] bytes = JsonCodecs.shared(WireFormat.SMILE).writer(Mountain.class)
+                                 .writeValueAsBytes(new Mountain("Catbells", 451));
+
+        assertEquals(':', bytes[0]);
+        assertEquals(')', bytes[1]);
+        assertEquals('\n', bytes[2]);
+    }
+
+    @Test
+    public void testBinaryFormatsAreSmaller() throws IOException {
+        int json = JsonCodecs.shared(WireFormat.JSON).writer(User.class).writeValueAsBytes(user).length;
+
+        assertTrue(JsonCodecs.shared(WireFormat.SMILE).writer(User.class).writeValueAsBytes(user).length < json);
+        assertTrue(JsonCodecs.shared(WireFormat.CBOR).writer(User.class).writeValueAsBytes(user).length < json);
+    }
+
+    @Test
+    public void testFormatForContentType() {
+        assertEquals(WireFormat.SMILE, WireFormat.forContentType("application/x-jackson-smile"));
+        assertEquals(WireFormat.CBOR, WireFormat.forContentType("application/cbor"));
+        assertFalse(WireFormat.forContentType("application/json").isBinary());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedContentType() {
+        WireFormat.forContentType("text/xml");
+    }
+}